@@ -203,6 +203,33 @@ public interface Kernel {
      */
     void startServiceRecursive(ServiceName serviceName, StartStrategy startStrategy) throws ServiceNotFoundException, IllegalServiceStateException, UnsatisfiedConditionsException, Exception;
 
+    /**
+     * Starts all of the specified services using the SYNCHRONOUS start strategy.  This method is equivalent to:
+     * <p><blockquote><pre>
+     *     startServices(serviceNames, StartStrategies.SYNCHRONOUS);
+     * </pre></blockquote>
+     *
+     * @param serviceNames the unique names of the services to start
+     * @throws ServiceStartErrorsException if any of the services could not be started
+     */
+    void startServices(List serviceNames) throws ServiceStartErrorsException;
+
+    /**
+     * Starts all of the specified services concurrently using the specified start strategy.  A service is not
+     * started until every service in the list that it depends on has started.  A service depends on the services
+     * named in the RunningServiceConditions of its start conditions, and on any service in the list that owns it.
+     * Services that do not depend on each other are started at the same time.
+     * <p/>
+     * If a service can not be started, the services in the list that depend on it are not attempted.  All other
+     * services are still started.  Once every service has been processed, a ServiceStartErrorsException is thrown
+     * containing the error for each service that did not start, in the order of the serviceNames list.
+     *
+     * @param serviceNames the unique names of the services to start
+     * @param startStrategy the strategy that determines how unsatisfied conditions and construction exceptions are handled
+     * @throws ServiceStartErrorsException if any of the services could not be started
+     */
+    void startServices(List serviceNames, StartStrategy startStrategy) throws ServiceStartErrorsException;
+
     /**
      * Immediately stops the service using the SYNCHRONOUS stop strategy.  If a stop condition can
      * not be immediately satisfied, an UnsatisfiedConditionsException will be thrown.  If a service already in
@@ -230,6 +257,32 @@ public interface Kernel {
      */
     void stopService(ServiceName serviceName, StopStrategy stopStrategy) throws ServiceNotFoundException, UnsatisfiedConditionsException;
 
+    /**
+     * Starts the service asynchronously using the specified start strategy.  The start is performed by the kernel
+     * executor exactly as {@link #startService(ServiceName, StartStrategy)} would, and the returned future completes
+     * with the service instance, or null if the service did not reach the RUNNING state, or fails with the exception
+     * startService would have thrown.
+     * <p/>
+     * Note: a strategy that blocks on unsatisfied conditions blocks an executor thread.  To wait for a service without
+     * tying up a thread, start it with a non-blocking strategy and wait on {@link #getServiceAsync(ServiceName)}.
+     *
+     * @param serviceName the unique name of the service to start
+     * @param startStrategy the strategy that determines how unsatisfied conditions and construction exceptions are handled
+     * @return a future for the start operation
+     */
+    ServiceFuture startServiceAsync(ServiceName serviceName, StartStrategy startStrategy);
+
+    /**
+     * Stops the service asynchronously using the specified stop strategy.  The stop is performed by the kernel
+     * executor exactly as {@link #stopService(ServiceName, StopStrategy)} would, and the returned future completes
+     * with null, or fails with the exception stopService would have thrown.
+     *
+     * @param serviceName the unique name of the service to stop
+     * @param stopStrategy the strategy that determines how unsatisfied conditions are handled
+     * @return a future for the stop operation
+     */
+    ServiceFuture stopServiceAsync(ServiceName serviceName, StopStrategy stopStrategy);
+
     /**
      * Determines if the service can be instantiated in a kernel.  A disabled restartable service can not be
      * started.  This method is equivalent to:
@@ -270,6 +323,20 @@ public interface Kernel {
      */
     Object getService(ServiceName serviceName) throws ServiceNotFoundException, IllegalArgumentException;
 
+    /**
+     * Gets a future for the service registered under the specified name which completes with the service instance
+     * when the service is in the RUNNING state.  If the service is already running the returned future is already
+     * complete.  No thread waits for the service; the future is completed by the service event.  The future fails with
+     * a ServiceNotFoundException if the service is not registered or is unregistered before it is running.
+     * <p/>
+     * Note: the service event that completes the future is delivered on the kernel's service monitor thread, so
+     * listeners added to the future run on that thread and must not block.
+     *
+     * @param serviceName the unique name of the service
+     * @return a future for the running service
+     */
+    ServiceFuture getServiceAsync(ServiceName serviceName);
+
     /**
      * Gets the first running service registered with the kernel that is an instance of the specified type.  If no
      * running services are instances of the specified type, null is returned.
@@ -47,6 +47,15 @@ public class RunningServiceCondition implements ServiceCondition {
         this.stopOnServiceShutdown = stopOnServiceShutdown;
     }
 
+    /**
+     * Gets the name of the service that must be running for this condition to be satisfied.
+     *
+     * @return the name of the service that must be running
+     */
+    public ServiceName getDependency() {
+        return dependency;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -81,12 +90,14 @@ public class RunningServiceCondition implements ServiceCondition {
         }
 
         if (!satisfied) {
+            // always ask the kernel, since the dependency events are delivered asynchronously and may not have
+            // arrived yet; the events are only used to wake the waiting service
             try {
                 // grab a synchronized lock on the service factory to assure that the state doesn't change while
                 // adding the dependency.... the kernel will grab the same lock when getting the stop dependencies
                 ServiceFactory serviceFactory = context.getKernel().getServiceFactory(dependency);
                 synchronized (serviceFactory) {
-                    if (context.getKernel().getService(dependency) == ServiceState.RUNNING) {
+                    if (context.getKernel().getServiceState(dependency) == ServiceState.RUNNING) {
                         if (stopOnServiceShutdown) {
                             serviceFactory.addStopCondition(stoppedServiceCondition);
                         }
@@ -124,20 +135,25 @@ public class RunningServiceCondition implements ServiceCondition {
 
     private class DependencyServiceMonitor extends NullServiceMonitor {
         public void serviceRunning(ServiceEvent serviceEvent) {
+            ServiceConditionContext context;
             synchronized (RunningServiceCondition.this) {
-                if (context != null) {
+                context = RunningServiceCondition.this.context;
+                if (context == null) {
                     // we aren't running anymore
                     return;
                 }
 
-                if (!satisfied) {
+                if (satisfied) {
                     return;
                 }
 
-                if (isSatisfied()) {
-                    context.setSatisfied();
+                if (!isSatisfied()) {
+                    return;
                 }
             }
+
+            // notify the context outside of our lock, since the service manager holds its lock while calling isSatisfied
+            context.setSatisfied();
         }
     }
 }
@@ -0,0 +1,165 @@
+/**
+ *
+ * Copyright 2005-2006 The Apache Software Foundation or its licensors, as applicable.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.kernel;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import edu.emory.mathcs.backport.java.util.concurrent.Callable;
+import edu.emory.mathcs.backport.java.util.concurrent.FutureTask;
+
+/**
+ * A ServiceFuture is the result of an asynchronous kernel operation on a service.  In addition to the standard Future
+ * methods for waiting, timing out and cancelling, listeners can be registered to be notified when the operation
+ * completes, which allows many operations to be composed without dedicating a thread to each wait.
+ *
+ * @author Dain Sundstrom
+ * @version $Id$
+ * @since 2.0
+ */
+public class ServiceFuture extends FutureTask {
+    /**
+     * Stands in for the operation of a future which is completed with complete or fail; it is never called because
+     * run refuses to execute such a future.
+     */
+    private static final Callable NO_OPERATION = new Callable() {
+        public Object call() {
+            throw new IllegalStateException("Future is completed with complete or fail");
+        }
+    };
+
+    private final ServiceName serviceName;
+    private final boolean runnable;
+    private final Object listenersLock = new Object();
+
+    /**
+     * The listeners to notify on completion or null once the listeners have been notified.
+     */
+    private List listeners = new ArrayList();
+
+    /**
+     * Creates a ServiceFuture which will execute the specified callable when run.
+     *
+     * @param serviceName the name of the service on which the operation is performed
+     * @param callable the operation
+     */
+    public ServiceFuture(ServiceName serviceName, Callable callable) {
+        super(callable);
+        if (serviceName == null) throw new NullPointerException("serviceName is null");
+        this.serviceName = serviceName;
+        this.runnable = true;
+    }
+
+    /**
+     * Creates a ServiceFuture which has no operation to run, and instead is completed by the subclass calling
+     * complete or fail, for example when a service event arrives.
+     *
+     * @param serviceName the name of the service on which the operation is performed
+     */
+    protected ServiceFuture(ServiceName serviceName) {
+        super(NO_OPERATION);
+        if (serviceName == null) throw new NullPointerException("serviceName is null");
+        this.serviceName = serviceName;
+        this.runnable = false;
+    }
+
+    /**
+     * Gets the name of the service on which the operation is performed.
+     *
+     * @return the name of the service
+     */
+    public ServiceName getServiceName() {
+        return serviceName;
+    }
+
+    /**
+     * Runs the operation of this future.
+     *
+     * @throws IllegalStateException if this future has no operation and is completed with complete or fail
+     */
+    public void run() {
+        if (!runnable) {
+            throw new IllegalStateException("Future for " + serviceName + " is completed with complete or fail and can not be run");
+        }
+        super.run();
+    }
+
+    /**
+     * Completes this future with the specified result unless it is already done.
+     *
+     * @param result the result of the operation
+     */
+    protected void complete(Object result) {
+        set(result);
+    }
+
+    /**
+     * Completes this future with the specified failure unless it is already done.
+     *
+     * @param throwable the cause of the failure
+     */
+    protected void fail(Throwable throwable) {
+        if (throwable == null) throw new NullPointerException("throwable is null");
+        setException(throwable);
+    }
+
+    /**
+     * Adds a listener to be run when this future completes normally, completes exceptionally or is cancelled.  The
+     * listener is run by the thread that completes the future, or immediately by the calling thread if the future is
+     * already complete, so it should not block.  Exceptions thrown by the listener are ignored.
+     *
+     * @param listener the listener to run on completion
+     */
+    public void addListener(Runnable listener) {
+        if (listener == null) throw new NullPointerException("listener is null");
+        synchronized (listenersLock) {
+            if (listeners != null) {
+                listeners.add(listener);
+                return;
+            }
+        }
+        runListener(listener);
+    }
+
+    /**
+     * Notifies the listeners.  Subclasses overriding this method must call super.done().
+     */
+    protected void done() {
+        List listeners;
+        synchronized (listenersLock) {
+            listeners = this.listeners;
+            this.listeners = null;
+        }
+        for (Iterator iterator = listeners.iterator(); iterator.hasNext();) {
+            Runnable listener = (Runnable) iterator.next();
+            runListener(listener);
+        }
+    }
+
+    private static void runListener(Runnable listener) {
+        try {
+            listener.run();
+        } catch (RuntimeException ignored) {
+            // listeners are responsible for reporting their own failures
+        }
+    }
+
+    public String toString() {
+        return "[ServiceFuture: serviceName=" + serviceName + ", done=" + isDone() + "]";
+    }
+}
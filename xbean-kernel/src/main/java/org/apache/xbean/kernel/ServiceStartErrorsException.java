@@ -0,0 +1,77 @@
+/**
+ *
+ * Copyright 2005-2006 The Apache Software Foundation or its licensors, as applicable.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.kernel;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Signifies that one or more services in a bulk start operation could not be started.  The start errors are reported
+ * in the order the services were passed to the kernel, regardless of the order in which the services were actually
+ * started.  The first start error is the cause of this exception.
+ *
+ * @author Dain Sundstrom
+ * @version $Id$
+ * @since 2.0
+ */
+public class ServiceStartErrorsException extends Exception {
+    private final Map startErrors;
+
+    /**
+     * Creates a ServiceStartErrorsException containing the start errors of each service that failed to start.
+     *
+     * @param startErrors the start errors (Throwable) keyed by the name of the service that failed to start
+     */
+    public ServiceStartErrorsException(Map startErrors) {
+        super(createMessage(startErrors), getFirstError(startErrors));
+        this.startErrors = Collections.unmodifiableMap(new LinkedHashMap(startErrors));
+    }
+
+    /**
+     * Gets the start errors (Throwable) keyed by the name of the service that failed to start.  The map iterates in
+     * the order the services were passed to the kernel.
+     *
+     * @return the start errors
+     */
+    public Map getStartErrors() {
+        return startErrors;
+    }
+
+    private static String createMessage(Map startErrors) {
+        if (startErrors == null) throw new NullPointerException("startErrors is null");
+        if (startErrors.isEmpty()) throw new IllegalArgumentException("startErrors is empty");
+
+        StringBuffer message = new StringBuffer();
+        message.append(startErrors.size() + " service(s) failed to start [");
+        for (Iterator iterator = startErrors.entrySet().iterator(); iterator.hasNext();) {
+            Map.Entry entry = (Map.Entry) iterator.next();
+            Throwable startError = (Throwable) entry.getValue();
+            if (startError == null) throw new IllegalArgumentException("Start error for " + entry.getKey() + " is null");
+            message.append(entry.getKey()).append(": \"").append(startError.getMessage()).append('\"');
+            if (iterator.hasNext()) {
+                message.append(", ");
+            }
+        }
+        return message.append("]").toString();
+    }
+
+    private static Throwable getFirstError(Map startErrors) {
+        return (Throwable) startErrors.values().iterator().next();
+    }
+}
@@ -40,6 +40,15 @@ public class StoppedServiceCondition implements ServiceCondition {
         this.dependency = dependency;
     }
 
+    /**
+     * Gets the name of the service that must be stopped for this condition to be satisfied.
+     *
+     * @return the name of the service that must be stopped
+     */
+    public ServiceName getDependency() {
+        return dependency;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -67,13 +76,18 @@ public class StoppedServiceCondition implements ServiceCondition {
         }
 
         if (!satisfied) {
+            // always ask the kernel, since the dependency events are delivered asynchronously and may not have
+            // arrived yet; the events are only used to wake the waiting service
+            boolean stopped;
             try {
-                if (context.getKernel().getService(dependency) == ServiceState.RUNNING) {
-                    satisfied = true;
-                    context.getKernel().removeServiceMonitor(serviceMonitor);
-                }
-            } catch (ServiceNotFoundException ignored) {
-                // service hasn't registered yet
+                stopped = context.getKernel().getServiceState(dependency) == ServiceState.STOPPED;
+            } catch (ServiceNotFoundException e) {
+                // a service that is not registered is not running
+                stopped = true;
+            }
+            if (stopped) {
+                satisfied = true;
+                context.getKernel().removeServiceMonitor(serviceMonitor);
             }
         }
         return satisfied;
@@ -95,20 +109,33 @@ public class StoppedServiceCondition implements ServiceCondition {
 
     private class DependencyServiceMonitor extends NullServiceMonitor {
         public void serviceStopped(ServiceEvent serviceEvent) {
+            dependencyChanged();
+        }
+
+        public void serviceUnregistered(ServiceEvent serviceEvent) {
+            dependencyChanged();
+        }
+
+        private void dependencyChanged() {
+            ServiceConditionContext context;
             synchronized (StoppedServiceCondition.this) {
-                if (context != null) {
+                context = StoppedServiceCondition.this.context;
+                if (context == null) {
                     // we aren't running anymore
                     return;
                 }
 
-                if (!satisfied) {
+                if (satisfied) {
                     return;
                 }
 
-                if (isSatisfied()) {
-                    context.setSatisfied();
+                if (!isSatisfied()) {
+                    return;
                 }
             }
+
+            // notify the context outside of our lock, since the service manager holds its lock while calling isSatisfied
+            context.setSatisfied();
         }
     }
 }
@@ -17,6 +17,7 @@
 package org.apache.xbean.kernel.standard;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -32,6 +33,11 @@ import org.apache.xbean.kernel.ServiceName;
 
 /**
  * Aggregates a set of ServiceConditions together so the ServiceManager can treat them as a single unit.
+ * <p/>
+ * Only the conditions that have not yet been satisfied are checked, and once all conditions are satisfied checking
+ * is free.  Conditions that wait on other services, such as {@link org.apache.xbean.kernel.RunningServiceCondition},
+ * subscribe to the services they depend on, so a waiting service is only woken when one of those services changes
+ * state.
  *
  * @author Dain Sundstrom
  * @version $Id$
@@ -43,6 +49,7 @@ public class AggregateCondition {
     private final ClassLoader classLoader;
     private final Lock lock;
     private final Map conditions = new HashMap();
+    private final Set unsatisfiedConditions = new HashSet();
     private final Condition satisfiedSignal;
     private boolean destroyed = false;
 
@@ -89,6 +96,7 @@ public class AggregateCondition {
             StandardServiceConditionContext context = new StandardServiceConditionContext(kernel, serviceName, classLoader, lock, satisfiedSignal);
             condition.initialize(context);
             conditions.put(condition, context);
+            unsatisfiedConditions.add(condition);
         }
     }
 
@@ -99,6 +107,7 @@ public class AggregateCondition {
      */
     protected final void removeCondition(ServiceCondition condition) {
         if (conditions.remove(condition) != null) {
+            unsatisfiedConditions.remove(condition);
             condition.destroy();
         }
     }
@@ -114,6 +123,9 @@ public class AggregateCondition {
             ServiceCondition condition = (ServiceCondition) entry.getKey();
             StandardServiceConditionContext context = (StandardServiceConditionContext) entry.getValue();
             condition.initialize(context);
+            if (!context.isSatisfied()) {
+                unsatisfiedConditions.add(condition);
+            }
         }
     }
 
@@ -123,29 +135,48 @@ public class AggregateCondition {
      * @return the unstatisfied conditions
      */
     public Set getUnsatisfied() {
+        if (checkConditions()) {
+            return Collections.EMPTY_SET;
+        }
+        return Collections.unmodifiableSet(new HashSet(unsatisfiedConditions));
+    }
+
+    /**
+     * Checks whether all of the conditions are satisfied without creating a set of the unsatisfied conditions.
+     *
+     * @return true if all of the conditions are satisfied; false otherwise
+     */
+    public boolean isSatisfied() {
+        return checkConditions();
+    }
+
+    private boolean checkConditions() {
         if (destroyed) throw new IllegalStateException("destroyed");
 
-        Set unsatisfied = new HashSet();
-        for (Iterator iterator = conditions.entrySet().iterator(); iterator.hasNext();) {
-            Map.Entry entry = (Map.Entry) iterator.next();
-            ServiceCondition condition = (ServiceCondition) entry.getKey();
-            StandardServiceConditionContext context = (StandardServiceConditionContext) entry.getValue();
-            if (!context.isSatisfied()) {
-                if (condition.isSatisfied()) {
-                    // the condition is satisfied
-                    // record this fact in the context
-                    context.setSatisfied();
-                } else {
-                    unsatisfied.add(condition);
-                }
+        if (unsatisfiedConditions.isEmpty()) {
+            return true;
+        }
+
+        for (Iterator iterator = unsatisfiedConditions.iterator(); iterator.hasNext();) {
+            ServiceCondition condition = (ServiceCondition) iterator.next();
+            StandardServiceConditionContext context = (StandardServiceConditionContext) conditions.get(condition);
+            if (context.isSatisfied()) {
+                // the condition notified us asynchronously
+                iterator.remove();
+            } else if (condition.isSatisfied()) {
+                // the condition is satisfied
+                // record this fact in the context
+                context.setSatisfied();
+                iterator.remove();
             }
         }
 
-        // notify anyone awaiting satisfaction
-        if (unsatisfied.isEmpty()) {
+        if (unsatisfiedConditions.isEmpty()) {
+            // notify anyone awaiting satisfaction
             satisfiedSignal.signalAll();
+            return true;
         }
-        return unsatisfied;
+        return false;
     }
 
     /**
@@ -189,7 +220,7 @@ public class AggregateCondition {
      */
     public void awaitSatisfaction() throws InterruptedException {
         while (!destroyed) {
-            if (getUnsatisfied().isEmpty()) {
+            if (isSatisfied()) {
                 return;
             }
             satisfiedSignal.await();
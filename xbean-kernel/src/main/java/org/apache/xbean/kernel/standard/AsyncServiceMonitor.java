@@ -17,139 +17,417 @@
 package org.apache.xbean.kernel.standard;
 
 import edu.emory.mathcs.backport.java.util.concurrent.Executor;
+import edu.emory.mathcs.backport.java.util.concurrent.atomic.AtomicLong;
+import edu.emory.mathcs.backport.java.util.concurrent.locks.Condition;
+import edu.emory.mathcs.backport.java.util.concurrent.locks.ReentrantLock;
 import org.apache.xbean.kernel.ServiceEvent;
 import org.apache.xbean.kernel.ServiceMonitor;
 
 /**
  * The AsyncServiceMonitor delivers service events to a delegate ServiceMonitor asynchronously using an executor.
+ * <p/>
+ * Events are placed in a bounded ring buffer and delivered in batches by a single drain task, so at most one task is
+ * submitted to the executor at a time and the delegate sees events in exactly the order they were fired.  In particular
+ * the events of a single service are never reordered.  When the buffer is full, the {@link OverflowPolicy} determines
+ * whether the firing thread waits or an event is discarded.  The default policy is {@link OverflowPolicy#COALESCE},
+ * so firing an event never blocks.  Events fired by the delegate itself, on the drain thread, never wait for the
+ * buffer even with the {@link OverflowPolicy#BLOCK} policy, since only the drain thread can make room; instead the
+ * buffer grows, so the BLOCK policy never loses an event.
  *
  * @author Dain Sundstrom
  * @version $Id$
  * @since 2.0
  */
 public class AsyncServiceMonitor implements ServiceMonitor {
+    /**
+     * The default number of events held in the buffer.
+     */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    /**
+     * The default maximum number of events delivered by a drain task before it checks the buffer again.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 64;
+
     private final ServiceMonitor delegate;
     private final Executor executor;
+    private final OverflowPolicy overflowPolicy;
+    private final int batchSize;
+
+    /**
+     * Guards the ring buffer and the drainScheduled flag.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Signaled when events are removed from the buffer.
+     */
+    private final Condition notFull = lock.newCondition();
+
+    /**
+     * The ring buffer of event types.  An entry is valid if it is one of the count entries starting at head.  Only
+     * replaced when the drain thread grows the buffer.
+     */
+    private int[] types;
+
+    /**
+     * The ring buffer of events, parallel to types.
+     */
+    private ServiceEvent[] events;
+
+    private int head;
+    private int count;
+    private boolean drainScheduled;
+
+    /**
+     * The thread running the drain task, or null if no drain task is running.
+     */
+    private volatile Thread drainThread;
+
+    /**
+     * The batch being delivered.  These are only accessed by the single active drain task.
+     */
+    private final int[] batchTypes;
+    private final ServiceEvent[] batchEvents;
+
+    private final AtomicLong droppedEventCount = new AtomicLong(0);
+    private final AtomicLong deliveredEventCount = new AtomicLong(0);
+
+    /**
+     * Executes the drain loop.
+     */
+    private final Runnable drainTask = new Runnable() {
+        public void run() {
+            drain();
+        }
+    };
 
     /**
      * Creates a AsyncServiceMonitor which asynchronously delivers service events to specified delegate
-     * ServiceMonitor using the specified executor.
+     * ServiceMonitor using the specified executor.  The monitor buffers {@link #DEFAULT_CAPACITY} events and
+     * coalesces events when the buffer is full.
      *
      * @param delegate the service monitor that should recieve the asynchronous events
      * @param executor the executor used to asynchronously deliver the events
      */
     public AsyncServiceMonitor(ServiceMonitor delegate, Executor executor) {
+        this(delegate, executor, DEFAULT_CAPACITY, DEFAULT_BATCH_SIZE, OverflowPolicy.COALESCE);
+    }
+
+    /**
+     * Creates a AsyncServiceMonitor which asynchronously delivers service events to specified delegate
+     * ServiceMonitor using the specified executor.
+     *
+     * @param delegate the service monitor that should recieve the asynchronous events
+     * @param executor the executor used to asynchronously deliver the events
+     * @param capacity the maximum number of events waiting to be delivered
+     * @param batchSize the maximum number of events delivered by a drain task before it checks the buffer again
+     * @param overflowPolicy determines what happens when an event is fired while the buffer is full
+     */
+    public AsyncServiceMonitor(ServiceMonitor delegate, Executor executor, int capacity, int batchSize, OverflowPolicy overflowPolicy) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be atleast 1");
+        if (batchSize < 1) throw new IllegalArgumentException("batchSize must be atleast 1");
+        if (overflowPolicy == null) throw new NullPointerException("overflowPolicy is null");
         this.delegate = delegate;
         this.executor = executor;
+        this.overflowPolicy = overflowPolicy;
+        this.batchSize = Math.min(batchSize, capacity);
+        types = new int[capacity];
+        events = new ServiceEvent[capacity];
+        batchTypes = new int[this.batchSize];
+        batchEvents = new ServiceEvent[this.batchSize];
+    }
+
+    /**
+     * Gets the number of events waiting to be delivered.
+     *
+     * @return the number of events waiting to be delivered
+     */
+    public int getQueueDepth() {
+        lock.lock();
+        try {
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of events discarded because the buffer was full.
+     *
+     * @return the number of discarded events
+     */
+    public long getDroppedEventCount() {
+        return droppedEventCount.get();
+    }
+
+    /**
+     * Gets the number of events delivered to the delegate.
+     *
+     * @return the number of delivered events
+     */
+    public long getDeliveredEventCount() {
+        return deliveredEventCount.get();
     }
 
     /**
      * {@inheritDoc}
      */
-    public void serviceRegistered(final ServiceEvent serviceEvent) {
-        executor.execute(new Runnable() {
-            public void run() {
-                delegate.serviceRegistered(serviceEvent);
-            }
-        });
+    public void serviceRegistered(ServiceEvent serviceEvent) {
+        enqueue(ServiceEventTypes.REGISTERED, serviceEvent);
     }
 
     /**
      * {@inheritDoc}
      */
-    public void serviceStarting(final ServiceEvent serviceEvent) {
-        executor.execute(new Runnable() {
-            public void run() {
-                delegate.serviceStarting(serviceEvent);
-            }
-        });
+    public void serviceStarting(ServiceEvent serviceEvent) {
+        enqueue(ServiceEventTypes.STARTING, serviceEvent);
     }
 
     /**
      * {@inheritDoc}
      */
-    public void serviceWaitingToStart(final ServiceEvent serviceEvent) {
-        executor.execute(new Runnable() {
-            public void run() {
-                delegate.serviceWaitingToStart(serviceEvent);
-            }
-        });
+    public void serviceWaitingToStart(ServiceEvent serviceEvent) {
+        enqueue(ServiceEventTypes.WAITING_TO_START, serviceEvent);
     }
 
     /**
      * {@inheritDoc}
      */
-    public void serviceStartError(final ServiceEvent serviceEvent) {
-        executor.execute(new Runnable() {
-            public void run() {
-                delegate.serviceStartError(serviceEvent);
-            }
-        });
+    public void serviceStartError(ServiceEvent serviceEvent) {
+        enqueue(ServiceEventTypes.START_ERROR, serviceEvent);
     }
 
     /**
      * {@inheritDoc}
      */
-    public void serviceRunning(final ServiceEvent serviceEvent) {
-        executor.execute(new Runnable() {
-            public void run() {
-                delegate.serviceRunning(serviceEvent);
-            }
-        });
+    public void serviceRunning(ServiceEvent serviceEvent) {
+        enqueue(ServiceEventTypes.RUNNING, serviceEvent);
     }
 
     /**
      * {@inheritDoc}
      */
-    public void serviceStopping(final ServiceEvent serviceEvent) {
-        executor.execute(new Runnable() {
-            public void run() {
-                delegate.serviceStopping(serviceEvent);
-            }
-        });
+    public void serviceStopping(ServiceEvent serviceEvent) {
+        enqueue(ServiceEventTypes.STOPPING, serviceEvent);
     }
 
     /**
      * {@inheritDoc}
      */
-    public void serviceWaitingToStop(final ServiceEvent serviceEvent) {
-        executor.execute(new Runnable() {
-            public void run() {
-                delegate.serviceWaitingToStop(serviceEvent);
-            }
-        });
+    public void serviceWaitingToStop(ServiceEvent serviceEvent) {
+        enqueue(ServiceEventTypes.WAITING_TO_STOP, serviceEvent);
     }
 
     /**
      * {@inheritDoc}
      */
-    public void serviceStopError(final ServiceEvent serviceEvent) {
-        executor.execute(new Runnable() {
-            public void run() {
-                delegate.serviceStopError(serviceEvent);
-            }
-        });
+    public void serviceStopError(ServiceEvent serviceEvent) {
+        enqueue(ServiceEventTypes.STOP_ERROR, serviceEvent);
     }
 
     /**
      * {@inheritDoc}
      */
-    public void serviceStopped(final ServiceEvent serviceEvent) {
-        executor.execute(new Runnable() {
-            public void run() {
-                delegate.serviceStopped(serviceEvent);
-            }
-        });
+    public void serviceStopped(ServiceEvent serviceEvent) {
+        enqueue(ServiceEventTypes.STOPPED, serviceEvent);
     }
 
     /**
      * {@inheritDoc}
      */
-    public void serviceUnregistered(final ServiceEvent serviceEvent) {
-        executor.execute(new Runnable() {
-            public void run() {
-                delegate.serviceUnregistered(serviceEvent);
+    public void serviceUnregistered(ServiceEvent serviceEvent) {
+        enqueue(ServiceEventTypes.UNREGISTERED, serviceEvent);
+    }
+
+    private void enqueue(int type, ServiceEvent serviceEvent) {
+        boolean scheduleDrain = false;
+        lock.lock();
+        try {
+            if (count == types.length) {
+                if (overflowPolicy == OverflowPolicy.BLOCK) {
+                    if (Thread.currentThread() == drainThread) {
+                        // the drain thread must never wait for itself to make room in the buffer
+                        grow();
+                    } else {
+                        while (count == types.length) {
+                            notFull.awaitUninterruptibly();
+                        }
+                    }
+                } else if (overflowPolicy == OverflowPolicy.COALESCE && coalesce(type, serviceEvent)) {
+                    return;
+                } else {
+                    // drop the oldest event
+                    events[head] = null;
+                    head = (head + 1) % types.length;
+                    count--;
+                    droppedEventCount.incrementAndGet();
+                }
+            }
+
+            int tail = (head + count) % types.length;
+            types[tail] = type;
+            events[tail] = serviceEvent;
+            count++;
+
+            if (!drainScheduled) {
+                drainScheduled = true;
+                scheduleDrain = true;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        if (scheduleDrain) {
+            scheduleDrain();
+        }
+    }
+
+    /**
+     * Replaces the newest buffered event for the same service with the specified event.  Must be called while
+     * holding the lock.
+     *
+     * @return true if an event was replaced; false if no event for the service is buffered
+     */
+    private boolean coalesce(int type, ServiceEvent serviceEvent) {
+        for (int i = count - 1; i >= 0; i--) {
+            int index = (head + i) % types.length;
+            if (events[index].getServiceName().equals(serviceEvent.getServiceName())) {
+                types[index] = type;
+                events[index] = serviceEvent;
+                droppedEventCount.incrementAndGet();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Doubles the capacity of the buffer.  Must be called while holding the lock.
+     */
+    private void grow() {
+        int[] newTypes = new int[types.length * 2];
+        ServiceEvent[] newEvents = new ServiceEvent[newTypes.length];
+        for (int i = 0; i < count; i++) {
+            int index = (head + i) % types.length;
+            newTypes[i] = types[index];
+            newEvents[i] = events[index];
+        }
+        types = newTypes;
+        events = newEvents;
+        head = 0;
+    }
+
+    private void scheduleDrain() {
+        try {
+            executor.execute(drainTask);
+        } catch (RuntimeException e) {
+            lock.lock();
+            try {
+                drainScheduled = false;
+            } finally {
+                lock.unlock();
+            }
+            throw e;
+        }
+    }
+
+    private void drain() {
+        boolean finished = false;
+        drainThread = Thread.currentThread();
+        try {
+            while (true) {
+                int batchCount;
+                lock.lock();
+                try {
+                    batchCount = Math.min(count, batchSize);
+                    if (batchCount == 0) {
+                        drainScheduled = false;
+                        finished = true;
+                        return;
+                    }
+                    for (int i = 0; i < batchCount; i++) {
+                        batchTypes[i] = types[head];
+                        batchEvents[i] = events[head];
+                        events[head] = null;
+                        head = (head + 1) % types.length;
+                    }
+                    count -= batchCount;
+                    notFull.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+
+                // the batch has already left the buffer, so it is delivered in full before an Error is rethrown
+                Error error = null;
+                for (int i = 0; i < batchCount; i++) {
+                    ServiceEvent serviceEvent = batchEvents[i];
+                    batchEvents[i] = null;
+                    try {
+                        ServiceEventTypes.deliver(delegate, batchTypes[i], serviceEvent);
+                    } catch (RuntimeException ignored) {
+                        // the delegate is responsible for reporting its own failures
+                    } catch (Error e) {
+                        if (error == null) {
+                            error = e;
+                        }
+                    }
+                    deliveredEventCount.incrementAndGet();
+                }
+                if (error != null) {
+                    throw error;
+                }
+            }
+        } finally {
+            drainThread = null;
+            if (!finished) {
+                // an Error escaped from the delegate; hand the events still buffered to a new drain task
+                boolean reschedule;
+                lock.lock();
+                try {
+                    reschedule = count > 0;
+                    drainScheduled = reschedule;
+                } finally {
+                    lock.unlock();
+                }
+                if (reschedule) {
+                    scheduleDrain();
+                }
             }
-        });
+        }
+    }
+
+    /**
+     * Determines what an AsyncServiceMonitor does when an event is fired while its buffer is full.
+     */
+    public static final class OverflowPolicy {
+        /**
+         * The firing thread waits until the drain task makes room in the buffer.  No events are lost, but a slow
+         * delegate will slow down the threads changing service state, and a delegate that waits for a thread
+         * changing service state will deadlock the kernel.  Events fired on the drain thread never wait; the buffer
+         * grows to hold them instead.
+         */
+        public static final OverflowPolicy BLOCK = new OverflowPolicy("BLOCK");
+
+        /**
+         * The oldest buffered event is discarded to make room for the new event.
+         */
+        public static final OverflowPolicy DROP_OLDEST = new OverflowPolicy("DROP_OLDEST");
+
+        /**
+         * The newest buffered event of the same service is replaced by the new event, so the delegate still sees the
+         * latest state of each service.  If no event of the same service is buffered, the oldest event is discarded.
+         */
+        public static final OverflowPolicy COALESCE = new OverflowPolicy("COALESCE");
+
+        private final String name;
+
+        private OverflowPolicy(String name) {
+            this.name = name;
+        }
+
+        public String toString() {
+            return name;
+        }
     }
 }
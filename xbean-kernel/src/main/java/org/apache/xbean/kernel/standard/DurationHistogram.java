@@ -0,0 +1,132 @@
+/**
+ *
+ * Copyright 2005-2006 The Apache Software Foundation or its licensors, as applicable.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.kernel.standard;
+
+import edu.emory.mathcs.backport.java.util.concurrent.atomic.AtomicLong;
+import edu.emory.mathcs.backport.java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A DurationHistogram counts durations in a fixed set of buckets and tracks the count, total, maximum and last
+ * recorded value.  Recording is lock free and allocation free, so a histogram can be left enabled in production.
+ *
+ * @author Dain Sundstrom
+ * @version $Id$
+ * @since 2.0
+ */
+public class DurationHistogram {
+    /**
+     * The inclusive upper limit in milliseconds of each bucket except the last, which holds all longer durations.
+     */
+    private static final long[] BUCKET_LIMITS = new long[]{1, 10, 100, 1000, 10000, 60000};
+
+    private final AtomicLong count = new AtomicLong(0);
+    private final AtomicLong total = new AtomicLong(0);
+    private final AtomicLong max = new AtomicLong(0);
+    private final AtomicLong last = new AtomicLong(0);
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_LIMITS.length + 1);
+
+    /**
+     * Records a duration.
+     *
+     * @param duration the duration in milliseconds
+     */
+    public void record(long duration) {
+        if (duration < 0) {
+            // the clock was set back
+            duration = 0;
+        }
+
+        count.incrementAndGet();
+        total.addAndGet(duration);
+        last.set(duration);
+        for (long current = max.get(); duration > current; current = max.get()) {
+            if (max.compareAndSet(current, duration)) {
+                break;
+            }
+        }
+
+        int bucket = 0;
+        while (bucket < BUCKET_LIMITS.length && duration > BUCKET_LIMITS[bucket]) {
+            bucket++;
+        }
+        buckets.incrementAndGet(bucket);
+    }
+
+    /**
+     * Gets the number of durations recorded.
+     *
+     * @return the number of durations recorded
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Gets the sum of all recorded durations in milliseconds.
+     *
+     * @return the sum of all recorded durations
+     */
+    public long getTotal() {
+        return total.get();
+    }
+
+    /**
+     * Gets the longest recorded duration in milliseconds.
+     *
+     * @return the longest recorded duration or 0 if nothing has been recorded
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Gets the most recently recorded duration in milliseconds.
+     *
+     * @return the most recently recorded duration or 0 if nothing has been recorded
+     */
+    public long getLast() {
+        return last.get();
+    }
+
+    /**
+     * Gets the inclusive upper limit in milliseconds of each bucket.  The bucket counts array has one more entry than
+     * this array, which counts the durations longer than the last limit.
+     *
+     * @return the upper limit of each bucket
+     */
+    public long[] getBucketLimits() {
+        return (long[]) BUCKET_LIMITS.clone();
+    }
+
+    /**
+     * Gets a snapshot of the number of durations recorded in each bucket.
+     *
+     * @return the number of durations recorded in each bucket
+     * @see #getBucketLimits()
+     */
+    public long[] getBucketCounts() {
+        long[] counts = new long[buckets.length()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = buckets.get(i);
+        }
+        return counts;
+    }
+
+    public String toString() {
+        return "[count=" + getCount() + ", total=" + getTotal() + "ms, max=" + getMax() + "ms]";
+    }
+}
@@ -69,6 +69,14 @@ public class NonRestartableStopCondition extends AggregateCondition {
         return super.getUnsatisfied();
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized boolean isSatisfied() {
+        updateConditions();
+        return super.isSatisfied();
+    }
+
     private void updateConditions() {
         if (isDestroyed()) throw new IllegalStateException("destroyed");
 
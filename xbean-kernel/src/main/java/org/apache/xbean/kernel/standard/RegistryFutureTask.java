@@ -30,13 +30,13 @@ import org.apache.xbean.kernel.StopStrategy;
 class RegistryFutureTask extends FutureTask implements Comparable {
     private final long serviceId;
     private final ServiceName serviceName;
+    private final ServiceManager serviceManager;
     private final String taskType;
     private Throwable throwable;
 
     static RegistryFutureTask createRegisterTask(ServiceManager serviceManager) {
         RegisterCallable registerCallable = new RegisterCallable(serviceManager);
-        RegistryFutureTask registryFutureTask = new RegistryFutureTask(serviceManager.getServiceId(),
-                        serviceManager.getServiceName(),
+        RegistryFutureTask registryFutureTask = new RegistryFutureTask(serviceManager,
                         "RegisterServiceManager",
                         registerCallable);
         return registryFutureTask;
@@ -44,18 +44,18 @@ class RegistryFutureTask extends FutureTask implements Comparable {
 
     static RegistryFutureTask createUnregisterTask(ServiceManager serviceManager, StopStrategy stopStrategy) {
         UnregisterCallable unregisterCallable = new UnregisterCallable(serviceManager, stopStrategy);
-        RegistryFutureTask registryFutureTask = new RegistryFutureTask(serviceManager.getServiceId(),
-                        serviceManager.getServiceName(),
+        RegistryFutureTask registryFutureTask = new RegistryFutureTask(serviceManager,
                         "UnregisterServiceManager",
                         unregisterCallable);
         unregisterCallable.setRegistryFutureTask(registryFutureTask);
         return registryFutureTask;
     }
 
-    private RegistryFutureTask(long serviceId, ServiceName serviceName, String taskType, Callable callable) {
+    private RegistryFutureTask(ServiceManager serviceManager, String taskType, Callable callable) {
         super(callable);
-        this.serviceId = serviceId;
-        this.serviceName = serviceName;
+        this.serviceId = serviceManager.getServiceId();
+        this.serviceName = serviceManager.getServiceName();
+        this.serviceManager = serviceManager;
         this.taskType = taskType;
     }
 
@@ -63,6 +63,16 @@ class RegistryFutureTask extends FutureTask implements Comparable {
         return serviceName;
     }
 
+    /**
+     * Gets the service manager being registered or unregistered by this task.  Unlike the result of the task, this is
+     * available before the task completes.
+     *
+     * @return the service manager being registered or unregistered
+     */
+    public ServiceManager getServiceManager() {
+        return serviceManager;
+    }
+
     public synchronized Throwable getThrowable() {
         return throwable;
     }
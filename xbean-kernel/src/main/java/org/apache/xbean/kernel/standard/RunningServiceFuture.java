@@ -0,0 +1,86 @@
+/**
+ *
+ * Copyright 2005-2006 The Apache Software Foundation or its licensors, as applicable.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.kernel.standard;
+
+import org.apache.xbean.kernel.Kernel;
+import org.apache.xbean.kernel.NullServiceMonitor;
+import org.apache.xbean.kernel.ServiceEvent;
+import org.apache.xbean.kernel.ServiceFuture;
+import org.apache.xbean.kernel.ServiceMonitor;
+import org.apache.xbean.kernel.ServiceName;
+import org.apache.xbean.kernel.ServiceNotFoundException;
+
+/**
+ * RunningServiceFuture completes with the service instance when the service enters the RUNNING state.  It is
+ * completed by service events, so no thread is blocked while the service starts.  Because the events are
+ * delivered on the service monitor drain thread, listeners added to this future normally run on that thread and must
+ * not block, or they will delay the delivery of every other service event.
+ *
+ * @author Dain Sundstrom
+ * @version $Id$
+ * @since 2.0
+ */
+class RunningServiceFuture extends ServiceFuture {
+    private final Kernel kernel;
+    private final ServiceMonitor serviceMonitor = new RunningServiceMonitor();
+
+    RunningServiceFuture(Kernel kernel, ServiceName serviceName) {
+        super(serviceName);
+        this.kernel = kernel;
+    }
+
+    /**
+     * Gets the monitor which completes this future.  It must be registered for the service before the current state
+     * of the service is checked, so a transition to RUNNING can not be missed.
+     *
+     * @return the monitor which completes this future
+     */
+    ServiceMonitor getServiceMonitor() {
+        return serviceMonitor;
+    }
+
+    /**
+     * Completes this future with the running service.
+     *
+     * @param service the service instance
+     */
+    void serviceRunning(Object service) {
+        complete(service);
+    }
+
+    /**
+     * Fails this future because the service is not registered.
+     */
+    void serviceNotFound() {
+        fail(new ServiceNotFoundException(getServiceName()));
+    }
+
+    protected void done() {
+        kernel.removeServiceMonitor(serviceMonitor);
+        super.done();
+    }
+
+    private class RunningServiceMonitor extends NullServiceMonitor {
+        public void serviceRunning(ServiceEvent serviceEvent) {
+            RunningServiceFuture.this.serviceRunning(serviceEvent.getService());
+        }
+
+        public void serviceUnregistered(ServiceEvent serviceEvent) {
+            serviceNotFound();
+        }
+    }
+}
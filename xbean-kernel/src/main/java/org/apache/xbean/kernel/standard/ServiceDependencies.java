@@ -0,0 +1,119 @@
+/**
+ *
+ * Copyright 2005-2006 The Apache Software Foundation or its licensors, as applicable.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.kernel.standard;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.xbean.kernel.RunningServiceCondition;
+import org.apache.xbean.kernel.ServiceFactory;
+import org.apache.xbean.kernel.ServiceName;
+import org.apache.xbean.kernel.StoppedServiceCondition;
+
+/**
+ * Derives the dependencies between services from their service factories for use with a ServiceGraphExecutor.  A
+ * service depends on the services named by the RunningServiceConditions in its start conditions, and an owned service
+ * depends on its owner.  Services are started in dependency order and stopped in the reverse order.
+ *
+ * @author Dain Sundstrom
+ * @version $Id$
+ * @since 2.0
+ */
+final class ServiceDependencies {
+    private ServiceDependencies() {
+    }
+
+    /**
+     * Gets the services that must be started before each of the specified services.
+     *
+     * @param serviceFactories the ServiceFactory of each service keyed by ServiceName
+     * @return the Set of ServiceNames that must be started first keyed by ServiceName
+     */
+    static Map getStartDependencies(Map serviceFactories) {
+        Map dependencies = new HashMap();
+        for (Iterator iterator = serviceFactories.entrySet().iterator(); iterator.hasNext();) {
+            Map.Entry entry = (Map.Entry) iterator.next();
+            ServiceName serviceName = (ServiceName) entry.getKey();
+            ServiceFactory serviceFactory = (ServiceFactory) entry.getValue();
+
+            for (Iterator conditions = serviceFactory.getStartConditions().iterator(); conditions.hasNext();) {
+                Object condition = conditions.next();
+                if (condition instanceof RunningServiceCondition) {
+                    addDependency(dependencies, serviceName, ((RunningServiceCondition) condition).getDependency());
+                }
+            }
+
+            Set ownedServices = serviceFactory.getOwnedServices();
+            if (ownedServices != null) {
+                for (Iterator owned = ownedServices.iterator(); owned.hasNext();) {
+                    addDependency(dependencies, (ServiceName) owned.next(), serviceName);
+                }
+            }
+        }
+        return dependencies;
+    }
+
+    /**
+     * Gets the services that must be stopped before each of the specified services.  This is the reverse of the
+     * start dependencies plus the services named by the StoppedServiceConditions in each service's stop conditions.
+     *
+     * @param serviceFactories the ServiceFactory of each service keyed by ServiceName
+     * @return the Set of ServiceNames that must be stopped first keyed by ServiceName
+     */
+    static Map getStopDependencies(Map serviceFactories) {
+        Map dependencies = new HashMap();
+        for (Iterator iterator = serviceFactories.entrySet().iterator(); iterator.hasNext();) {
+            Map.Entry entry = (Map.Entry) iterator.next();
+            ServiceName serviceName = (ServiceName) entry.getKey();
+            ServiceFactory serviceFactory = (ServiceFactory) entry.getValue();
+
+            for (Iterator conditions = serviceFactory.getStartConditions().iterator(); conditions.hasNext();) {
+                Object condition = conditions.next();
+                if (condition instanceof RunningServiceCondition) {
+                    addDependency(dependencies, ((RunningServiceCondition) condition).getDependency(), serviceName);
+                }
+            }
+
+            for (Iterator conditions = serviceFactory.getStopConditions().iterator(); conditions.hasNext();) {
+                Object condition = conditions.next();
+                if (condition instanceof StoppedServiceCondition) {
+                    addDependency(dependencies, serviceName, ((StoppedServiceCondition) condition).getDependency());
+                }
+            }
+
+            Set ownedServices = serviceFactory.getOwnedServices();
+            if (ownedServices != null) {
+                for (Iterator owned = ownedServices.iterator(); owned.hasNext();) {
+                    addDependency(dependencies, serviceName, (ServiceName) owned.next());
+                }
+            }
+        }
+        return dependencies;
+    }
+
+    private static void addDependency(Map dependencies, ServiceName serviceName, ServiceName dependency) {
+        Set dependencySet = (Set) dependencies.get(serviceName);
+        if (dependencySet == null) {
+            dependencySet = new HashSet();
+            dependencies.put(serviceName, dependencySet);
+        }
+        dependencySet.add(dependency);
+    }
+}
@@ -0,0 +1,88 @@
+/**
+ *
+ * Copyright 2005-2006 The Apache Software Foundation or its licensors, as applicable.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.kernel.standard;
+
+import org.apache.xbean.kernel.ServiceEvent;
+import org.apache.xbean.kernel.ServiceMonitor;
+
+/**
+ * ServiceEventTypes identifies each of the ServiceMonitor callbacks with an int, so an event can be stored or passed
+ * along with its type and later delivered to any ServiceMonitor through a single code path.
+ *
+ * @author Dain Sundstrom
+ * @version $Id$
+ * @since 2.0
+ */
+final class ServiceEventTypes {
+    static final int REGISTERED = 0;
+    static final int STARTING = 1;
+    static final int WAITING_TO_START = 2;
+    static final int START_ERROR = 3;
+    static final int RUNNING = 4;
+    static final int STOPPING = 5;
+    static final int WAITING_TO_STOP = 6;
+    static final int STOP_ERROR = 7;
+    static final int STOPPED = 8;
+    static final int UNREGISTERED = 9;
+
+    private ServiceEventTypes() {
+    }
+
+    /**
+     * Calls the callback method of the service monitor corresponding to the event type.
+     *
+     * @param serviceMonitor the monitor to notify
+     * @param type the type of the event
+     * @param serviceEvent the event
+     */
+    static void deliver(ServiceMonitor serviceMonitor, int type, ServiceEvent serviceEvent) {
+        switch (type) {
+            case REGISTERED:
+                serviceMonitor.serviceRegistered(serviceEvent);
+                break;
+            case STARTING:
+                serviceMonitor.serviceStarting(serviceEvent);
+                break;
+            case WAITING_TO_START:
+                serviceMonitor.serviceWaitingToStart(serviceEvent);
+                break;
+            case START_ERROR:
+                serviceMonitor.serviceStartError(serviceEvent);
+                break;
+            case RUNNING:
+                serviceMonitor.serviceRunning(serviceEvent);
+                break;
+            case STOPPING:
+                serviceMonitor.serviceStopping(serviceEvent);
+                break;
+            case WAITING_TO_STOP:
+                serviceMonitor.serviceWaitingToStop(serviceEvent);
+                break;
+            case STOP_ERROR:
+                serviceMonitor.serviceStopError(serviceEvent);
+                break;
+            case STOPPED:
+                serviceMonitor.serviceStopped(serviceEvent);
+                break;
+            case UNREGISTERED:
+                serviceMonitor.serviceUnregistered(serviceEvent);
+                break;
+            default:
+                throw new AssertionError("Unknown event type " + type);
+        }
+    }
+}
@@ -0,0 +1,358 @@
+/**
+ *
+ * Copyright 2005-2006 The Apache Software Foundation or its licensors, as applicable.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.kernel.standard;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import edu.emory.mathcs.backport.java.util.concurrent.BlockingQueue;
+import edu.emory.mathcs.backport.java.util.concurrent.Executor;
+import edu.emory.mathcs.backport.java.util.concurrent.LinkedBlockingQueue;
+import org.apache.xbean.kernel.IllegalServiceStateException;
+import org.apache.xbean.kernel.KernelOperationInterruptedException;
+import org.apache.xbean.kernel.ServiceName;
+
+/**
+ * The ServiceGraphExecutor runs an operation on a group of services using an executor.  The operation is only run on a
+ * service after it has completed successfully on every service in the group the service depends on, so independent
+ * services are processed concurrently while dependent services are processed in order.  If the operation fails on a
+ * service, it is not run on any service that depends on the failed service.
+ * <p/>
+ * When several services are ready at the same time, they are dispatched in the order they were supplied, and all
+ * results are reported in that order, so the outcome does not depend on thread scheduling.
+ *
+ * @author Dain Sundstrom
+ * @version $Id$
+ * @since 2.0
+ */
+class ServiceGraphExecutor {
+    /**
+     * The operation to run on each service.
+     */
+    interface ServiceOperation {
+        /**
+         * Runs the operation on the specified service.
+         *
+         * @param serviceName the name of the service
+         * @throws Exception if the operation failed
+         */
+        void execute(ServiceName serviceName) throws Exception;
+    }
+
+    /**
+     * The executor used to run the operations.
+     */
+    private final Executor executor;
+
+    /**
+     * The maximum number of operations that may be running at the same time.
+     */
+    private final int maxConcurrency;
+
+    /**
+     * The name of the operation; this is used in exception messages.
+     */
+    private final String operationName;
+
+    /**
+     * Creates a ServiceGraphExecutor.
+     *
+     * @param executor the executor used to run the operations
+     * @param maxConcurrency the maximum number of operations that may be running at the same time
+     * @param operationName the name of the operation used in exception messages
+     */
+    ServiceGraphExecutor(Executor executor, int maxConcurrency, String operationName) {
+        if (executor == null) throw new NullPointerException("executor is null");
+        if (maxConcurrency < 1) throw new IllegalArgumentException("maxConcurrency must be at least 1");
+        if (operationName == null) throw new NullPointerException("operationName is null");
+        this.executor = executor;
+        this.maxConcurrency = maxConcurrency;
+        this.operationName = operationName;
+    }
+
+    /**
+     * Runs the operation on each of the specified services and waits for all of the operations to complete.  The
+     * dependencies map contains a Set of ServiceNames for each ServiceName which must be processed before that service.
+     * Dependencies on services that are not in the serviceNames list are ignored.  If the dependencies contain a cycle,
+     * the first waiting service in list order is released when no other progress can be made.
+     * <p/>
+     * If the calling thread is interrupted, no further operations are dispatched, the operations already running are
+     * allowed to complete, and the services that were never processed are reported with a
+     * KernelOperationInterruptedException.  The interrupted status of the thread is restored before returning.
+     *
+     * @param serviceNames the services on which to run the operation
+     * @param dependencies the dependencies between the services
+     * @param operation the operation to run on each service
+     * @return the result of the operations
+     */
+    Result execute(List serviceNames, Map dependencies, ServiceOperation operation) {
+        if (serviceNames == null) throw new NullPointerException("serviceNames is null");
+        if (dependencies == null) throw new NullPointerException("dependencies is null");
+        if (operation == null) throw new NullPointerException("operation is null");
+
+        ServiceName[] names = (ServiceName[]) new LinkedHashSet(serviceNames).toArray(new ServiceName[0]);
+        Map indexes = new HashMap();
+        for (int i = 0; i < names.length; i++) {
+            if (names[i] == null) throw new NullPointerException("serviceNames contains a null element");
+            indexes.put(names[i], new Integer(i));
+        }
+
+        // build the dependency graph in terms of indexes into the names array
+        int[] waitingFor = new int[names.length];
+        List[] dependents = new List[names.length];
+        for (int i = 0; i < names.length; i++) {
+            dependents[i] = new ArrayList();
+        }
+        for (int i = 0; i < names.length; i++) {
+            Set serviceDependencies = (Set) dependencies.get(names[i]);
+            if (serviceDependencies == null) {
+                continue;
+            }
+            for (Iterator iterator = serviceDependencies.iterator(); iterator.hasNext();) {
+                Integer dependency = (Integer) indexes.get(iterator.next());
+                if (dependency != null && dependency.intValue() != i) {
+                    waitingFor[i]++;
+                    dependents[dependency.intValue()].add(new Integer(i));
+                }
+            }
+        }
+
+        Dispatcher dispatcher = new Dispatcher(names, waitingFor, dependents, operation);
+        dispatcher.run();
+        return dispatcher.createResult();
+    }
+
+    /**
+     * The outcome of running an operation on a group of services.
+     */
+    static class Result {
+        private final Map errors;
+        private final Map durations;
+
+        private Result(Map errors, Map durations) {
+            this.errors = Collections.unmodifiableMap(errors);
+            this.durations = Collections.unmodifiableMap(durations);
+        }
+
+        /**
+         * Gets the errors (Throwable) keyed by the name of the service on which the operation failed or was not
+         * attempted.  The map iterates in the order the services were supplied.
+         *
+         * @return the errors
+         */
+        Map getErrors() {
+            return errors;
+        }
+
+        /**
+         * Gets the time in milliseconds (Long) the operation took keyed by service name.  Only services on which the
+         * operation was actually run are included.  The map iterates in the order the services were supplied.
+         *
+         * @return the durations of the operations
+         */
+        Map getDurations() {
+            return durations;
+        }
+    }
+
+    /**
+     * Completion notice sent from a worker to the dispatching thread.
+     */
+    private static class Completion {
+        private final int index;
+        private final Throwable error;
+        private final long duration;
+
+        private Completion(int index, Throwable error, long duration) {
+            this.index = index;
+            this.error = error;
+            this.duration = duration;
+        }
+    }
+
+    /**
+     * Holds the state of a single execute call.  All fields are only accessed by the dispatching thread; workers only
+     * communicate through the completed queue.
+     */
+    private class Dispatcher {
+        private final ServiceName[] names;
+        private final int[] waitingFor;
+        private final List[] dependents;
+        private final ServiceOperation operation;
+        private final boolean[] dispatched;
+        private final boolean[] finished;
+        private final boolean[] executed;
+        private final Throwable[] errors;
+        private final long[] durations;
+        private final TreeSet ready = new TreeSet();
+        private final BlockingQueue completed = new LinkedBlockingQueue();
+        private int running;
+        private int remaining;
+
+        private Dispatcher(ServiceName[] names, int[] waitingFor, List[] dependents, ServiceOperation operation) {
+            this.names = names;
+            this.waitingFor = waitingFor;
+            this.dependents = dependents;
+            this.operation = operation;
+            dispatched = new boolean[names.length];
+            finished = new boolean[names.length];
+            executed = new boolean[names.length];
+            errors = new Throwable[names.length];
+            durations = new long[names.length];
+            remaining = names.length;
+            for (int i = 0; i < names.length; i++) {
+                if (waitingFor[i] == 0) {
+                    ready.add(new Integer(i));
+                }
+            }
+        }
+
+        private void run() {
+            boolean interrupted = false;
+            while (remaining > 0) {
+                // dispatch as many ready services as we are allowed
+                while (running < maxConcurrency && !ready.isEmpty()) {
+                    Integer index = (Integer) ready.first();
+                    ready.remove(index);
+                    dispatch(index.intValue());
+                }
+
+                if (running == 0) {
+                    if (ready.isEmpty() && remaining > 0) {
+                        // nothing is running and nothing is ready, so the remaining services are in a cycle
+                        releaseFirstWaiting();
+                    }
+                    continue;
+                }
+
+                Completion completion;
+                try {
+                    completion = (Completion) completed.take();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                    abandonUndispatched(e);
+                    continue;
+                }
+                running--;
+                executed[completion.index] = true;
+                durations[completion.index] = completion.duration;
+                finish(completion.index, completion.error);
+            }
+
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void dispatch(final int index) {
+            dispatched[index] = true;
+            running++;
+            try {
+                executor.execute(new Runnable() {
+                    public void run() {
+                        long start = System.currentTimeMillis();
+                        Throwable error = null;
+                        try {
+                            operation.execute(names[index]);
+                        } catch (Throwable e) {
+                            error = e;
+                        }
+                        completed.offer(new Completion(index, error, System.currentTimeMillis() - start));
+                    }
+                });
+            } catch (RuntimeException e) {
+                // the executor rejected the task
+                running--;
+                finish(index, e);
+            }
+        }
+
+        private void finish(int index, Throwable error) {
+            finished[index] = true;
+            remaining--;
+            if (error != null) {
+                errors[index] = error;
+                skipDependents(index);
+                return;
+            }
+
+            for (Iterator iterator = dependents[index].iterator(); iterator.hasNext();) {
+                Integer dependent = (Integer) iterator.next();
+                int dependentIndex = dependent.intValue();
+                waitingFor[dependentIndex]--;
+                if (waitingFor[dependentIndex] == 0 && !dispatched[dependentIndex]) {
+                    ready.add(dependent);
+                }
+            }
+        }
+
+        private void skipDependents(int index) {
+            for (Iterator iterator = dependents[index].iterator(); iterator.hasNext();) {
+                int dependent = ((Integer) iterator.next()).intValue();
+                if (!dispatched[dependent] && !finished[dependent]) {
+                    dispatched[dependent] = true;
+                    ready.remove(new Integer(dependent));
+                    finish(dependent, new IllegalServiceStateException(operationName + " was not attempted because " +
+                            names[index] + " failed", names[dependent]));
+                }
+            }
+        }
+
+        private void releaseFirstWaiting() {
+            for (int i = 0; i < names.length; i++) {
+                if (!dispatched[i]) {
+                    ready.add(new Integer(i));
+                    return;
+                }
+            }
+        }
+
+        private void abandonUndispatched(InterruptedException cause) {
+            for (int i = 0; i < names.length; i++) {
+                if (!dispatched[i]) {
+                    dispatched[i] = true;
+                    finished[i] = true;
+                    remaining--;
+                    errors[i] = new KernelOperationInterruptedException(cause, names[i], operationName);
+                }
+            }
+            ready.clear();
+        }
+
+        private Result createResult() {
+            Map errorMap = new LinkedHashMap();
+            Map durationMap = new LinkedHashMap();
+            for (int i = 0; i < names.length; i++) {
+                if (errors[i] != null) {
+                    errorMap.put(names[i], errors[i]);
+                }
+                if (executed[i]) {
+                    durationMap.put(names[i], new Long(durations[i]));
+                }
+            }
+            return new Result(errorMap, durationMap);
+        }
+    }
+}
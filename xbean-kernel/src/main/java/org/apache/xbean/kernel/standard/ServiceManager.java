@@ -110,6 +110,26 @@ public class ServiceManager implements Comparable {
      */
     private volatile long startTime;
 
+    /**
+     * The time the service entered the STARTING state or 0 if it is not starting.
+     */
+    private long startingTime;
+
+    /**
+     * The time the service was first found to have unsatisfied start conditions or 0 if it is not blocked.
+     */
+    private long blockedTime;
+
+    /**
+     * The time the first attempt to stop the service began or 0 if it is not stopping.
+     */
+    private long stoppingTime;
+
+    /**
+     * The lifecycle timings of this service.
+     */
+    private final ServiceMetrics metrics;
+
     /**
      * The {@link ServiceCondition) objects required to be ready before this service can be completely started.
      */
@@ -141,9 +161,20 @@ public class ServiceManager implements Comparable {
     private final TimeUnit timeoutUnits;
 
     /**
-     * The name of the operation for which the lock is held; this is used in the reentrant exception message.
+     * The name of the operation for which the lock is held; this is used in the reentrant and timeout exception
+     * messages.
      */
-    private String currentLockHolderOperation = "NOT-HELD";
+    private volatile String currentLockHolderOperation = "NOT-HELD";
+
+    /**
+     * The thread holding the lock or null if the lock is not held.  This is only used for diagnostics.
+     */
+    private volatile Thread currentLockHolder;
+
+    /**
+     * The time the lock was acquired by the current holder.  This is only used for diagnostics.
+     */
+    private volatile long lockAcquiredTime;
 
     /**
      * Sequence number for service event objects.
@@ -185,6 +216,7 @@ public class ServiceManager implements Comparable {
         this.timeoutDuration = timeoutDuration;
         this.timeoutUnits = timeoutUnits;
         standardServiceContext = new StandardServiceContext(kernel, serviceName, classLoader);
+        metrics = new ServiceMetrics(serviceName);
         serviceTypes = Collections.unmodifiableSet(new LinkedHashSet(Arrays.asList(serviceFactory.getTypes())));
     }
 
@@ -254,6 +286,9 @@ public class ServiceManager implements Comparable {
             lock("destroy");
             try {
                 if (state != ServiceState.STOPPED) {
+                    if (stoppingTime == 0) {
+                        stoppingTime = System.currentTimeMillis();
+                    }
                     state = ServiceState.STARTING;
                     serviceMonitor.serviceStopping(createServiceEvent());
                     if (service != null) {
@@ -270,6 +305,7 @@ public class ServiceManager implements Comparable {
                     service = null;
                     startTime = 0;
                     state = ServiceState.STOPPED;
+                    recordStopped();
                     serviceMonitor.serviceStopped(createServiceEvent());
                 }
             } finally {
@@ -329,7 +365,8 @@ public class ServiceManager implements Comparable {
     }
 
     /**
-     * Gets the service instance.
+     * Gets the service instance.  This method never waits for the service lock, so it is answered immediately even
+     * while the service is starting or stopping.
      *
      * @return the service instance
      * @see Kernel#getService(ServiceName)
@@ -339,7 +376,7 @@ public class ServiceManager implements Comparable {
     }
 
     /**
-     * Gets the current state of this service.
+     * Gets the current state of this service.  This method never waits for the service lock.
      *
      * @return the current state of this service
      * @see Kernel#getServiceState(ServiceName)
@@ -349,7 +386,8 @@ public class ServiceManager implements Comparable {
     }
 
     /**
-     * Gets the time at which this service entered the STARTING state or 0 if the service is STOPPED.
+     * Gets the time at which this service entered the STARTING state or 0 if the service is STOPPED.  This method
+     * never waits for the service lock.
      *
      * @return the start time or 0 if the service is stopped
      * @see Kernel#getServiceStartTime(ServiceName)
@@ -358,6 +396,32 @@ public class ServiceManager implements Comparable {
         return startTime;
     }
 
+    /**
+     * Gets the lifecycle timings of this service.
+     *
+     * @return the lifecycle timings of this service
+     */
+    public ServiceMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Describes the current holder of the service lock, which is useful for diagnosing a stuck start or stop.  The
+     * description includes the holding thread, the operation it is performing and how long the lock has been held.
+     *
+     * @return a description of the lock holder or "NOT-HELD" if the lock is not held
+     */
+    public String getLockStatus() {
+        Thread holder = currentLockHolder;
+        String operation = currentLockHolderOperation;
+        long acquiredTime = lockAcquiredTime;
+        if (holder == null) {
+            return "NOT-HELD";
+        }
+        return operation + " operation by thread " + holder.getName() +
+                " for " + (System.currentTimeMillis() - acquiredTime) + " ms";
+    }
+
     /**
      * Attempts to starts the service.
      *
@@ -402,6 +466,8 @@ public class ServiceManager implements Comparable {
                     if (state == ServiceState.STOPPED) {
                         // we are now officially starting
                         state = ServiceState.STARTING;
+                        startingTime = System.currentTimeMillis();
+                        blockedTime = 0;
                         serviceMonitor.serviceStarting(createServiceEvent());
 
                         // initialize the start conditions
@@ -413,10 +479,14 @@ public class ServiceManager implements Comparable {
                     Set unsatisfiedConditions = startCondition.getUnsatisfied();
                     satisfied = unsatisfiedConditions.isEmpty();
                     if (!satisfied) {
+                        if (blockedTime == 0) {
+                            blockedTime = System.currentTimeMillis();
+                        }
+
                         // if the stragegy wants us to wait for conditions to be satisfied, it will return true
                         if (startStrategy.waitForUnsatisfiedConditions(serviceName, unsatisfiedConditions)) {
                             // wait for satisfaction and loop
-                            startCondition.awaitSatisfaction();
+                            awaitSatisfaction(startCondition);
                         } else {
                             // no wait, notify the monitor and exit
                             serviceMonitor.serviceWaitingToStart(createWaitingServiceEvent(unsatisfiedConditions));
@@ -425,6 +495,11 @@ public class ServiceManager implements Comparable {
                     }
                 }
 
+                if (blockedTime != 0) {
+                    metrics.recordBlocked(System.currentTimeMillis() - blockedTime);
+                    blockedTime = 0;
+                }
+
                 // we are ready to create the service
                 service = serviceFactory.createService(standardServiceContext);
 
@@ -441,6 +516,8 @@ public class ServiceManager implements Comparable {
 
                 // success transition to running
                 startTime = System.currentTimeMillis();
+                metrics.recordStart(startTime - startingTime);
+                startingTime = 0;
                 state = ServiceState.RUNNING;
                 serviceMonitor.serviceRunning(createServiceEvent());
 
@@ -460,6 +537,9 @@ public class ServiceManager implements Comparable {
             }
 
             if (startError != null) {
+                metrics.recordStartFailure();
+                startingTime = 0;
+                blockedTime = 0;
                 try {
                     if (startError instanceof UnregisterServiceException) {
                         throw (UnregisterServiceException) startError;
@@ -562,6 +642,9 @@ public class ServiceManager implements Comparable {
                     if (state == ServiceState.STOPPED) {
                         return true;
                     }
+                    if (stoppingTime == 0) {
+                        stoppingTime = System.currentTimeMillis();
+                    }
 
                     // if we are not the STOPPING state, transition to it
                     // we check on the stopConditions variable because non-restartable services preset this in the
@@ -583,7 +666,7 @@ public class ServiceManager implements Comparable {
                         // if the stragegy wants us to wait for conditions to be satisfied, it will return true
                         if (stopStrategy.waitForUnsatisfiedConditions(serviceName, unsatisfiedConditions)) {
                             // wait for satisfaction and loop
-                            stopCondition.awaitSatisfaction();
+                            awaitSatisfaction(stopCondition);
                         } else {
                             // no wait, notify the monitor and exit
                             serviceMonitor.serviceWaitingToStop(createWaitingServiceEvent(unsatisfiedConditions));
@@ -616,6 +699,7 @@ public class ServiceManager implements Comparable {
                 service = null;
                 startTime = 0;
                 state = ServiceState.STOPPED;
+                recordStopped();
                 serviceMonitor.serviceStopped(createServiceEvent());
             }
             return true;
@@ -624,6 +708,13 @@ public class ServiceManager implements Comparable {
         }
     }
 
+    private void recordStopped() {
+        if (stoppingTime != 0) {
+            metrics.recordStop(System.currentTimeMillis() - stoppingTime);
+            stoppingTime = 0;
+        }
+    }
+
     private void destroyAllConditions(ServiceMonitor monitor) {
         if (!lock.isHeldByCurrentThread()) {
             throw new IllegalStateException("Current thread must hold lock before calling destroyAllConditions");
@@ -663,14 +754,19 @@ public class ServiceManager implements Comparable {
                     " and lock can not be reacquired for " + operationName + " on " + serviceName);
         }
 
+        long lockRequestTime = System.currentTimeMillis();
         try {
             if (!lock.tryLock(timeoutDuration, timeoutUnits)) {
                 throw new KernelOperationTimoutException("Could not obtain lock for " + operationName + " operation on " +
-                        serviceName + " within " + timeoutDuration + " " + timeoutUnits.toString().toLowerCase(),
+                        serviceName + " within " + timeoutDuration + " " + timeoutUnits.toString().toLowerCase() +
+                        "; lock held by " + getLockStatus(),
                         serviceName,
                         operationName);
             }
             currentLockHolderOperation = operationName;
+            currentLockHolder = Thread.currentThread();
+            lockAcquiredTime = System.currentTimeMillis();
+            metrics.recordLockWait(System.currentTimeMillis() - lockRequestTime);
         } catch (InterruptedException e) {
             throw new KernelOperationInterruptedException("Interrupted while attempting to obtain lock for " + operationName +
                     " operation on " + serviceName,
@@ -681,6 +777,27 @@ public class ServiceManager implements Comparable {
         }
     }
 
+    /**
+     * Waits for the condition to be satisfied.  The condition releases the lock while waiting, and other threads
+     * acquiring and releasing the lock in the mean time overwrite the lock holder diagnostics, so they are restored
+     * once the lock has been reacquired.
+     *
+     * @param condition the condition to wait for
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    private void awaitSatisfaction(AggregateCondition condition) throws InterruptedException {
+        String operation = currentLockHolderOperation;
+        long acquiredTime = lockAcquiredTime;
+        try {
+            condition.awaitSatisfaction();
+        } finally {
+            // the condition always reacquires the lock before returning
+            currentLockHolderOperation = operation;
+            currentLockHolder = Thread.currentThread();
+            lockAcquiredTime = acquiredTime;
+        }
+    }
+
     /**
      * Unlock the lock and clear the currentLockHolderOperation name.
      */
@@ -689,6 +806,7 @@ public class ServiceManager implements Comparable {
             throw new IllegalMonitorStateException("Not owner");
         }
 
+        currentLockHolder = null;
         currentLockHolderOperation = "NOT-HELD";
         lock.unlock();
     }
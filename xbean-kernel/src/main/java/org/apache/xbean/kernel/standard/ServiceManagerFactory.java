@@ -40,6 +40,12 @@ public class ServiceManagerFactory {
      */
     private final ServiceMonitorBroadcaster serviceMonitor;
 
+    /**
+     * Delivers the events of all services created by this factory to the serviceMonitor.  A single instance is shared
+     * so events are delivered in the order they were fired, even across services.
+     */
+    private final AsyncServiceMonitor asyncServiceMonitor;
+
     /**
      * Events service events are sent asynchronously using this executor.
      */
@@ -70,6 +76,22 @@ public class ServiceManagerFactory {
         this.serviceExecutor = serviceExecutor;
         this.timeoutDuration = timeoutDuration;
         this.timeoutUnits = timeoutUnits;
+        // the kernel waits for RUNNING and STOPPED events, so its own events must never be dropped
+        asyncServiceMonitor = new AsyncServiceMonitor(serviceMonitor,
+                serviceExecutor,
+                AsyncServiceMonitor.DEFAULT_CAPACITY,
+                AsyncServiceMonitor.DEFAULT_BATCH_SIZE,
+                AsyncServiceMonitor.OverflowPolicy.BLOCK);
+    }
+
+    /**
+     * Gets the monitor used to asynchronously deliver service events, which exposes the event queue depth and the
+     * number of events dropped.
+     *
+     * @return the asynchronous service monitor shared by all services created by this factory
+     */
+    public AsyncServiceMonitor getAsyncServiceMonitor() {
+        return asyncServiceMonitor;
     }
 
     /**
@@ -87,7 +109,7 @@ public class ServiceManagerFactory {
                 serviceName,
                 serviceFactory,
                 classLoader,
-                new AsyncServiceMonitor(serviceMonitor, serviceExecutor),
+                asyncServiceMonitor,
                 timeoutDuration,
                 timeoutUnits);
     }
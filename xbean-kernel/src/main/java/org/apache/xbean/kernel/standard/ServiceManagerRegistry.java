@@ -18,17 +18,19 @@ package org.apache.xbean.kernel.standard;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.SortedSet;
-import java.util.TreeSet;
 
 import edu.emory.mathcs.backport.java.util.concurrent.ExecutionException;
+import edu.emory.mathcs.backport.java.util.concurrent.Executor;
 import edu.emory.mathcs.backport.java.util.concurrent.atomic.AtomicLong;
 import org.apache.xbean.kernel.IllegalServiceStateException;
 import org.apache.xbean.kernel.KernelErrorsError;
@@ -66,21 +68,74 @@ public class ServiceManagerRegistry {
     private final Map serviceManagers = new HashMap();
 
     /**
-     * The service managers indexed by the service type.  This map is populated when a service enters the running state.
+     * The service managers indexed by the service type.  This map is an immutable snapshot mapping each type to a
+     * RegistryFutureTask[] sorted by service id.  Writers must hold the serviceManagers lock and replace the whole
+     * snapshot, so readers can use the current value without any locking.
      */
-    private final Map serviceManagersByType = new HashMap();
+    private volatile Map serviceManagersByType = Collections.EMPTY_MAP;
+
+    /**
+     * Returned from the type index when no service managers are registered for a type.
+     */
+    private static final RegistryFutureTask[] NO_FUTURES = new RegistryFutureTask[0];
+
+    /**
+     * The executor used to stop services concurrently during destroy.
+     */
+    private final Executor executor;
+
+    /**
+     * The maximum number of services stopped at the same time during destroy.
+     */
+    private final int maxConcurrency;
+
+    /**
+     * The time each service took to stop during the last destroy, slowest first.
+     */
+    private volatile Map destroyDurations = Collections.EMPTY_MAP;
+
+    /**
+     * Runs tasks in the calling thread.
+     */
+    private static final Executor CALLER_RUNS_EXECUTOR = new Executor() {
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
 
     /**
      * Creates a ServiceManagerRegistry that uses the specified service manager factory to create new service managers.
+     * Services are stopped one at a time in the thread calling destroy.
      *
      * @param serviceManagerFactory the factory for new service managers
      */
     public ServiceManagerRegistry(ServiceManagerFactory serviceManagerFactory) {
+        this(serviceManagerFactory, CALLER_RUNS_EXECUTOR, 1);
+    }
+
+    /**
+     * Creates a ServiceManagerRegistry that uses the specified service manager factory to create new service managers,
+     * and the specified executor to stop services concurrently during destroy.
+     *
+     * @param serviceManagerFactory the factory for new service managers
+     * @param executor the executor used to stop services during destroy
+     * @param maxConcurrency the maximum number of services stopped at the same time
+     */
+    public ServiceManagerRegistry(ServiceManagerFactory serviceManagerFactory, Executor executor, int maxConcurrency) {
+        if (executor == null) throw new NullPointerException("executor is null");
+        if (maxConcurrency < 1) throw new IllegalArgumentException("maxConcurrency must be atleast 1");
         this.serviceManagerFactory = serviceManagerFactory;
+        this.executor = executor;
+        this.maxConcurrency = maxConcurrency;
     }
 
     /**
      * Stops and destroys all services service managers.  This method will FORCE stop the services if necessary.
+     * <p/>
+     * Services are stopped in reverse dependency order; a service is stopped only after the services that depend on
+     * it, and the services it owns, have been destroyed.  Services that do not depend on each other are stopped
+     * concurrently.  The time taken to stop and destroy each service is available from {@link #getDestroyDurations()}
+     * once this method returns.
      *
      * @throws KernelErrorsError if any errors occur while stopping or destroying the service managers
      */
@@ -99,7 +154,10 @@ public class ServiceManagerRegistry {
         for (Iterator iterator = managerFutures.iterator(); iterator.hasNext();) {
             RegistryFutureTask registryFutureTask = (RegistryFutureTask) iterator.next();
             try {
-                managers.add(registryFutureTask.get());
+                Object serviceManager = registryFutureTask.get();
+                if (serviceManager != null) {
+                    managers.add(serviceManager);
+                }
             } catch (InterruptedException e) {
                 // ignore -- this should not happen
                 errors.add(new AssertionError(e));
@@ -108,56 +166,128 @@ public class ServiceManagerRegistry {
             }
         }
 
-        // Be nice and try to stop asynchronously
-        errors.addAll(stopAll(managers, StopStrategies.ASYNCHRONOUS));
-
-        // Be really nice and try to stop asynchronously again
-        errors.addAll(stopAll(managers, StopStrategies.ASYNCHRONOUS));
-
-        // We have been nice enough now nuke them
-        errors.addAll(stopAll(managers, StopStrategies.FORCE));
-
-        // All managers are gaurenteed to be destroyed now
+        // order the managers by registration so ties in the dependency graph and errors are reported consistently
+        Collections.sort(managers);
+        final Map managersByName = new LinkedHashMap();
+        final Map errorsByName = new HashMap();
+        Map serviceFactories = new HashMap();
         for (Iterator iterator = managers.iterator(); iterator.hasNext();) {
             ServiceManager serviceManager = (ServiceManager) iterator.next();
-            try {
-                serviceManager.destroy(StopStrategies.FORCE);
-            } catch (UnsatisfiedConditionsException e) {
-                // this should not happen, because we force stopped
-                errors.add(new AssertionError(e));
-            } catch (IllegalServiceStateException e) {
-                // this should not happen, because we force stopped
-                errors.add(new AssertionError(e));
-            } catch (RuntimeException e) {
-                errors.add(new AssertionError(e));
-            } catch (Error e) {
-                errors.add(new AssertionError(e));
-            }
+            managersByName.put(serviceManager.getServiceName(), serviceManager);
+            errorsByName.put(serviceManager.getServiceName(), new ArrayList());
+            serviceFactories.put(serviceManager.getServiceName(), serviceManager.getServiceFactory());
+        }
+
+        ServiceGraphExecutor graphExecutor = new ServiceGraphExecutor(executor, maxConcurrency, "destroy");
+        ServiceGraphExecutor.Result result = graphExecutor.execute(new ArrayList(managersByName.keySet()),
+                ServiceDependencies.getStopDependencies(serviceFactories),
+                new ServiceGraphExecutor.ServiceOperation() {
+                    public void execute(ServiceName serviceName) {
+                        ServiceManager serviceManager = (ServiceManager) managersByName.get(serviceName);
+                        List serviceErrors = (List) errorsByName.get(serviceName);
+                        serviceErrors.addAll(destroyServiceManager(serviceManager));
+                    }
+                });
+
+        // services not processed because this thread was interrupted are destroyed here, so all managers are
+        // gaurenteed to be destroyed when this method returns
+        for (Iterator iterator = result.getErrors().keySet().iterator(); iterator.hasNext();) {
+            ServiceName serviceName = (ServiceName) iterator.next();
+            ServiceManager serviceManager = (ServiceManager) managersByName.get(serviceName);
+            List serviceErrors = (List) errorsByName.get(serviceName);
+            serviceErrors.add(new AssertionError(result.getErrors().get(serviceName)));
+            serviceErrors.addAll(destroyServiceManager(serviceManager));
+        }
+
+        for (Iterator iterator = managersByName.keySet().iterator(); iterator.hasNext();) {
+            errors.addAll((List) errorsByName.get(iterator.next()));
         }
+        destroyDurations = sortByDuration(result.getDurations());
 
         if (!errors.isEmpty()) {
             throw new KernelErrorsError(errors);
         }
     }
 
-    private List stopAll(List managers, StopStrategy stopStrategy) {
+    /**
+     * Gets the time in milliseconds (Long) each service took to stop and be destroyed during the last call to
+     * {@link #destroy()} keyed by service name.  The map iterates from the slowest service to the fastest, so the
+     * services that held up shutdown come first.
+     *
+     * @return the time each service took to be destroyed, slowest first; empty if destroy has not been called
+     */
+    public Map getDestroyDurations() {
+        return destroyDurations;
+    }
+
+    /**
+     * Stops a service manager with the ASYNCHRONOUS strategy twice and then with the FORCE strategy, and finally
+     * destroys it.
+     *
+     * @param serviceManager the service manager to destroy
+     * @return the errors that occured while stopping or destroying the service manager
+     */
+    private static List destroyServiceManager(ServiceManager serviceManager) {
         List errors = new ArrayList();
-        for (Iterator iterator = managers.iterator(); iterator.hasNext();) {
-            ServiceManager serviceManager = (ServiceManager) iterator.next();
-            try {
-                serviceManager.stop(stopStrategy);
-            } catch (UnsatisfiedConditionsException e) {
-                // this should not happen in with an asynchronous strategy
-                errors.add(new AssertionError(e));
-            } catch (RuntimeException e) {
-                errors.add(new AssertionError(e));
-            } catch (Error e) {
-                errors.add(new AssertionError(e));
-            }
+
+        // Be nice and try to stop asynchronously
+        errors.addAll(stop(serviceManager, StopStrategies.ASYNCHRONOUS));
+
+        // Be really nice and try to stop asynchronously again
+        errors.addAll(stop(serviceManager, StopStrategies.ASYNCHRONOUS));
+
+        // We have been nice enough now nuke it
+        errors.addAll(stop(serviceManager, StopStrategies.FORCE));
+
+        // The manager is gaurenteed to be destroyed now
+        try {
+            serviceManager.destroy(StopStrategies.FORCE);
+        } catch (UnsatisfiedConditionsException e) {
+            // this should not happen, because we force stopped
+            errors.add(new AssertionError(e));
+        } catch (IllegalServiceStateException e) {
+            // this should not happen, because we force stopped
+            errors.add(new AssertionError(e));
+        } catch (RuntimeException e) {
+            errors.add(new AssertionError(e));
+        } catch (Error e) {
+            errors.add(new AssertionError(e));
         }
         return errors;
     }
 
+    private static List stop(ServiceManager serviceManager, StopStrategy stopStrategy) {
+        try {
+            serviceManager.stop(stopStrategy);
+        } catch (UnsatisfiedConditionsException e) {
+            // this should not happen in with an asynchronous strategy
+            return Collections.singletonList(new AssertionError(e));
+        } catch (RuntimeException e) {
+            return Collections.singletonList(new AssertionError(e));
+        } catch (Error e) {
+            return Collections.singletonList(new AssertionError(e));
+        }
+        return Collections.EMPTY_LIST;
+    }
+
+    private static Map sortByDuration(Map durations) {
+        List entries = new ArrayList(durations.entrySet());
+        Collections.sort(entries, new Comparator() {
+            public int compare(Object o1, Object o2) {
+                Long duration1 = (Long) ((Map.Entry) o1).getValue();
+                Long duration2 = (Long) ((Map.Entry) o2).getValue();
+                return duration2.compareTo(duration1);
+            }
+        });
+
+        Map sorted = new LinkedHashMap();
+        for (Iterator iterator = entries.iterator(); iterator.hasNext();) {
+            Map.Entry entry = (Map.Entry) iterator.next();
+            sorted.put(entry.getKey(), entry.getValue());
+        }
+        return Collections.unmodifiableMap(sorted);
+    }
+
     /**
      * Determines if there is a service registered under the specified name.
      *
@@ -215,6 +345,64 @@ public class ServiceManagerRegistry {
         }
     }
 
+    /**
+     * Gets all registered service managers in registration order.
+     *
+     * @return all registered service managers
+     */
+    public List getServiceManagers() {
+        List registryFutureTasks;
+        synchronized (serviceManagers) {
+            registryFutureTasks = new ArrayList(serviceManagers.values());
+        }
+
+        List serviceManagers = new ArrayList(registryFutureTasks.size());
+        for (Iterator iterator = registryFutureTasks.iterator(); iterator.hasNext();) {
+            RegistryFutureTask registryFutureTask = (RegistryFutureTask) iterator.next();
+            try {
+                ServiceManager serviceManager = (ServiceManager) registryFutureTask.get();
+                if (serviceManager != null) {
+                    serviceManagers.add(serviceManager);
+                }
+            } catch (InterruptedException e) {
+                throw new KernelOperationInterruptedException(e, registryFutureTask.getServiceName(), "getServiceManagers()");
+            } catch (ExecutionException ignored) {
+                // registration threw an exception which means it didn't register
+            }
+        }
+        Collections.sort(serviceManagers);
+        return serviceManagers;
+    }
+
+    /**
+     * Gets the service manager registered under the specified name without waiting for a registration or
+     * unregistration of the service that is in progress.  While the service is being registered or unregistered, the
+     * service manager being registered or unregistered is returned, so read only queries such as the service state
+     * are answered immediately.  Operations that change the service should use {@link #getServiceManager(ServiceName)}.
+     *
+     * @param serviceName the unique name of the service
+     * @return the ServiceManager
+     * @throws ServiceNotFoundException if there is no service registered or being registered under the specified name
+     */
+    public ServiceManager peekServiceManager(ServiceName serviceName) throws ServiceNotFoundException {
+        if (serviceName == null) throw new NullPointerException("serviceName is null");
+
+        RegistryFutureTask registryFutureTask;
+        synchronized (serviceManagers) {
+            registryFutureTask = (RegistryFutureTask) serviceManagers.get(serviceName);
+        }
+
+        // this service has no future
+        if (registryFutureTask == null) {
+            throw new ServiceNotFoundException(serviceName);
+        }
+
+        if (!registryFutureTask.isDone()) {
+            return registryFutureTask.getServiceManager();
+        }
+        return getServiceManager(serviceName);
+    }
+
     /**
      * Gets the first registered service manager that creates an instance of the specified type, or null if no service
      * managers create an instance of the specified type.
@@ -223,9 +411,9 @@ public class ServiceManagerRegistry {
      * @return the first registered service manager that creates an instance of the specified type, or null if none found
      */
     public ServiceManager getServiceManager(Class type) {
-        SortedSet serviceManagerFutures = getServiceManagerFutures(type);
-        for (Iterator iterator = serviceManagerFutures.iterator(); iterator.hasNext();) {
-            RegistryFutureTask registryFutureTask = (RegistryFutureTask) iterator.next();
+        RegistryFutureTask[] serviceManagerFutures = getServiceManagerFutures(type);
+        for (int i = 0; i < serviceManagerFutures.length; i++) {
+            RegistryFutureTask registryFutureTask = serviceManagerFutures[i];
             try {
                 ServiceManager serviceManager = (ServiceManager) registryFutureTask.get();
                 if (serviceManager != null) {
@@ -248,10 +436,10 @@ public class ServiceManagerRegistry {
      * @return all service managers that create an instances of the specified type, or an empty list if none found
      */
     public List getServiceManagers(Class type) {
-        SortedSet serviceManagerFutures = getServiceManagerFutures(type);
-        List serviceManagers = new ArrayList(serviceManagerFutures.size());
-        for (Iterator iterator = serviceManagerFutures.iterator(); iterator.hasNext();) {
-            RegistryFutureTask registryFutureTask = (RegistryFutureTask) iterator.next();
+        RegistryFutureTask[] serviceManagerFutures = getServiceManagerFutures(type);
+        List serviceManagers = new ArrayList(serviceManagerFutures.length);
+        for (int i = 0; i < serviceManagerFutures.length; i++) {
+            RegistryFutureTask registryFutureTask = serviceManagerFutures[i];
             try {
                 ServiceManager serviceManager = (ServiceManager) registryFutureTask.get();
                 if (serviceManager != null) {
@@ -273,10 +461,10 @@ public class ServiceManagerRegistry {
      * @param type the of the desired service
      * @return the first registed and running service that is an instance of the specified type or null if none found
      */
-    public synchronized Object getService(Class type) {
-        SortedSet serviceManagerFutures = getServiceManagerFutures(type);
-        for (Iterator iterator = serviceManagerFutures.iterator(); iterator.hasNext();) {
-            RegistryFutureTask registryFutureTask = (RegistryFutureTask) iterator.next();
+    public Object getService(Class type) {
+        RegistryFutureTask[] serviceManagerFutures = getServiceManagerFutures(type);
+        for (int i = 0; i < serviceManagerFutures.length; i++) {
+            RegistryFutureTask registryFutureTask = serviceManagerFutures[i];
             try {
                 ServiceManager serviceManager = (ServiceManager) registryFutureTask.get();
                 if (serviceManager != null) {
@@ -301,7 +489,7 @@ public class ServiceManagerRegistry {
      * @param type the of the desired service
      * @return the all of running service that are an instances of the specified type, or an empty list if none found
      */
-    public synchronized List getServices(Class type) {
+    public List getServices(Class type) {
         List serviceManagers = getServiceManagers(type);
         List services = new ArrayList(serviceManagers.size());
         for (Iterator iterator = serviceManagers.iterator(); iterator.hasNext();) {
@@ -316,15 +504,17 @@ public class ServiceManagerRegistry {
         return services;
     }
 
-    private SortedSet getServiceManagerFutures(Class type) {
-        SortedSet serviceManagerFutures;
-        synchronized (serviceManagers) {
-            serviceManagerFutures = (SortedSet) serviceManagersByType.get(type);
-            if (serviceManagerFutures != null) {
-                serviceManagerFutures = new TreeSet(serviceManagerFutures);
-            } else {
-                serviceManagerFutures = new TreeSet();
-            }
+    /**
+     * Gets the registry futures of the service managers that create an instance of the specified type sorted by
+     * service id.  The returned array is shared with the type index and must not be modified.
+     *
+     * @param type the type of the desired service managers
+     * @return the registry futures for the specified type; never null
+     */
+    private RegistryFutureTask[] getServiceManagerFutures(Class type) {
+        RegistryFutureTask[] serviceManagerFutures = (RegistryFutureTask[]) serviceManagersByType.get(type);
+        if (serviceManagerFutures == null) {
+            return NO_FUTURES;
         }
         return serviceManagerFutures;
     }
@@ -542,29 +732,50 @@ public class ServiceManagerRegistry {
         }
 
         synchronized (serviceManagers) {
+            Map newIndex = new HashMap(serviceManagersByType);
             for (Iterator iterator = allTypes.iterator(); iterator.hasNext();) {
                 Class type = (Class) iterator.next();
-                Set futureServiceManagers = (Set) serviceManagersByType.get(type);
-                if (futureServiceManagers == null) {
-                    futureServiceManagers = new TreeSet();
-                    serviceManagersByType.put(type, futureServiceManagers);
+                RegistryFutureTask[] futures = (RegistryFutureTask[]) newIndex.get(type);
+                if (futures == null) {
+                    futures = NO_FUTURES;
+                }
+
+                // an unregistration task has the same id as the registration task it replaces, and the registration
+                // task stays in the index until the unregistration completes
+                int index = Arrays.binarySearch(futures, registryFutureTask);
+                if (index < 0) {
+                    index = -(index + 1);
+                    RegistryFutureTask[] newFutures = new RegistryFutureTask[futures.length + 1];
+                    System.arraycopy(futures, 0, newFutures, 0, index);
+                    newFutures[index] = registryFutureTask;
+                    System.arraycopy(futures, index, newFutures, index + 1, futures.length - index);
+                    newIndex.put(type, newFutures);
                 }
-                futureServiceManagers.add(registryFutureTask);
             }
+            serviceManagersByType = newIndex;
         }
     }
 
     private void removeTypeIndex(RegistryFutureTask registryFutureTask) {
         if (registryFutureTask == null) throw new NullPointerException("serviceManagerFuture is null");
         synchronized (serviceManagers) {
-            for (Iterator iterator = serviceManagersByType.entrySet().iterator(); iterator.hasNext();) {
+            Map newIndex = new HashMap(serviceManagersByType);
+            for (Iterator iterator = newIndex.entrySet().iterator(); iterator.hasNext();) {
                 Map.Entry entry = (Map.Entry) iterator.next();
-                Set serviceManagers = (Set) entry.getValue();
-                serviceManagers.remove(registryFutureTask);
-                if (serviceManagers.isEmpty()) {
-                    iterator.remove();
+                RegistryFutureTask[] futures = (RegistryFutureTask[]) entry.getValue();
+                int index = Arrays.binarySearch(futures, registryFutureTask);
+                if (index >= 0) {
+                    if (futures.length == 1) {
+                        iterator.remove();
+                    } else {
+                        RegistryFutureTask[] newFutures = new RegistryFutureTask[futures.length - 1];
+                        System.arraycopy(futures, 0, newFutures, 0, index);
+                        System.arraycopy(futures, index + 1, newFutures, index, futures.length - index - 1);
+                        entry.setValue(newFutures);
+                    }
                 }
             }
+            serviceManagersByType = newIndex;
         }
     }
 
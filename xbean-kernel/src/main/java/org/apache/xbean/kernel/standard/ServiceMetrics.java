@@ -0,0 +1,274 @@
+/**
+ *
+ * Copyright 2005-2006 The Apache Software Foundation or its licensors, as applicable.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.kernel.standard;
+
+import edu.emory.mathcs.backport.java.util.concurrent.atomic.AtomicLong;
+import org.apache.xbean.kernel.ServiceName;
+
+/**
+ * ServiceMetrics holds the lifecycle timings of a single service recorded by its ServiceManager.  All times are in
+ * milliseconds.  An instance can be registered with an MBeanServer as a standard MBean; see {@link ServiceMetricsMBean}.
+ *
+ * @author Dain Sundstrom
+ * @version $Id$
+ * @since 2.0
+ */
+public class ServiceMetrics implements ServiceMetricsMBean {
+    private final ServiceName serviceName;
+    private final DurationHistogram startDurations = new DurationHistogram();
+    private final DurationHistogram blockedDurations = new DurationHistogram();
+    private final DurationHistogram stopDurations = new DurationHistogram();
+    private final DurationHistogram lockWaitDurations = new DurationHistogram();
+    private final AtomicLong startFailureCount = new AtomicLong(0);
+
+    /**
+     * Creates the metrics for the specified service.
+     *
+     * @param serviceName the name of the service
+     */
+    public ServiceMetrics(ServiceName serviceName) {
+        if (serviceName == null) throw new NullPointerException("serviceName is null");
+        this.serviceName = serviceName;
+    }
+
+    /**
+     * Gets the name of the service.
+     *
+     * @return the name of the service
+     */
+    public String getServiceName() {
+        return serviceName.toString();
+    }
+
+    /**
+     * Gets the histogram of the time from entering the STARTING state to entering the RUNNING state.
+     *
+     * @return the start durations
+     */
+    public DurationHistogram getStartDurations() {
+        return startDurations;
+    }
+
+    /**
+     * Gets the number of start durations recorded.
+     *
+     * @return the number of start durations recorded
+     */
+    public long getStartCount() {
+        return startDurations.getCount();
+    }
+
+    /**
+     * Gets the sum of all start durations.
+     *
+     * @return the total start time
+     */
+    public long getStartTimeTotal() {
+        return startDurations.getTotal();
+    }
+
+    /**
+     * Gets the longest start duration.
+     *
+     * @return the longest start time
+     */
+    public long getStartTimeMax() {
+        return startDurations.getMax();
+    }
+
+    /**
+     * Gets the most recent start duration.
+     *
+     * @return the last start time
+     */
+    public long getStartTimeLast() {
+        return startDurations.getLast();
+    }
+
+    /**
+     * Gets the histogram of the time spent waiting for unsatisfied start conditions.
+     *
+     * @return the blocked durations
+     */
+    public DurationHistogram getBlockedDurations() {
+        return blockedDurations;
+    }
+
+    /**
+     * Gets the number of blocked durations recorded.
+     *
+     * @return the number of blocked durations recorded
+     */
+    public long getBlockedCount() {
+        return blockedDurations.getCount();
+    }
+
+    /**
+     * Gets the sum of all blocked durations.
+     *
+     * @return the total blocked time
+     */
+    public long getBlockedTimeTotal() {
+        return blockedDurations.getTotal();
+    }
+
+    /**
+     * Gets the longest blocked duration.
+     *
+     * @return the longest blocked time
+     */
+    public long getBlockedTimeMax() {
+        return blockedDurations.getMax();
+    }
+
+    /**
+     * Gets the most recent blocked duration.
+     *
+     * @return the last blocked time
+     */
+    public long getBlockedTimeLast() {
+        return blockedDurations.getLast();
+    }
+
+    /**
+     * Gets the histogram of the time from entering the STOPPING state to entering the STOPPED state.
+     *
+     * @return the stop durations
+     */
+    public DurationHistogram getStopDurations() {
+        return stopDurations;
+    }
+
+    /**
+     * Gets the number of stop durations recorded.
+     *
+     * @return the number of stop durations recorded
+     */
+    public long getStopCount() {
+        return stopDurations.getCount();
+    }
+
+    /**
+     * Gets the sum of all stop durations.
+     *
+     * @return the total stop time
+     */
+    public long getStopTimeTotal() {
+        return stopDurations.getTotal();
+    }
+
+    /**
+     * Gets the longest stop duration.
+     *
+     * @return the longest stop time
+     */
+    public long getStopTimeMax() {
+        return stopDurations.getMax();
+    }
+
+    /**
+     * Gets the most recent stop duration.
+     *
+     * @return the last stop time
+     */
+    public long getStopTimeLast() {
+        return stopDurations.getLast();
+    }
+
+    /**
+     * Gets the histogram of the time spent waiting to obtain the service manager lock.
+     *
+     * @return the lock wait durations
+     */
+    public DurationHistogram getLockWaitDurations() {
+        return lockWaitDurations;
+    }
+
+    /**
+     * Gets the number of lock wait durations recorded.
+     *
+     * @return the number of lock wait durations recorded
+     */
+    public long getLockWaitCount() {
+        return lockWaitDurations.getCount();
+    }
+
+    /**
+     * Gets the sum of all lock wait durations.
+     *
+     * @return the total lock wait time
+     */
+    public long getLockWaitTimeTotal() {
+        return lockWaitDurations.getTotal();
+    }
+
+    /**
+     * Gets the longest lock wait duration.
+     *
+     * @return the longest lock wait time
+     */
+    public long getLockWaitTimeMax() {
+        return lockWaitDurations.getMax();
+    }
+
+    /**
+     * Gets the most recent lock wait duration.
+     *
+     * @return the last lock wait time
+     */
+    public long getLockWaitTimeLast() {
+        return lockWaitDurations.getLast();
+    }
+
+    /**
+     * Gets the number of times the service failed to start.
+     *
+     * @return the number of start failures
+     */
+    public long getStartFailureCount() {
+        return startFailureCount.get();
+    }
+
+    void recordStart(long duration) {
+        startDurations.record(duration);
+    }
+
+    void recordBlocked(long duration) {
+        blockedDurations.record(duration);
+    }
+
+    void recordStop(long duration) {
+        stopDurations.record(duration);
+    }
+
+    void recordLockWait(long duration) {
+        lockWaitDurations.record(duration);
+    }
+
+    void recordStartFailure() {
+        startFailureCount.incrementAndGet();
+    }
+
+    public String toString() {
+        return "[ServiceMetrics " + serviceName +
+                ": start=" + startDurations +
+                ", blocked=" + blockedDurations +
+                ", stop=" + stopDurations +
+                ", lockWait=" + lockWaitDurations +
+                ", startFailures=" + getStartFailureCount() + "]";
+    }
+}
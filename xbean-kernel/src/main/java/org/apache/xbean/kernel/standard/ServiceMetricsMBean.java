@@ -0,0 +1,153 @@
+/**
+ *
+ * Copyright 2005-2006 The Apache Software Foundation or its licensors, as applicable.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.kernel.standard;
+
+/**
+ * The management interface of ServiceMetrics.  Following the JMX naming convention, a ServiceMetrics instance can be
+ * registered directly with an MBeanServer as a standard MBean.  All times are in milliseconds.
+ *
+ * @author Dain Sundstrom
+ * @version $Id$
+ * @since 2.0
+ */
+public interface ServiceMetricsMBean {
+    /**
+     * Gets the name of the service.
+     *
+     * @return the name of the service
+     */
+    String getServiceName();
+
+    /**
+     * Gets the number of times the service has started.
+     *
+     * @return the number of times the service has started
+     */
+    long getStartCount();
+
+    /**
+     * Gets the total time spent starting the service.
+     *
+     * @return the total time spent starting the service
+     */
+    long getStartTimeTotal();
+
+    /**
+     * Gets the longest time spent starting the service.
+     *
+     * @return the longest time spent starting the service
+     */
+    long getStartTimeMax();
+
+    /**
+     * Gets the time spent by the last start of the service.
+     *
+     * @return the time spent by the last start of the service
+     */
+    long getStartTimeLast();
+
+    /**
+     * Gets the number of times a start was blocked by unsatisfied conditions.
+     *
+     * @return the number of times a start was blocked by unsatisfied conditions
+     */
+    long getBlockedCount();
+
+    /**
+     * Gets the total time starts were blocked by unsatisfied conditions.
+     *
+     * @return the total time starts were blocked by unsatisfied conditions
+     */
+    long getBlockedTimeTotal();
+
+    /**
+     * Gets the longest time a start was blocked by unsatisfied conditions.
+     *
+     * @return the longest time a start was blocked by unsatisfied conditions
+     */
+    long getBlockedTimeMax();
+
+    /**
+     * Gets the time the last blocked start was blocked.
+     *
+     * @return the time the last blocked start was blocked
+     */
+    long getBlockedTimeLast();
+
+    /**
+     * Gets the number of times the service has stopped.
+     *
+     * @return the number of times the service has stopped
+     */
+    long getStopCount();
+
+    /**
+     * Gets the total time spent stopping the service.
+     *
+     * @return the total time spent stopping the service
+     */
+    long getStopTimeTotal();
+
+    /**
+     * Gets the longest time spent stopping the service.
+     *
+     * @return the longest time spent stopping the service
+     */
+    long getStopTimeMax();
+
+    /**
+     * Gets the time spent by the last stop of the service.
+     *
+     * @return the time spent by the last stop of the service
+     */
+    long getStopTimeLast();
+
+    /**
+     * Gets the number of times the service lock was acquired.
+     *
+     * @return the number of times the service lock was acquired
+     */
+    long getLockWaitCount();
+
+    /**
+     * Gets the total time spent waiting for the service lock.
+     *
+     * @return the total time spent waiting for the service lock
+     */
+    long getLockWaitTimeTotal();
+
+    /**
+     * Gets the longest time spent waiting for the service lock.
+     *
+     * @return the longest time spent waiting for the service lock
+     */
+    long getLockWaitTimeMax();
+
+    /**
+     * Gets the time spent waiting for the service lock the last time it was acquired.
+     *
+     * @return the time spent waiting for the service lock the last time it was acquired
+     */
+    long getLockWaitTimeLast();
+
+    /**
+     * Gets the number of times the service failed to start.
+     *
+     * @return the number of times the service failed to start
+     */
+    long getStartFailureCount();
+}
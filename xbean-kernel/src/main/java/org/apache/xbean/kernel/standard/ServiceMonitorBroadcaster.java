@@ -18,6 +18,7 @@ package org.apache.xbean.kernel.standard;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
@@ -39,11 +40,20 @@ import org.apache.xbean.kernel.KernelErrorsError;
  * @since 2.0
  */
 public class ServiceMonitorBroadcaster implements ServiceMonitor {
+    private static final ServiceMonitor[] NO_MONITORS = new ServiceMonitor[0];
+
     /**
-     * The monitors for service events.
+     * The monitors for service events.  This map is the master copy of the registrations and is only accessed while
+     * holding its lock.
      */
     private final Map serviceMonitors = new LinkedHashMap();
 
+    /**
+     * An immutable snapshot of the serviceMonitors map used to dispatch events without locking.  It is replaced each
+     * time a monitor is added or removed.
+     */
+    private volatile MonitorSnapshot monitorSnapshot = new MonitorSnapshot(NO_MONITORS, Collections.EMPTY_MAP);
+
     /**
      * The monitor we notify when we get an exception from a service monitor.
      */
@@ -76,7 +86,9 @@ public class ServiceMonitorBroadcaster implements ServiceMonitor {
                 monitors = new LinkedHashSet();
                 serviceMonitors.put(serviceName, monitors);
             }
-            monitors.add(serviceMonitor);
+            if (monitors.add(serviceMonitor)) {
+                updateSnapshot();
+            }
         }
     }
 
@@ -88,224 +100,138 @@ public class ServiceMonitorBroadcaster implements ServiceMonitor {
     public void removeServiceMonitor(ServiceMonitor serviceMonitor) {
         if (serviceMonitor == null) throw new NullPointerException("serviceMonitor is null");
         synchronized (serviceMonitors) {
+            boolean changed = false;
             for (Iterator iterator = serviceMonitors.values().iterator(); iterator.hasNext();) {
                 Set monitors = (Set) iterator.next();
-                monitors.remove(serviceMonitor);
+                changed |= monitors.remove(serviceMonitor);
                 if (monitors.isEmpty()) {
                     iterator.remove();
                 }
             }
+            if (changed) {
+                updateSnapshot();
+            }
         }
     }
 
     /**
-     * Gets the service monitors registered to recieve events for the specified service.  This will include all global
-     * monitors and service specific monitors.
-     *
-     * @param serviceName the name of the service
-     * @return the monitors registerd to recieve events for the specified service
+     * Rebuilds the monitor snapshot from the serviceMonitors map.  The monitors of each specific service are merged
+     * with the global monitors, so dispatching an event is a single map lookup.  Must be called while holding the
+     * serviceMonitors lock.
      */
-    private Set getServiceMonitors(ServiceName serviceName) {
-        synchronized (serviceMonitors) {
-            Set monitors = new LinkedHashSet();
-            Set globalMonitors = (Set) serviceMonitors.get(null);
-            if (globalMonitors != null) {
-                monitors.addAll(globalMonitors);
-            }
-            Set specificMonitors = (Set) serviceMonitors.get(serviceName);
-            if (specificMonitors != null) {
-                monitors.addAll(specificMonitors);
+    private void updateSnapshot() {
+        Set globalMonitors = (Set) serviceMonitors.get(null);
+        if (globalMonitors == null) {
+            globalMonitors = Collections.EMPTY_SET;
+        }
+
+        Map monitorsByName = new HashMap();
+        for (Iterator iterator = serviceMonitors.entrySet().iterator(); iterator.hasNext();) {
+            Map.Entry entry = (Map.Entry) iterator.next();
+            ServiceName serviceName = (ServiceName) entry.getKey();
+            if (serviceName != null) {
+                Set monitors = new LinkedHashSet(globalMonitors);
+                monitors.addAll((Set) entry.getValue());
+                monitorsByName.put(serviceName, monitors.toArray(new ServiceMonitor[monitors.size()]));
             }
-            return monitors;
         }
+
+        monitorSnapshot = new MonitorSnapshot((ServiceMonitor[]) globalMonitors.toArray(new ServiceMonitor[globalMonitors.size()]),
+                monitorsByName);
     }
 
     /**
      * {@inheritDoc}
      */
     public void serviceRegistered(ServiceEvent serviceEvent) {
-        List errors = new ArrayList();
-        Set serviceMonitors = getServiceMonitors(serviceEvent.getServiceName());
-        for (Iterator iterator = serviceMonitors.iterator(); iterator.hasNext();) {
-            ServiceMonitor serviceMonitor = (ServiceMonitor) iterator.next();
-            try {
-                serviceMonitor.serviceRegistered(serviceEvent);
-            } catch (Throwable e) {
-                errors.addAll(fireServiceNotificationError(serviceMonitor, serviceEvent, e));
-            }
-        }
-        if (!errors.isEmpty()) {
-            throw new KernelErrorsError(errors);
-        }
+        fireServiceEvent(ServiceEventTypes.REGISTERED, serviceEvent);
     }
 
     /**
      * {@inheritDoc}
      */
     public void serviceStarting(ServiceEvent serviceEvent) {
-        List errors = new ArrayList();
-        Set serviceMonitors = getServiceMonitors(serviceEvent.getServiceName());
-        for (Iterator iterator = serviceMonitors.iterator(); iterator.hasNext();) {
-            ServiceMonitor serviceMonitor = (ServiceMonitor) iterator.next();
-            try {
-                serviceMonitor.serviceStarting(serviceEvent);
-            } catch (Throwable e) {
-                errors.addAll(fireServiceNotificationError(serviceMonitor, serviceEvent, e));
-            }
-        }
-        if (!errors.isEmpty()) {
-            throw new KernelErrorsError(errors);
-        }
+        fireServiceEvent(ServiceEventTypes.STARTING, serviceEvent);
     }
 
     /**
      * {@inheritDoc}
      */
     public void serviceWaitingToStart(ServiceEvent serviceEvent) {
-        List errors = new ArrayList();
-        Set serviceMonitors = getServiceMonitors(serviceEvent.getServiceName());
-        for (Iterator iterator = serviceMonitors.iterator(); iterator.hasNext();) {
-            ServiceMonitor serviceMonitor = (ServiceMonitor) iterator.next();
-            try {
-                serviceMonitor.serviceWaitingToStart(serviceEvent);
-            } catch (Throwable e) {
-                errors.addAll(fireServiceNotificationError(serviceMonitor, serviceEvent, e));
-            }
-        }
-        if (!errors.isEmpty()) {
-            throw new KernelErrorsError(errors);
-        }
+        fireServiceEvent(ServiceEventTypes.WAITING_TO_START, serviceEvent);
     }
 
     /**
      * {@inheritDoc}
      */
     public void serviceStartError(ServiceEvent serviceEvent) {
-        List errors = new ArrayList();
-        Set serviceMonitors = getServiceMonitors(serviceEvent.getServiceName());
-        for (Iterator iterator = serviceMonitors.iterator(); iterator.hasNext();) {
-            ServiceMonitor serviceMonitor = (ServiceMonitor) iterator.next();
-            try {
-                serviceMonitor.serviceStartError(serviceEvent);
-            } catch (Throwable e) {
-                errors.addAll(fireServiceNotificationError(serviceMonitor, serviceEvent, e));
-            }
-        }
-        if (!errors.isEmpty()) {
-            throw new KernelErrorsError(errors);
-        }
+        fireServiceEvent(ServiceEventTypes.START_ERROR, serviceEvent);
     }
 
     /**
      * {@inheritDoc}
      */
     public void serviceRunning(ServiceEvent serviceEvent) {
-        List errors = new ArrayList();
-        Set serviceMonitors = getServiceMonitors(serviceEvent.getServiceName());
-        for (Iterator iterator = serviceMonitors.iterator(); iterator.hasNext();) {
-            ServiceMonitor serviceMonitor = (ServiceMonitor) iterator.next();
-            try {
-                serviceMonitor.serviceRunning(serviceEvent);
-            } catch (Throwable e) {
-                errors.addAll(fireServiceNotificationError(serviceMonitor, serviceEvent, e));
-            }
-        }
-        if (!errors.isEmpty()) {
-            throw new KernelErrorsError(errors);
-        }
+        fireServiceEvent(ServiceEventTypes.RUNNING, serviceEvent);
     }
 
     /**
      * {@inheritDoc}
      */
     public void serviceStopping(ServiceEvent serviceEvent) {
-        List errors = new ArrayList();
-        Set serviceMonitors = getServiceMonitors(serviceEvent.getServiceName());
-        for (Iterator iterator = serviceMonitors.iterator(); iterator.hasNext();) {
-            ServiceMonitor serviceMonitor = (ServiceMonitor) iterator.next();
-            try {
-                serviceMonitor.serviceStopping(serviceEvent);
-            } catch (Throwable e) {
-                errors.addAll(fireServiceNotificationError(serviceMonitor, serviceEvent, e));
-            }
-        }
-        if (!errors.isEmpty()) {
-            throw new KernelErrorsError(errors);
-        }
+        fireServiceEvent(ServiceEventTypes.STOPPING, serviceEvent);
     }
 
     /**
      * {@inheritDoc}
      */
     public void serviceWaitingToStop(ServiceEvent serviceEvent) {
-        List errors = new ArrayList();
-        Set serviceMonitors = getServiceMonitors(serviceEvent.getServiceName());
-        for (Iterator iterator = serviceMonitors.iterator(); iterator.hasNext();) {
-            ServiceMonitor serviceMonitor = (ServiceMonitor) iterator.next();
-            try {
-                serviceMonitor.serviceWaitingToStop(serviceEvent);
-            } catch (Throwable e) {
-                errors.addAll(fireServiceNotificationError(serviceMonitor, serviceEvent, e));
-            }
-        }
-        if (!errors.isEmpty()) {
-            throw new KernelErrorsError(errors);
-        }
+        fireServiceEvent(ServiceEventTypes.WAITING_TO_STOP, serviceEvent);
     }
 
     /**
      * {@inheritDoc}
      */
     public void serviceStopError(ServiceEvent serviceEvent) {
-        List errors = new ArrayList();
-        Set serviceMonitors = getServiceMonitors(serviceEvent.getServiceName());
-        for (Iterator iterator = serviceMonitors.iterator(); iterator.hasNext();) {
-            ServiceMonitor serviceMonitor = (ServiceMonitor) iterator.next();
-            try {
-                serviceMonitor.serviceStopError(serviceEvent);
-            } catch (Throwable e) {
-                errors.addAll(fireServiceNotificationError(serviceMonitor, serviceEvent, e));
-            }
-        }
-        if (!errors.isEmpty()) {
-            throw new KernelErrorsError(errors);
-        }
+        fireServiceEvent(ServiceEventTypes.STOP_ERROR, serviceEvent);
     }
 
     /**
      * {@inheritDoc}
      */
     public void serviceStopped(ServiceEvent serviceEvent) {
-        List errors = new ArrayList();
-        Set serviceMonitors = getServiceMonitors(serviceEvent.getServiceName());
-        for (Iterator iterator = serviceMonitors.iterator(); iterator.hasNext();) {
-            ServiceMonitor serviceMonitor = (ServiceMonitor) iterator.next();
-            try {
-                serviceMonitor.serviceStopped(serviceEvent);
-            } catch (Throwable e) {
-                errors.addAll(fireServiceNotificationError(serviceMonitor, serviceEvent, e));
-            }
-        }
-        if (!errors.isEmpty()) {
-            throw new KernelErrorsError(errors);
-        }
+        fireServiceEvent(ServiceEventTypes.STOPPED, serviceEvent);
     }
 
     /**
      * {@inheritDoc}
      */
     public void serviceUnregistered(ServiceEvent serviceEvent) {
-        List errors = new ArrayList();
-        Set serviceMonitors = getServiceMonitors(serviceEvent.getServiceName());
-        for (Iterator iterator = serviceMonitors.iterator(); iterator.hasNext();) {
-            ServiceMonitor serviceMonitor = (ServiceMonitor) iterator.next();
+        fireServiceEvent(ServiceEventTypes.UNREGISTERED, serviceEvent);
+    }
+
+    private void fireServiceEvent(int type, ServiceEvent serviceEvent) {
+        ServiceMonitor[] monitors = monitorSnapshot.getServiceMonitors(serviceEvent.getServiceName());
+        if (monitors.length == 0) {
+            return;
+        }
+
+        List errors = null;
+        for (int i = 0; i < monitors.length; i++) {
+            ServiceMonitor serviceMonitor = monitors[i];
             try {
-                serviceMonitor.serviceUnregistered(serviceEvent);
+                ServiceEventTypes.deliver(serviceMonitor, type, serviceEvent);
             } catch (Throwable e) {
-                errors.addAll(fireServiceNotificationError(serviceMonitor, serviceEvent, e));
+                List notificationErrors = fireServiceNotificationError(serviceMonitor, serviceEvent, e);
+                if (!notificationErrors.isEmpty()) {
+                    if (errors == null) {
+                        errors = new ArrayList();
+                    }
+                    errors.addAll(notificationErrors);
+                }
             }
         }
-        if (!errors.isEmpty()) {
+        if (errors != null) {
             throw new KernelErrorsError(errors);
         }
     }
@@ -322,4 +248,32 @@ public class ServiceMonitorBroadcaster implements ServiceMonitor {
         }
         return Collections.EMPTY_LIST;
     }
+
+    /**
+     * An immutable view of the registered monitors.
+     */
+    private static final class MonitorSnapshot {
+        private final ServiceMonitor[] globalMonitors;
+        private final Map monitorsByName;
+
+        private MonitorSnapshot(ServiceMonitor[] globalMonitors, Map monitorsByName) {
+            this.globalMonitors = globalMonitors;
+            this.monitorsByName = monitorsByName;
+        }
+
+        /**
+         * Gets the service monitors registered to recieve events for the specified service.  This will include all
+         * global monitors and service specific monitors.  The returned array must not be modified.
+         *
+         * @param serviceName the name of the service
+         * @return the monitors registerd to recieve events for the specified service
+         */
+        private ServiceMonitor[] getServiceMonitors(ServiceName serviceName) {
+            ServiceMonitor[] monitors = (ServiceMonitor[]) monitorsByName.get(serviceName);
+            if (monitors == null) {
+                return globalMonitors;
+            }
+            return monitors;
+        }
+    }
 }
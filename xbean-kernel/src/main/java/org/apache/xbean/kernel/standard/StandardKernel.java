@@ -18,8 +18,12 @@ package org.apache.xbean.kernel.standard;
 
 import java.util.List;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
+import edu.emory.mathcs.backport.java.util.concurrent.Callable;
 import edu.emory.mathcs.backport.java.util.concurrent.Executor;
 import edu.emory.mathcs.backport.java.util.concurrent.Executors;
 import edu.emory.mathcs.backport.java.util.concurrent.TimeUnit;
@@ -32,10 +36,12 @@ import org.apache.xbean.kernel.KernelErrorsError;
 import org.apache.xbean.kernel.KernelMonitor;
 import org.apache.xbean.kernel.ServiceAlreadyExistsException;
 import org.apache.xbean.kernel.ServiceFactory;
+import org.apache.xbean.kernel.ServiceFuture;
 import org.apache.xbean.kernel.ServiceMonitor;
 import org.apache.xbean.kernel.ServiceName;
 import org.apache.xbean.kernel.ServiceNotFoundException;
 import org.apache.xbean.kernel.ServiceRegistrationException;
+import org.apache.xbean.kernel.ServiceStartErrorsException;
 import org.apache.xbean.kernel.ServiceState;
 import org.apache.xbean.kernel.StartStrategies;
 import org.apache.xbean.kernel.StartStrategy;
@@ -74,12 +80,13 @@ public class StandardKernel implements Kernel {
     private final ServiceMonitorBroadcaster serviceMonitor = new ServiceMonitorBroadcaster(kernelMonitor);
 
     /**
-     * If true, the kernel is still running.
+     * If true, the kernel is still running.  This flag is read without locking on every kernel operation, but it must
+     * only be changed while holding the destroyLock.
      */
-    private boolean running = true;
+    private volatile boolean running = true;
 
     /**
-     * Lock that should be acquired before accessing the running boolean flag.
+     * Lock that must be acquired before changing the running boolean flag or waiting for destruction.
      */
     private final Lock destroyLock = new ReentrantLock();
 
@@ -93,6 +100,16 @@ public class StandardKernel implements Kernel {
      */
     private ServiceManagerFactory serviceManagerFactory;
 
+    /**
+     * The executor used for asynchronous service operations.
+     */
+    private final Executor serviceExecutor;
+
+    /**
+     * The maximum number of services the kernel will start or stop at the same time during a bulk operation.
+     */
+    private final int maxConcurrency;
+
     /**
      * Creates a kernel using the specified name.
      *
@@ -111,14 +128,30 @@ public class StandardKernel implements Kernel {
      * @param timeoutUnits the unit of measure for the timeoutDuration
      */
     public StandardKernel(String kernelName, Executor serviceExecutor, long timeoutDuration, TimeUnit timeoutUnits) {
+        this(kernelName, serviceExecutor, timeoutDuration, timeoutUnits, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a kernel using the specified name.
+     *
+     * @param kernelName the unique name of this kernel
+     * @param serviceExecutor the executor to use for asynchronous service operations
+     * @param timeoutDuration the maximum duration to wait for a service event to complete
+     * @param timeoutUnits the unit of measure for the timeoutDuration
+     * @param maxConcurrency the maximum number of services started or stopped at the same time during bulk operations
+     */
+    public StandardKernel(String kernelName, Executor serviceExecutor, long timeoutDuration, TimeUnit timeoutUnits, int maxConcurrency) {
         if (kernelName == null) throw new NullPointerException("kernelName is null");
         if (kernelName.length() ==0) throw new IllegalArgumentException("kernelName must be atleast one character long");
         if (serviceExecutor == null) throw new NullPointerException("serviceExecutor is null");
         if (timeoutUnits == null) throw new NullPointerException("timeoutUnits is null");
+        if (maxConcurrency < 1) throw new IllegalArgumentException("maxConcurrency must be atleast 1");
 
         this.kernelName = kernelName;
+        this.serviceExecutor = serviceExecutor;
+        this.maxConcurrency = maxConcurrency;
         serviceManagerFactory = new ServiceManagerFactory(this, serviceMonitor, serviceExecutor, timeoutDuration, timeoutUnits);
-        serviceManagerRegistry = new ServiceManagerRegistry(serviceManagerFactory);
+        serviceManagerRegistry = new ServiceManagerRegistry(serviceManagerFactory, serviceExecutor, maxConcurrency);
     }
 
     /**
@@ -151,6 +184,17 @@ public class StandardKernel implements Kernel {
         }
     }
 
+    /**
+     * Gets the time in milliseconds (Long) each service took to stop and be destroyed when this kernel was destroyed
+     * keyed by service name.  The map iterates from the slowest service to the fastest, so the services that held up
+     * shutdown come first.
+     *
+     * @return the time each service took to be destroyed, slowest first; empty if the kernel is running
+     */
+    public Map getDestroyDurations() {
+        return serviceManagerRegistry.getDestroyDurations();
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -174,12 +218,7 @@ public class StandardKernel implements Kernel {
      * {@inheritDoc}
      */
     public boolean isRunning() {
-        destroyLock.lock();
-        try {
-            return running;
-        } finally {
-            destroyLock.unlock();
-        }
+        return running;
     }
 
     /**
@@ -241,7 +280,7 @@ public class StandardKernel implements Kernel {
      */
     public ServiceState getServiceState(ServiceName serviceName) throws ServiceNotFoundException {
         if (serviceName == null) throw new NullPointerException("serviceName is null");
-        ServiceManager serviceManager = getServiceManager(serviceName);
+        ServiceManager serviceManager = peekServiceManager(serviceName);
         return serviceManager.getState();
     }
 
@@ -250,10 +289,40 @@ public class StandardKernel implements Kernel {
      */
     public long getServiceStartTime(ServiceName serviceName) throws ServiceNotFoundException {
         if (serviceName == null) throw new NullPointerException("serviceName is null");
-        ServiceManager serviceManager = getServiceManager(serviceName);
+        ServiceManager serviceManager = peekServiceManager(serviceName);
         return serviceManager.getStartTime();
     }
 
+    /**
+     * Gets the lifecycle timings recorded for the specified service: the time taken to start and stop, the time spent
+     * blocked on unsatisfied start conditions and the time spent waiting for the service lock.
+     *
+     * @param serviceName the unique name of the service
+     * @return the lifecycle timings of the service
+     * @throws ServiceNotFoundException if there is no service registered under the specified name
+     */
+    public ServiceMetrics getServiceMetrics(ServiceName serviceName) throws ServiceNotFoundException {
+        if (serviceName == null) throw new NullPointerException("serviceName is null");
+        ServiceManager serviceManager = getServiceManager(serviceName);
+        return serviceManager.getMetrics();
+    }
+
+    /**
+     * Gets the lifecycle timings of every registered service.
+     *
+     * @return a map from the service name to the ServiceMetrics of the service, in registration order
+     * @see #getServiceMetrics(ServiceName)
+     */
+    public Map getServiceMetrics() {
+        List serviceManagers = serviceManagerRegistry.getServiceManagers();
+        Map serviceMetrics = new LinkedHashMap(serviceManagers.size());
+        for (Iterator iterator = serviceManagers.iterator(); iterator.hasNext();) {
+            ServiceManager serviceManager = (ServiceManager) iterator.next();
+            serviceMetrics.put(serviceManager.getServiceName(), serviceManager.getMetrics());
+        }
+        return serviceMetrics;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -312,6 +381,54 @@ public class StandardKernel implements Kernel {
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public void startServices(List serviceNames) throws ServiceStartErrorsException {
+        if (serviceNames == null) throw new NullPointerException("serviceNames is null");
+        startServices(serviceNames, StartStrategies.SYNCHRONOUS);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void startServices(List serviceNames, final StartStrategy startStrategy) throws ServiceStartErrorsException {
+        if (serviceNames == null) throw new NullPointerException("serviceNames is null");
+        if (startStrategy == null) throw new NullPointerException("startStrategy is null");
+
+        ServiceGraphExecutor graphExecutor = new ServiceGraphExecutor(serviceExecutor, maxConcurrency, "startServices");
+        ServiceGraphExecutor.Result result = graphExecutor.execute(serviceNames,
+                getStartDependencies(serviceNames),
+                new ServiceGraphExecutor.ServiceOperation() {
+                    public void execute(ServiceName serviceName) throws Exception {
+                        startService(serviceName, false, startStrategy);
+                    }
+                });
+
+        if (!result.getErrors().isEmpty()) {
+            throw new ServiceStartErrorsException(result.getErrors());
+        }
+    }
+
+    /**
+     * Gets the services each of the specified services must wait for before starting.
+     *
+     * @param serviceNames the services to be started
+     * @return a Map from ServiceName to the Set of ServiceNames it depends on
+     */
+    private Map getStartDependencies(List serviceNames) {
+        Map serviceFactories = new HashMap();
+        for (Iterator iterator = serviceNames.iterator(); iterator.hasNext();) {
+            ServiceName serviceName = (ServiceName) iterator.next();
+            try {
+                serviceFactories.put(serviceName, getServiceManager(serviceName).getServiceFactory());
+            } catch (ServiceNotFoundException ignored) {
+                // the error will be reported when the service is started
+            }
+        }
+        return ServiceDependencies.getStartDependencies(serviceFactories);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -330,6 +447,42 @@ public class StandardKernel implements Kernel {
         serviceManager.stop(stopStrategy);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public ServiceFuture startServiceAsync(final ServiceName serviceName, final StartStrategy startStrategy) {
+        if (serviceName == null) throw new NullPointerException("serviceName is null");
+        if (startStrategy == null) throw new NullPointerException("startStrategy is null");
+        ServiceFuture serviceFuture = new ServiceFuture(serviceName, new Callable() {
+            public Object call() throws Exception {
+                ServiceManager serviceManager = getServiceManager(serviceName);
+                startService(serviceName, false, startStrategy);
+                if (serviceManager.getState() != ServiceState.RUNNING) {
+                    return null;
+                }
+                return serviceManager.getService();
+            }
+        });
+        serviceExecutor.execute(serviceFuture);
+        return serviceFuture;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public ServiceFuture stopServiceAsync(final ServiceName serviceName, final StopStrategy stopStrategy) {
+        if (serviceName == null) throw new NullPointerException("serviceName is null");
+        if (stopStrategy == null) throw new NullPointerException("stopStrategy is null");
+        ServiceFuture serviceFuture = new ServiceFuture(serviceName, new Callable() {
+            public Object call() throws Exception {
+                stopService(serviceName, stopStrategy);
+                return null;
+            }
+        });
+        serviceExecutor.execute(serviceFuture);
+        return serviceFuture;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -355,10 +508,36 @@ public class StandardKernel implements Kernel {
      */
     public Object getService(ServiceName serviceName) throws ServiceNotFoundException, IllegalArgumentException {
         if (serviceName == null) throw new NullPointerException("serviceName is null");
-        ServiceManager serviceManager = getServiceManager(serviceName);
+        ServiceManager serviceManager = peekServiceManager(serviceName);
         return serviceManager.getService();
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public ServiceFuture getServiceAsync(ServiceName serviceName) {
+        if (serviceName == null) throw new NullPointerException("serviceName is null");
+        RunningServiceFuture serviceFuture = new RunningServiceFuture(this, serviceName);
+        if (!isRunning()) {
+            serviceFuture.serviceNotFound();
+            return serviceFuture;
+        }
+
+        // listen before checking the state so we can not miss the transition to RUNNING
+        serviceMonitor.addServiceMonitor(serviceFuture.getServiceMonitor(), serviceName);
+        try {
+            // peek so a registration in progress is not waited for; if the service is not running yet the
+            // RUNNING event completes the future
+            ServiceManager serviceManager = peekServiceManager(serviceName);
+            if (serviceManager.getState() == ServiceState.RUNNING) {
+                serviceFuture.serviceRunning(serviceManager.getService());
+            }
+        } catch (ServiceNotFoundException e) {
+            serviceFuture.serviceNotFound();
+        }
+        return serviceFuture;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -434,6 +613,19 @@ public class StandardKernel implements Kernel {
         return serviceManager.getClassLoader();
     }
 
+    /**
+     * Gets the service manager for a read only query.  This does not wait for a registration or unregistration of the
+     * service that is in progress.
+     */
+    private ServiceManager peekServiceManager(ServiceName serviceName) throws ServiceNotFoundException {
+        if (!isRunning()) {
+            throw new ServiceNotFoundException(serviceName);
+        }
+
+        ServiceManager serviceManager = serviceManagerRegistry.peekServiceManager(serviceName);
+        return serviceManager;
+    }
+
     private ServiceManager getServiceManager(ServiceName serviceName) throws ServiceNotFoundException {
         if (!isRunning()) {
             throw new ServiceNotFoundException(serviceName);
@@ -470,7 +662,7 @@ public class StandardKernel implements Kernel {
         if (!isRunning()) {
             throw new IllegalStateException("Kernel is stopped");
         }
-        addServiceMonitor(serviceMonitor, null);
+        this.serviceMonitor.addServiceMonitor(serviceMonitor, null);
     }
 
     /**
@@ -0,0 +1,290 @@
+/**
+ *
+ * Copyright 2005-2006 The Apache Software Foundation or its licensors, as applicable.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.kernel.standard;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+
+import edu.emory.mathcs.backport.java.util.concurrent.Executor;
+import junit.framework.TestCase;
+import org.apache.xbean.kernel.NullServiceMonitor;
+import org.apache.xbean.kernel.ServiceEvent;
+import org.apache.xbean.kernel.ServiceName;
+import org.apache.xbean.kernel.StaticServiceFactory;
+import org.apache.xbean.kernel.StringServiceName;
+
+/**
+ * Tests AsyncServiceMonitor.
+ *
+ * @author Dain Sundstrom
+ * @version $Id$
+ * @since 2.0
+ */
+public class AsyncServiceMonitorTest extends TestCase {
+    private static final StandardKernel KERNEL = new StandardKernel("test");
+    private static final StaticServiceFactory SERVICE_FACTORY = new StaticServiceFactory(new Object());
+    private static final ClassLoader SYSTEM_CLASS_LOADER = ClassLoader.getSystemClassLoader();
+    private static final ServiceName SERVICE_A = new StringServiceName("a");
+    private static final ServiceName SERVICE_B = new StringServiceName("b");
+
+    private final ManualExecutor executor = new ManualExecutor();
+    private final RecordingServiceMonitor delegate = new RecordingServiceMonitor();
+
+    /**
+     * Verifies events are delivered in the order fired by a single drain task.
+     */
+    public void testOrderedBatchDelivery() {
+        AsyncServiceMonitor monitor = new AsyncServiceMonitor(delegate, executor, 16, 2, AsyncServiceMonitor.OverflowPolicy.BLOCK);
+        monitor.serviceRegistered(createEvent(SERVICE_A));
+        monitor.serviceStarting(createEvent(SERVICE_A));
+        monitor.serviceRegistered(createEvent(SERVICE_B));
+        monitor.serviceRunning(createEvent(SERVICE_A));
+        monitor.serviceStopped(createEvent(SERVICE_A));
+
+        assertEquals(1, executor.getTaskCount());
+        assertEquals(5, monitor.getQueueDepth());
+        assertTrue(delegate.events.isEmpty());
+
+        executor.runAll();
+        assertEquals(list(new String[]{"a:registered", "a:starting", "b:registered", "a:running", "a:stopped"}), delegate.events);
+        assertEquals(0, monitor.getQueueDepth());
+        assertEquals(5, monitor.getDeliveredEventCount());
+        assertEquals(0, monitor.getDroppedEventCount());
+
+        // once drained a new event schedules a new task
+        monitor.serviceUnregistered(createEvent(SERVICE_A));
+        assertEquals(1, executor.getTaskCount());
+        executor.runAll();
+        assertEquals("a:unregistered", delegate.events.get(5));
+    }
+
+    /**
+     * Verifies a failing delegate does not stop delivery of later events.
+     */
+    public void testDelegateFailure() {
+        delegate.fail = true;
+        AsyncServiceMonitor monitor = new AsyncServiceMonitor(delegate, executor);
+        monitor.serviceStarting(createEvent(SERVICE_A));
+        monitor.serviceRunning(createEvent(SERVICE_A));
+        executor.runAll();
+        assertEquals(list(new String[]{"a:starting", "a:running"}), delegate.events);
+    }
+
+    /**
+     * Verifies an Error thrown by the delegate does not lose the rest of the batch being delivered.
+     */
+    public void testDelegateError() {
+        RecordingServiceMonitor erroringDelegate = new RecordingServiceMonitor() {
+            public void serviceStarting(ServiceEvent serviceEvent) {
+                super.serviceStarting(serviceEvent);
+                throw new DeliveryError();
+            }
+        };
+        AsyncServiceMonitor monitor = new AsyncServiceMonitor(erroringDelegate, executor, 16, 16, AsyncServiceMonitor.OverflowPolicy.BLOCK);
+        monitor.serviceStarting(createEvent(SERVICE_A));
+        monitor.serviceRunning(createEvent(SERVICE_A));
+        monitor.serviceRunning(createEvent(SERVICE_B));
+        try {
+            executor.runAll();
+            fail("expected DeliveryError");
+        } catch (DeliveryError expected) {
+        }
+        assertEquals(list(new String[]{"a:starting", "a:running", "b:running"}), erroringDelegate.events);
+        assertEquals(3, monitor.getDeliveredEventCount());
+        assertEquals(0, monitor.getQueueDepth());
+    }
+
+    /**
+     * Verifies the oldest event is discarded when the buffer is full.
+     */
+    public void testDropOldest() {
+        AsyncServiceMonitor monitor = new AsyncServiceMonitor(delegate, executor, 2, 2, AsyncServiceMonitor.OverflowPolicy.DROP_OLDEST);
+        monitor.serviceStarting(createEvent(SERVICE_A));
+        monitor.serviceStarting(createEvent(SERVICE_B));
+        monitor.serviceRunning(createEvent(SERVICE_A));
+        assertEquals(2, monitor.getQueueDepth());
+        assertEquals(1, monitor.getDroppedEventCount());
+
+        executor.runAll();
+        assertEquals(list(new String[]{"b:starting", "a:running"}), delegate.events);
+    }
+
+    /**
+     * Verifies an event replaces the newest buffered event of the same service when the buffer is full, and that the
+     * oldest event is discarded if no event of the same service is buffered.
+     */
+    public void testCoalesce() {
+        AsyncServiceMonitor monitor = new AsyncServiceMonitor(delegate, executor, 2, 2, AsyncServiceMonitor.OverflowPolicy.COALESCE);
+        monitor.serviceStarting(createEvent(SERVICE_A));
+        monitor.serviceStarting(createEvent(SERVICE_B));
+        monitor.serviceRunning(createEvent(SERVICE_A));
+        monitor.serviceRunning(createEvent(SERVICE_B));
+        assertEquals(2, monitor.getQueueDepth());
+        assertEquals(2, monitor.getDroppedEventCount());
+
+        executor.runAll();
+        assertEquals(list(new String[]{"a:running", "b:running"}), delegate.events);
+
+        // no queued event for the service so the oldest is dropped
+        monitor.serviceStopping(createEvent(SERVICE_A));
+        monitor.serviceStopped(createEvent(SERVICE_A));
+        monitor.serviceStopping(createEvent(SERVICE_B));
+        assertEquals(3, monitor.getDroppedEventCount());
+        executor.runAll();
+        assertEquals(list(new String[]{"a:running", "b:running", "a:stopped", "b:stopping"}), delegate.events);
+    }
+
+    /**
+     * Verifies the firing thread waits for the drain task when the buffer is full.
+     */
+    public void testBlock() throws Exception {
+        final AsyncServiceMonitor monitor = new AsyncServiceMonitor(delegate, executor, 1, 1, AsyncServiceMonitor.OverflowPolicy.BLOCK);
+        monitor.serviceStarting(createEvent(SERVICE_A));
+
+        Thread thread = new Thread("AsyncServiceMonitorTest") {
+            public void run() {
+                monitor.serviceRunning(createEvent(SERVICE_A));
+            }
+        };
+        thread.start();
+        thread.join(100);
+        assertTrue(thread.isAlive());
+        assertEquals(1, monitor.getQueueDepth());
+
+        while (thread.isAlive() || executor.getTaskCount() > 0) {
+            executor.runAll();
+            thread.join(10);
+        }
+        assertEquals(list(new String[]{"a:starting", "a:running"}), delegate.events);
+        assertEquals(0, monitor.getDroppedEventCount());
+    }
+
+    /**
+     * Verifies events fired by the delegate on the drain thread do not wait for the full buffer it is draining, and
+     * are not lost either.
+     */
+    public void testBlockFromDrainThread() {
+        final AsyncServiceMonitor[] monitor = new AsyncServiceMonitor[1];
+        RecordingServiceMonitor refiringDelegate = new RecordingServiceMonitor() {
+            public void serviceStarting(ServiceEvent serviceEvent) {
+                super.serviceStarting(serviceEvent);
+                monitor[0].serviceRunning(createEvent(SERVICE_A));
+                monitor[0].serviceRunning(createEvent(SERVICE_B));
+            }
+        };
+        monitor[0] = new AsyncServiceMonitor(refiringDelegate, executor, 1, 1, AsyncServiceMonitor.OverflowPolicy.BLOCK);
+        monitor[0].serviceStarting(createEvent(SERVICE_A));
+
+        executor.runAll();
+        assertEquals(list(new String[]{"a:starting", "a:running", "b:running"}), refiringDelegate.events);
+        assertEquals(0, monitor[0].getDroppedEventCount());
+    }
+
+    /**
+     * Verifies the default monitor never blocks the firing thread.
+     */
+    public void testDefaultDoesNotBlock() {
+        AsyncServiceMonitor monitor = new AsyncServiceMonitor(delegate, executor);
+        for (int i = 0; i < AsyncServiceMonitor.DEFAULT_CAPACITY + 10; i++) {
+            monitor.serviceRunning(createEvent(new StringServiceName("service" + i)));
+        }
+        assertEquals(AsyncServiceMonitor.DEFAULT_CAPACITY, monitor.getQueueDepth());
+        assertEquals(10, monitor.getDroppedEventCount());
+    }
+
+    private static ServiceEvent createEvent(ServiceName serviceName) {
+        return new ServiceEvent(0,
+                KERNEL,
+                serviceName,
+                SERVICE_FACTORY,
+                SYSTEM_CLASS_LOADER,
+                null,
+                null,
+                null);
+    }
+
+    private static List list(String[] values) {
+        return new ArrayList(Arrays.asList(values));
+    }
+
+    private static class DeliveryError extends Error {
+    }
+
+    private static class ManualExecutor implements Executor {
+        private final LinkedList tasks = new LinkedList();
+
+        public synchronized void execute(Runnable command) {
+            tasks.add(command);
+        }
+
+        public synchronized int getTaskCount() {
+            return tasks.size();
+        }
+
+        public void runAll() {
+            while (true) {
+                Runnable task;
+                synchronized (this) {
+                    if (tasks.isEmpty()) {
+                        return;
+                    }
+                    task = (Runnable) tasks.removeFirst();
+                }
+                task.run();
+            }
+        }
+    }
+
+    private static class RecordingServiceMonitor extends NullServiceMonitor {
+        private final List events = Collections.synchronizedList(new ArrayList());
+        private boolean fail;
+
+        private void record(ServiceEvent serviceEvent, String type) {
+            events.add(serviceEvent.getServiceName() + ":" + type);
+            if (fail) {
+                throw new RuntimeException("failed delivering " + type);
+            }
+        }
+
+        public void serviceRegistered(ServiceEvent serviceEvent) {
+            record(serviceEvent, "registered");
+        }
+
+        public void serviceStarting(ServiceEvent serviceEvent) {
+            record(serviceEvent, "starting");
+        }
+
+        public void serviceRunning(ServiceEvent serviceEvent) {
+            record(serviceEvent, "running");
+        }
+
+        public void serviceStopping(ServiceEvent serviceEvent) {
+            record(serviceEvent, "stopping");
+        }
+
+        public void serviceStopped(ServiceEvent serviceEvent) {
+            record(serviceEvent, "stopped");
+        }
+
+        public void serviceUnregistered(ServiceEvent serviceEvent) {
+            record(serviceEvent, "unregistered");
+        }
+    }
+}
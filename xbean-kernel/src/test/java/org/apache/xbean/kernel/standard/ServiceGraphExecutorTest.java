@@ -0,0 +1,180 @@
+/**
+ *
+ * Copyright 2005-2006 The Apache Software Foundation or its licensors, as applicable.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.kernel.standard;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import edu.emory.mathcs.backport.java.util.concurrent.ExecutorService;
+import edu.emory.mathcs.backport.java.util.concurrent.Executors;
+import junit.framework.TestCase;
+import org.apache.xbean.kernel.IllegalServiceStateException;
+import org.apache.xbean.kernel.ServiceName;
+import org.apache.xbean.kernel.StringServiceName;
+
+/**
+ * Tests the ServiceGraphExecutor.
+ *
+ * @author Dain Sundstrom
+ * @version $Id$
+ * @since 2.0
+ */
+public class ServiceGraphExecutorTest extends TestCase {
+    private static final ServiceName A = new StringServiceName("A");
+    private static final ServiceName B = new StringServiceName("B");
+    private static final ServiceName C = new StringServiceName("C");
+    private static final ServiceName D = new StringServiceName("D");
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final Map dependencies = new HashMap();
+    private final RecordingOperation operation = new RecordingOperation();
+
+    /**
+     * Tests that a service is only processed after the services it depends on.
+     */
+    public void testDependencyOrder() {
+        dependencies.put(A, Collections.singleton(B));
+        dependencies.put(B, Collections.singleton(C));
+
+        ServiceGraphExecutor.Result result = new ServiceGraphExecutor(executor, 4, "test").execute(Arrays.asList(new ServiceName[]{A, B, C, D}), dependencies, operation);
+
+        assertTrue(result.getErrors().isEmpty());
+        assertEquals(Arrays.asList(new ServiceName[]{A, B, C, D}), new ArrayList(result.getDurations().keySet()));
+        List completed = operation.getCompleted();
+        assertEquals(4, completed.size());
+        assertTrue(completed.indexOf(C) < completed.indexOf(B));
+        assertTrue(completed.indexOf(B) < completed.indexOf(A));
+    }
+
+    /**
+     * Tests that a failure is reported in list order, and that services depending on the failed service are not
+     * processed while independent services are.
+     */
+    public void testFailureSkipsDependents() {
+        dependencies.put(B, Collections.singleton(A));
+        dependencies.put(C, Collections.singleton(B));
+        operation.fail(A);
+
+        ServiceGraphExecutor.Result result = new ServiceGraphExecutor(executor, 4, "test").execute(Arrays.asList(new ServiceName[]{C, D, B, A}), dependencies, operation);
+
+        Map errors = result.getErrors();
+        assertEquals(Arrays.asList(new ServiceName[]{C, B, A}), new ArrayList(errors.keySet()));
+        assertTrue(errors.get(A) instanceof IllegalStateException);
+        assertTrue(errors.get(B) instanceof IllegalServiceStateException);
+        assertTrue(errors.get(C) instanceof IllegalServiceStateException);
+        List started = operation.getStarted();
+        assertEquals(2, started.size());
+        assertTrue(started.contains(A));
+        assertTrue(started.contains(D));
+    }
+
+    /**
+     * Tests that no more than the configured number of operations run at the same time.
+     */
+    public void testMaxConcurrency() {
+        List serviceNames = new ArrayList();
+        for (int i = 0; i < 8; i++) {
+            serviceNames.add(new StringServiceName("Service" + i));
+        }
+        operation.setDelay(20);
+
+        ServiceGraphExecutor.Result result = new ServiceGraphExecutor(executor, 2, "test").execute(serviceNames, dependencies, operation);
+
+        assertTrue(result.getErrors().isEmpty());
+        assertEquals(8, operation.getCompleted().size());
+        assertTrue(operation.getMaxRunning() <= 2);
+    }
+
+    /**
+     * Tests that services in a dependency cycle are still processed.
+     */
+    public void testCycle() {
+        dependencies.put(A, Collections.singleton(B));
+        dependencies.put(B, Collections.singleton(A));
+
+        ServiceGraphExecutor.Result result = new ServiceGraphExecutor(executor, 4, "test").execute(Arrays.asList(new ServiceName[]{A, B}), dependencies, operation);
+
+        assertTrue(result.getErrors().isEmpty());
+        assertEquals(Arrays.asList(new ServiceName[]{A, B}), operation.getCompleted());
+    }
+
+    protected void tearDown() throws Exception {
+        executor.shutdownNow();
+        super.tearDown();
+    }
+
+    private static class RecordingOperation implements ServiceGraphExecutor.ServiceOperation {
+        private final List started = new ArrayList();
+        private final List completed = new ArrayList();
+        private final List failures = new ArrayList();
+        private long delay;
+        private int running;
+        private int maxRunning;
+
+        public synchronized void fail(ServiceName serviceName) {
+            failures.add(serviceName);
+        }
+
+        public synchronized void setDelay(long delay) {
+            this.delay = delay;
+        }
+
+        public synchronized List getStarted() {
+            return new ArrayList(started);
+        }
+
+        public synchronized List getCompleted() {
+            return new ArrayList(completed);
+        }
+
+        public synchronized int getMaxRunning() {
+            return maxRunning;
+        }
+
+        public void execute(ServiceName serviceName) throws Exception {
+            long sleep;
+            synchronized (this) {
+                started.add(serviceName);
+                running++;
+                maxRunning = Math.max(maxRunning, running);
+                sleep = delay;
+            }
+            try {
+                if (sleep > 0) {
+                    Thread.sleep(sleep);
+                }
+                synchronized (this) {
+                    for (Iterator iterator = failures.iterator(); iterator.hasNext();) {
+                        if (serviceName.equals(iterator.next())) {
+                            throw new IllegalStateException("failed " + serviceName);
+                        }
+                    }
+                    completed.add(serviceName);
+                }
+            } finally {
+                synchronized (this) {
+                    running--;
+                }
+            }
+        }
+    }
+}
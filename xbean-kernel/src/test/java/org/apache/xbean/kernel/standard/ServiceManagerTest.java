@@ -39,6 +39,7 @@ import org.apache.xbean.kernel.ServiceConditionContext;
 import org.apache.xbean.kernel.ServiceContext;
 import org.apache.xbean.kernel.ServiceEvent;
 import org.apache.xbean.kernel.ServiceFactory;
+import org.apache.xbean.kernel.ServiceFuture;
 import org.apache.xbean.kernel.ServiceMonitor;
 import org.apache.xbean.kernel.ServiceName;
 import org.apache.xbean.kernel.ServiceNotFoundException;
@@ -355,6 +356,43 @@ public class ServiceManagerTest extends TestCase {
         stop(StopStrategies.SYNCHRONOUS);
     }
 
+    /**
+     * Tests that the lock status still names the blocked start once another thread has used the lock while the start
+     * was waiting for its conditions.
+     * @throws Exception if a problem occurs
+     */
+    public void testLockStatusAfterBlockStartWaiting() throws Exception {
+        startCondition.satisfied = false;
+        startCondition.isSatisfiedSignal = new CountDownLatch(1);
+        FutureTask startTask = new FutureTask(new Callable() {
+            public Object call() throws Exception {
+                serviceManager.start(false, StartStrategies.BLOCK);
+                return Boolean.TRUE;
+            }
+        });
+        Thread startThread = new Thread(startTask, "StartTask");
+        startThread.setDaemon(true);
+        startThread.start();
+
+        // wait for the start thread to release the lock and wait for the start condition
+        assertTrue(startCondition.isSatisfiedSignal.await(5, TimeUnit.SECONDS));
+
+        // take and release the lock from this thread
+        serviceManager.start(false, StartStrategies.ASYNCHRONOUS);
+        assertEquals("NOT-HELD", serviceManager.getLockStatus());
+
+        startCondition.satisfied = true;
+        startCondition.context.setSatisfied();
+        assertEquals(Boolean.TRUE, startTask.get(5, TimeUnit.SECONDS));
+
+        // the service was created while the start thread held the lock again
+        assertSame(ServiceState.RUNNING, serviceManager.getState());
+        assertTrue(serviceFactory.lockStatus, serviceFactory.lockStatus.startsWith("start operation by thread StartTask"));
+        assertEquals("NOT-HELD", serviceManager.getLockStatus());
+
+        stop(StopStrategies.SYNCHRONOUS);
+    }
+
     /**
      * Tests how start responds when the service factory is not enabled.
      * @throws Exception if a problem occurs
@@ -1369,6 +1407,7 @@ public class ServiceManagerTest extends TestCase {
         private MockCreateException createException;
         private MockDestroyException destroyException;
         private ServiceContext serviceContext;
+        private String lockStatus;
 
         private MockServiceFactory() throws NullPointerException {
             super(SERVICE);
@@ -1397,6 +1436,7 @@ public class ServiceManagerTest extends TestCase {
         public Object createService(ServiceContext serviceContext) {
             assertValidServiceContext(serviceContext);
             this.serviceContext = serviceContext;
+            lockStatus = serviceManager.getLockStatus();
 
             createException = new MockCreateException("MockCreateException");
             if (throwExceptionFromCreate) throw createException;
@@ -1620,6 +1660,14 @@ public class ServiceManagerTest extends TestCase {
             throw new UnsupportedOperationException();
         }
 
+        public void startServices(List serviceNames) {
+            throw new UnsupportedOperationException();
+        }
+
+        public void startServices(List serviceNames, StartStrategy startStrategy) {
+            throw new UnsupportedOperationException();
+        }
+
         public void stopService(ServiceName serviceName) throws ServiceNotFoundException {
             throw new UnsupportedOperationException();
         }
@@ -1628,6 +1676,14 @@ public class ServiceManagerTest extends TestCase {
             throw new UnsupportedOperationException();
         }
 
+        public ServiceFuture startServiceAsync(ServiceName serviceName, StartStrategy startStrategy) {
+            throw new UnsupportedOperationException();
+        }
+
+        public ServiceFuture stopServiceAsync(ServiceName serviceName, StopStrategy stopStrategy) {
+            throw new UnsupportedOperationException();
+        }
+
         public void destroy() {
             throw new UnsupportedOperationException();
         }
@@ -1676,6 +1732,10 @@ public class ServiceManagerTest extends TestCase {
             throw new UnsupportedOperationException();
         }
 
+        public ServiceFuture getServiceAsync(ServiceName serviceName) {
+            throw new UnsupportedOperationException();
+        }
+
         public Object getService(Class type) {
             throw new UnsupportedOperationException();
         }
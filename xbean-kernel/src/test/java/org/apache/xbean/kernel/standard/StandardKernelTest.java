@@ -18,15 +18,33 @@ package org.apache.xbean.kernel.standard;
 
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+import edu.emory.mathcs.backport.java.util.concurrent.CountDownLatch;
+import edu.emory.mathcs.backport.java.util.concurrent.ExecutionException;
+import edu.emory.mathcs.backport.java.util.concurrent.TimeUnit;
 import junit.framework.TestCase;
+import org.apache.xbean.kernel.IllegalServiceStateException;
 import org.apache.xbean.kernel.Kernel;
+import org.apache.xbean.kernel.RunningServiceCondition;
+import org.apache.xbean.kernel.ServiceCondition;
+import org.apache.xbean.kernel.ServiceConditionContext;
+import org.apache.xbean.kernel.ServiceContext;
+import org.apache.xbean.kernel.ServiceFuture;
+import org.apache.xbean.kernel.ServiceName;
 import org.apache.xbean.kernel.ServiceNotFoundException;
+import org.apache.xbean.kernel.ServiceStartErrorsException;
 import org.apache.xbean.kernel.ServiceState;
 import org.apache.xbean.kernel.StartStrategies;
 import org.apache.xbean.kernel.StaticServiceFactory;
 import org.apache.xbean.kernel.StopStrategies;
 import org.apache.xbean.kernel.StringServiceName;
+import org.apache.xbean.kernel.UnsatisfiedConditionsException;
 
 /**
  * Tests the StandardKernel.
@@ -243,8 +261,316 @@ public class StandardKernelTest extends TestCase {
         assertTrue(kernel.isServiceEnabled(serviceName));
     }
 
+    /**
+     * Tests that services can be found by type in registration order, and that unregistered services are dropped
+     * from the type index.
+     * @throws Exception if a problem occurs
+     */
+    public void testGetServiceByType() throws Exception {
+        StringServiceName firstName = new StringServiceName("First");
+        StringServiceName secondName = new StringServiceName("Second");
+        String first = "first";
+        String second = "second";
+        kernel.registerService(firstName, new StaticServiceFactory(first), classLoader);
+        kernel.registerService(secondName, new StaticServiceFactory(second), classLoader);
+
+        assertSame(first, kernel.getService(String.class));
+        assertSame(first, kernel.getService(Comparable.class));
+        assertEquals(Arrays.asList(new Object[] {first, second}), kernel.getServices(CharSequence.class));
+        assertNull(kernel.getService(Integer.class));
+        assertTrue(kernel.getServices(Integer.class).isEmpty());
+
+        kernel.unregisterService(firstName);
+        assertSame(second, kernel.getService(String.class));
+        assertEquals(Collections.singletonList(second), kernel.getServices(Object.class));
+
+        kernel.unregisterService(secondName);
+        assertNull(kernel.getService(String.class));
+        assertTrue(kernel.getServices(Object.class).isEmpty());
+    }
+
+    /**
+     * Tests that startServices starts a batch of services, and that a service owned by a service which fails to start
+     * is not attempted.
+     * @throws Exception if a problem occurs
+     */
+    public void testStartServices() throws Exception {
+        StringServiceName ownerName = new StringServiceName("Owner");
+        StringServiceName ownedName = new StringServiceName("Owned");
+        StringServiceName brokenName = new StringServiceName("Broken");
+        StringServiceName orphanName = new StringServiceName("Orphan");
+        MockServiceFactory ownerFactory = new MockServiceFactory();
+        ownerFactory.ownedServices = Collections.singleton(ownedName);
+        MockServiceFactory brokenFactory = new MockServiceFactory();
+        brokenFactory.startError = new IllegalStateException("broken");
+        brokenFactory.ownedServices = Collections.singleton(orphanName);
+        kernel.registerService(ownerName, ownerFactory, classLoader);
+        kernel.registerService(ownedName, new MockServiceFactory(), classLoader);
+        kernel.registerService(brokenName, brokenFactory, classLoader);
+        kernel.registerService(orphanName, new MockServiceFactory(), classLoader);
+
+        try {
+            kernel.startServices(Arrays.asList(new ServiceName[] {orphanName, ownedName, brokenName, ownerName}));
+            fail("expected exception");
+        } catch (ServiceStartErrorsException e) {
+            // expected
+            assertEquals(Arrays.asList(new ServiceName[] {orphanName, brokenName}), new ArrayList(e.getStartErrors().keySet()));
+            assertTrue(e.getStartErrors().get(orphanName) instanceof IllegalServiceStateException);
+            assertSame(brokenFactory.startError, e.getStartErrors().get(brokenName));
+        }
+
+        assertSame(ServiceState.RUNNING, kernel.getServiceState(ownerName));
+        assertSame(ServiceState.RUNNING, kernel.getServiceState(ownedName));
+        assertSame(ServiceState.STOPPED, kernel.getServiceState(brokenName));
+        assertSame(ServiceState.STOPPED, kernel.getServiceState(orphanName));
+    }
+
+    /**
+     * Tests that destroy stops an owned service before its owner and reports the time taken by each service.
+     * @throws Exception if a problem occurs
+     */
+    public void testDestroyOrder() throws Exception {
+        StringServiceName ownerName = new StringServiceName("Owner");
+        StringServiceName ownedName = new StringServiceName("Owned");
+        List destroyed = Collections.synchronizedList(new ArrayList());
+        MockServiceFactory ownerFactory = new MockServiceFactory();
+        ownerFactory.ownedServices = Collections.singleton(ownedName);
+        ownerFactory.destroyed = destroyed;
+        MockServiceFactory ownedFactory = new MockServiceFactory();
+        ownedFactory.destroyed = destroyed;
+        kernel.registerService(ownerName, ownerFactory, classLoader);
+        kernel.registerService(ownedName, ownedFactory, classLoader);
+        kernel.startServiceRecursive(ownerName);
+        assertSame(ServiceState.RUNNING, kernel.getServiceState(ownedName));
+
+        kernel.destroy();
+
+        assertEquals(Arrays.asList(new Object[] {ownedFactory, ownerFactory}), destroyed);
+        Map destroyDurations = ((StandardKernel) kernel).getDestroyDurations();
+        assertEquals(2, destroyDurations.size());
+        assertTrue(destroyDurations.containsKey(ownerName));
+        assertTrue(destroyDurations.containsKey(ownedName));
+    }
+
+    /**
+     * Tests that a service blocked on a RunningServiceCondition starts when its dependency starts, and that the
+     * dependency can not be stopped while the dependent service is running.  Also checks the lifecycle timings
+     * recorded for both services.
+     * @throws Exception if a problem occurs
+     */
+    public void testRunningServiceCondition() throws Exception {
+        final StringServiceName dependentName = new StringServiceName("Dependent");
+        StringServiceName dependencyName = new StringServiceName("Dependency");
+        MockServiceFactory dependentFactory = new MockServiceFactory();
+        dependentFactory.addStartCondition(new RunningServiceCondition(dependencyName, false, true));
+        kernel.registerService(dependentName, dependentFactory, classLoader);
+        kernel.registerService(dependencyName, new MockServiceFactory(), classLoader);
+
+        final Throwable[] startError = new Throwable[1];
+        Thread startThread = new Thread("testRunningServiceCondition") {
+            public void run() {
+                try {
+                    kernel.startService(dependentName, StartStrategies.BLOCK);
+                } catch (Throwable e) {
+                    startError[0] = e;
+                }
+            }
+        };
+        startThread.start();
+        startThread.join(100);
+        assertTrue(startThread.isAlive());
+        assertSame(ServiceState.STARTING, kernel.getServiceState(dependentName));
+
+        kernel.startService(dependencyName);
+        startThread.join(5000);
+        assertFalse(startThread.isAlive());
+        assertNull(startError[0]);
+        assertSame(ServiceState.RUNNING, kernel.getServiceState(dependentName));
+
+        try {
+            kernel.stopService(dependencyName);
+            fail("expected UnsatisfiedConditionsException");
+        } catch (UnsatisfiedConditionsException expected) {
+            // the dependent service is still running
+        }
+
+        kernel.stopService(dependentName);
+        kernel.stopService(dependencyName);
+        assertSame(ServiceState.STOPPED, kernel.getServiceState(dependencyName));
+    }
+
+    /**
+     * Tests the lifecycle timings recorded for a service that is blocked by a start condition, fails to start once,
+     * and is then started and stopped.
+     * @throws Exception if a problem occurs
+     */
+    public void testServiceMetrics() throws Exception {
+        ToggleCondition startCondition = new ToggleCondition();
+        serviceFactory.addStartCondition(startCondition);
+        kernel.registerService(serviceName, serviceFactory, classLoader);
+
+        ServiceMetrics metrics = ((StandardKernel) kernel).getServiceMetrics(serviceName);
+        assertEquals(serviceName.toString(), metrics.getServiceName());
+        assertEquals(0, metrics.getStartCount());
+
+        // the start condition blocks the service
+        kernel.startService(serviceName, StartStrategies.ASYNCHRONOUS);
+        assertSame(ServiceState.STARTING, kernel.getServiceState(serviceName));
+        assertEquals(0, metrics.getBlockedCount());
+
+        // the service fails to start once the condition is satisfied
+        startCondition.satisfied = true;
+        serviceFactory.startError = new RuntimeException("start failed");
+        try {
+            kernel.startService(serviceName);
+            fail("expected the start error");
+        } catch (RuntimeException expected) {
+            assertSame(serviceFactory.startError, expected);
+        }
+        assertSame(ServiceState.STOPPED, kernel.getServiceState(serviceName));
+        assertEquals(1, metrics.getBlockedCount());
+        assertEquals(1, metrics.getStartFailureCount());
+        assertEquals(0, metrics.getStartCount());
+
+        serviceFactory.startError = null;
+        kernel.startService(serviceName);
+        assertSame(ServiceState.RUNNING, kernel.getServiceState(serviceName));
+        assertEquals(1, metrics.getStartCount());
+        assertEquals(1, metrics.getBlockedCount());
+        assertTrue(metrics.getStartTimeTotal() >= 0);
+        assertTrue(metrics.getStartTimeMax() >= metrics.getStartTimeLast());
+        assertEquals(0, metrics.getStopCount());
+
+        kernel.stopService(serviceName);
+        assertEquals(1, metrics.getStopCount());
+        assertEquals(1, metrics.getStartFailureCount());
+        assertTrue(metrics.getLockWaitCount() >= 4);
+
+        long[] bucketCounts = metrics.getStartDurations().getBucketCounts();
+        long total = 0;
+        for (int i = 0; i < bucketCounts.length; i++) {
+            total += bucketCounts[i];
+        }
+        assertEquals(1, total);
+
+        assertSame(metrics, ((StandardKernel) kernel).getServiceMetrics().get(serviceName));
+    }
+
+    /**
+     * Tests the asynchronous start, stop and get service operations.
+     * @throws Exception if a problem occurs
+     */
+    public void testAsyncOperations() throws Exception {
+        kernel.registerService(serviceName, serviceFactory, classLoader);
+
+        ServiceFuture runningFuture = kernel.getServiceAsync(serviceName);
+        assertFalse(runningFuture.isDone());
+        try {
+            // the running future is completed by service events, not run
+            runningFuture.run();
+            fail("expected IllegalStateException");
+        } catch (IllegalStateException expected) {
+        }
+        assertFalse(runningFuture.isDone());
+        final CountDownLatch completed = new CountDownLatch(1);
+        runningFuture.addListener(new Runnable() {
+            public void run() {
+                completed.countDown();
+            }
+        });
+
+        ServiceFuture startFuture = kernel.startServiceAsync(serviceName, StartStrategies.SYNCHRONOUS);
+        assertSame(SERVICE, startFuture.get(5, TimeUnit.SECONDS));
+        assertSame(SERVICE, runningFuture.get(5, TimeUnit.SECONDS));
+        assertTrue(completed.await(5, TimeUnit.SECONDS));
+
+        // an already running service completes immediately
+        ServiceFuture serviceFuture = kernel.getServiceAsync(serviceName);
+        assertTrue(serviceFuture.isDone());
+        assertSame(SERVICE, serviceFuture.get());
+
+        assertNull(kernel.stopServiceAsync(serviceName, StopStrategies.SYNCHRONOUS).get(5, TimeUnit.SECONDS));
+        assertSame(ServiceState.STOPPED, kernel.getServiceState(serviceName));
+
+        try {
+            kernel.getServiceAsync(new StringServiceName("Missing")).get();
+            fail("expected ExecutionException");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof ServiceNotFoundException);
+        }
+    }
+
+    /**
+     * Tests that the state of a service can be read, and an asynchronous get started, while the service is being
+     * registered, even though registering a non-restartable service starts it.
+     * @throws Exception if a problem occurs
+     */
+    public void testReadStateWhileRegistering() throws Exception {
+        serviceFactory.restartable = false;
+        serviceFactory.startLatch = new CountDownLatch(1);
+
+        final Throwable[] registerError = new Throwable[1];
+        Thread registerThread = new Thread("testReadStateWhileRegistering") {
+            public void run() {
+                try {
+                    kernel.registerService(serviceName, serviceFactory, classLoader);
+                } catch (Throwable e) {
+                    registerError[0] = e;
+                }
+            }
+        };
+        registerThread.start();
+        ServiceFuture runningFuture;
+        try {
+            // wait for the registration to begin starting the service
+            for (int i = 0; i < 500; i++) {
+                try {
+                    if (kernel.getServiceState(serviceName) == ServiceState.STARTING) {
+                        break;
+                    }
+                } catch (ServiceNotFoundException ignored) {
+                }
+                Thread.sleep(10);
+            }
+            assertSame(ServiceState.STARTING, kernel.getServiceState(serviceName));
+            assertNull(kernel.getService(serviceName));
+            assertEquals(0, kernel.getServiceStartTime(serviceName));
+
+            // the async get does not wait for the registration; the RUNNING event completes it
+            runningFuture = kernel.getServiceAsync(serviceName);
+            assertFalse(runningFuture.isDone());
+        } finally {
+            serviceFactory.startLatch.countDown();
+        }
+        assertSame(SERVICE, runningFuture.get(5, TimeUnit.SECONDS));
+
+        registerThread.join(5000);
+        assertFalse(registerThread.isAlive());
+        assertNull(registerError[0]);
+        assertSame(ServiceState.RUNNING, kernel.getServiceState(serviceName));
+        assertSame(SERVICE, kernel.getService(serviceName));
+    }
+
+    private static class ToggleCondition implements ServiceCondition {
+        private volatile boolean satisfied;
+
+        public void initialize(ServiceConditionContext context) {
+        }
+
+        public boolean isSatisfied() {
+            return satisfied;
+        }
+
+        public void destroy() {
+        }
+    }
+
     private static class MockServiceFactory extends StaticServiceFactory {
         private boolean restartable = true;
+        private Set ownedServices = Collections.EMPTY_SET;
+        private RuntimeException startError;
+        private CountDownLatch startLatch;
+        private List destroyed;
 
         private MockServiceFactory() throws NullPointerException {
             super(SERVICE);
@@ -253,5 +579,29 @@ public class StandardKernelTest extends TestCase {
         public boolean isRestartable() {
             return restartable;
         }
+
+        public Set getOwnedServices() {
+            return ownedServices;
+        }
+
+        public Object createService(ServiceContext serviceContext) {
+            if (startLatch != null) {
+                try {
+                    startLatch.await();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException("interrupted");
+                }
+            }
+            if (startError != null) {
+                throw startError;
+            }
+            return super.createService(serviceContext);
+        }
+
+        public void destroyService(ServiceContext serviceContext) {
+            if (destroyed != null) {
+                destroyed.add(this);
+            }
+        }
     }
 }
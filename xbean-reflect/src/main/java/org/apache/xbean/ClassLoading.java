@@ -17,8 +17,12 @@
 
 package org.apache.xbean;
 
+import java.lang.ref.WeakReference;
 import java.lang.reflect.Array;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 /**
  * Utility class for loading classes by a variety of name variations.
@@ -51,6 +55,24 @@ public class ClassLoading {
      */
     private static final HashMap CLASS_TO_SIGNATURE_MAP = new HashMap();
 
+    /**
+     * Cache of loadClass results, split into stripes by class loader and class name so concurrent
+     * lookups rarely share a lock.  Each stripe maps each class loader (weakly) to its LoaderCache.
+     */
+    private static final int STRIPE_SHIFT = 5;
+    private static final int STRIPE_COUNT = 1 << STRIPE_SHIFT;
+    private static final Map[] classCache = new Map[STRIPE_COUNT];
+    static {
+        for (int i = 0; i < STRIPE_COUNT; i++) {
+            classCache[i] = new WeakHashMap();
+        }
+    }
+
+    /**
+     * The maximum number of missing class names remembered per class loader in each stripe.
+     */
+    static final int MAX_MISSES = 64;
+
 
     /**
      * Setup the primitives map.  We make any entry for each primitive class using both the
@@ -99,6 +121,11 @@ public class ClassLoading {
      * The class name may be a standard class name, the name of a primitive type Java
      * reflection class (e.g., "boolean" or "int"), or a type in method type signature
      * encoding.  Array classes in either encoding form are also processed.
+     * <p/>
+     * Both found and missing classes are cached per class loader.  The cache holds class loaders
+     * and classes weakly, so it never prevents them from being collected, and only remembers a
+     * bounded number of the most recently missed names.  A class loader which can start finding
+     * classes it could not find before must call clearCache(ClassLoader) when that happens.
      *
      * @param className The name of the required class.
      * @param classLoader The class loader used to resolve the class object.
@@ -116,21 +143,108 @@ public class ClassLoading {
         if (classLoader == null) {
             throw new IllegalArgumentException("classLoader is null");
         }
-        // The easiest case is a proper class name.  We just have the class loader resolve this.
-        // If the class loader throws a ClassNotFoundException, then we need to check each of the
-        // special name encodings we support.
+
+        Map stripe = getStripe(className, classLoader);
+        synchronized (stripe) {
+            LoaderCache loaderCache = (LoaderCache) stripe.get(classLoader);
+            if (loaderCache != null) {
+                if (loaderCache.misses.containsKey(className)) {
+                    throw new ClassNotFoundException(className);
+                }
+                WeakReference reference = (WeakReference) loaderCache.classes.get(className);
+                // null if the class has been collected, in which case we simply load it again
+                Class cachedClass = reference == null ? null : (Class) reference.get();
+                if (cachedClass != null) {
+                    return cachedClass;
+                }
+            }
+        }
+
+        // resolve outside of the lock; if two threads race the result is the same
+        Class resolvedClass;
         try {
-            return classLoader.loadClass(className);
-        } catch (ClassNotFoundException ignore) {
-            // if not found, continue on to the other name forms.
+            resolvedClass = resolveClass(className, classLoader);
+        } catch (ClassNotFoundException e) {
+            synchronized (stripe) {
+                getLoaderCache(stripe, classLoader).misses.put(className, className);
+            }
+            throw e;
+        }
+        synchronized (stripe) {
+            // classes are referenced weakly, otherwise a class would keep its own class loader key alive
+            getLoaderCache(stripe, classLoader).classes.put(className, new WeakReference(resolvedClass));
         }
+        return resolvedClass;
+    }
 
+    /**
+     * Forget all cached class lookups.
+     */
+    public static void clearCache() {
+        for (int i = 0; i < STRIPE_COUNT; i++) {
+            synchronized (classCache[i]) {
+                classCache[i].clear();
+            }
+        }
+    }
 
-        // The second easiest version to resolve is a direct map to a primitive type name
-        // or method signature.  Check our name-to-class map for one of those.
-        Class resolvedClass = (Class) PRIMITIVE_CLASS_MAP.get(className);
-        if (resolvedClass != null) {
-            return resolvedClass;
+    /**
+     * Forget the cached class lookups of a class loader.
+     *
+     * @param classLoader the class loader whose lookups are forgotten
+     */
+    public static void clearCache(ClassLoader classLoader) {
+        for (int i = 0; i < STRIPE_COUNT; i++) {
+            synchronized (classCache[i]) {
+                classCache[i].remove(classLoader);
+            }
+        }
+    }
+
+    static Map getStripe(String className, ClassLoader classLoader) {
+        int hash = System.identityHashCode(classLoader) * 31 + className.hashCode();
+        // names sharing a prefix have similar hash codes, so mix all bits into the top bits used as the index
+        hash *= 0x9E3779B9;
+        return classCache[hash >>> (32 - STRIPE_SHIFT)];
+    }
+
+    private static LoaderCache getLoaderCache(Map stripe, ClassLoader classLoader) {
+        LoaderCache loaderCache = (LoaderCache) stripe.get(classLoader);
+        if (loaderCache == null) {
+            loaderCache = new LoaderCache();
+            stripe.put(classLoader, loaderCache);
+        }
+        return loaderCache;
+    }
+
+    /**
+     * The cached lookups of one class loader within a stripe; guarded by the stripe.
+     */
+    private static final class LoaderCache {
+        /**
+         * Class name to a weak reference to the loaded class.
+         */
+        private final Map classes = new HashMap();
+
+        /**
+         * The names that were not found, least recently used first.
+         */
+        private final Map misses = new LinkedHashMap(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry eldest) {
+                return size() > MAX_MISSES;
+            }
+        };
+    }
+
+    private static Class resolveClass(String className, ClassLoader classLoader) throws ClassNotFoundException {
+        // Names which can not be the name of a class are decoded up front, instead of first
+        // letting the class loader fail with a ClassNotFoundException.
+
+        // A primitive type name is a reserved word, so it can never name a class.  The single
+        // letter method signature forms can, so those are only used when no such class exists.
+        Class primitiveClass = (Class) PRIMITIVE_CLASS_MAP.get(className);
+        if (primitiveClass != null && className.length() > 1) {
+            return primitiveClass;
         }
 
         // Class names in method signature have the format "Lfully.resolved.name;",
@@ -145,13 +259,12 @@ public class ClassLoading {
             return classLoader.loadClass(typeName);
         }
 
-        // All we have left now are the array types.  Method signature array types
-        // have a series of leading "[" characters to specify the number of dimensions.
-        // The other array type we handle uses trailing "[]" for the dimensions, just
-        // like the Java language syntax.
+        // Method signature array types have a series of leading "[" characters to specify
+        // the number of dimensions.  The other array type we handle uses trailing "[]" for
+        // the dimensions, just like the Java language syntax.
 
         // first check for the signature form ([[[[type).
-        if (className.charAt(0) == '[') {
+        if (className.length() > 0 && className.charAt(0) == '[') {
             // we have at least one array marker, now count how many leading '['s we have
             // to get the dimension count.
             int count = 0;
@@ -174,9 +287,8 @@ public class ClassLoading {
         }
 
 
-        // ok, last chance.  Now check for an array specification in Java language
-        // syntax.  This will be a type name followed by pairs of "[]" to indicate
-        // the number of dimensions.
+        // Now check for an array specification in Java language syntax.  This will be a type
+        // name followed by pairs of "[]" to indicate the number of dimensions.
         if (className.endsWith("[]")) {
             // get the base component class name and the arrayDimensions
             int count = 0;
@@ -200,8 +312,16 @@ public class ClassLoading {
             return getArrayClass(arrayType, count);
         }
 
-        // We're out of options, just toss an exception over the wall.
-        throw new ClassNotFoundException(className);
+        // The last case is a proper class name.  We just have the class loader resolve this.
+        try {
+            return classLoader.loadClass(className);
+        } catch (ClassNotFoundException e) {
+            // a single letter method signature for a primitive type
+            if (primitiveClass != null) {
+                return primitiveClass;
+            }
+            throw e;
+        }
     }
 
 
@@ -26,22 +26,29 @@ import java.lang.reflect.Array;
  * @version $Rev: 6687 $ $Date: 2005-12-28T21:08:56.733437Z $
  */
 public abstract class AbstractCollectionConverter extends AbstractConverter {
-    private final PropertyEditor editor;
+    private final Converter converter;
 
     public AbstractCollectionConverter(Class type) {
         super(type);
-        this.editor = new StringEditor();
+        this.converter = new StringEditor();
     }
 
     public AbstractCollectionConverter(Class type, PropertyEditor editor) {
         super(type);
 
         if (editor == null) throw new NullPointerException("editor is null");
-        this.editor = editor;
+        this.converter = PropertyEditorConverter.toConverter(editor);
+    }
+
+    public AbstractCollectionConverter(Class type, Converter converter) {
+        super(type);
+
+        if (converter == null) throw new NullPointerException("converter is null");
+        this.converter = converter;
     }
 
     protected final Object toObjectImpl(String text) {
-        List list = CollectionUtil.toList(text, editor);
+        List list = CollectionUtil.toList(text, converter);
         if (list == null) {
             return null;
         }
@@ -62,7 +69,7 @@ public abstract class AbstractCollectionConverter extends AbstractConverter {
             values = (Collection) value;
         }
 
-        String text = CollectionUtil.toString(values, editor);
+        String text = CollectionUtil.toString(values, converter);
         return text;
     }
 }
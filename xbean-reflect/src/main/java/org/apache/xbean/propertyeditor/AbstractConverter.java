@@ -24,7 +24,12 @@ import org.apache.xbean.ClassLoading;
 /**
  * A base class for converters.  This class handles all converter methods, and redirects all conversion requests to
  * toStringImpl and toObjectImpl.  These methods can assume that the supplied value or text is never null, and that
- * type checking has been applied to the value.
+ * type checking has been applied to the value.  Implementations must not keep any state in toStringImpl and
+ * toObjectImpl, so the converter can be shared between threads.
+ * <p/>
+ * A converter is also a PropertyEditor so it can be registered with the PropertyEditorManager.  The PropertyEditor
+ * methods keep the current value of the editor as required by that contract, and therefore an instance must not be
+ * shared between threads when used as a PropertyEditor.  The Converter methods never touch that value.
  *
  * @version $Rev: 6680 $
  */
@@ -53,7 +58,7 @@ public abstract class AbstractConverter extends PropertyEditorSupport implements
     }
 
     public final void setAsText(String text) {
-        Object value = toObject(text.trim());
+        Object value = toObject(text);
         super.setValue(value);
     }
 
@@ -65,6 +70,7 @@ public abstract class AbstractConverter extends PropertyEditorSupport implements
     public final void setValue(Object value) {
         if (value == null) {
             super.setValue(null);
+            return;
         }
         if (!type.isInstance(value)) {
             throw new PropertyEditorException("Value is not an instance of " + ClassLoading.getClassName(type));
@@ -87,6 +93,7 @@ public abstract class AbstractConverter extends PropertyEditorSupport implements
             return null;
         }
 
+        // trim only copies the text when it actually has surrounding white space
         Object value = toObjectImpl(text.trim());
         return value;
     }
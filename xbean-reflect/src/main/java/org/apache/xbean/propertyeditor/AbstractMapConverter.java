@@ -23,19 +23,25 @@ import java.util.Map;
  * @version $Rev: 6680 $ $Date: 2005-12-24T04:38:27.427468Z $
  */
 public abstract class AbstractMapConverter extends AbstractConverter {
-    private final PropertyEditor keyEditor;
-    private final PropertyEditor valueEditor;
+    private final Converter keyConverter;
+    private final Converter valueConverter;
 
     public AbstractMapConverter(Class type) {
         super(type);
-        this.keyEditor = new StringEditor();
-        this.valueEditor = new StringEditor();
+        this.keyConverter = new StringEditor();
+        this.valueConverter = new StringEditor();
     }
 
     protected AbstractMapConverter(Class type, PropertyEditor keyEditor, PropertyEditor valueEditor) {
         super(type);
-        this.keyEditor = keyEditor;
-        this.valueEditor = valueEditor;
+        this.keyConverter = PropertyEditorConverter.toConverter(keyEditor);
+        this.valueConverter = PropertyEditorConverter.toConverter(valueEditor);
+    }
+
+    protected AbstractMapConverter(Class type, Converter keyConverter, Converter valueConverter) {
+        super(type);
+        this.keyConverter = keyConverter;
+        this.valueConverter = valueConverter;
     }
 
     /**
@@ -46,7 +52,7 @@ public abstract class AbstractMapConverter extends AbstractConverter {
      * @throws PropertyEditorException An error occurred creating the Properties object.
      */
     protected final Object toObjectImpl(String text) {
-        Map map = CollectionUtil.toMap(text, keyEditor, valueEditor);
+        Map map = CollectionUtil.toMap(text, keyConverter, valueConverter);
         if (map == null) {
             return null;
         }
@@ -58,7 +64,7 @@ public abstract class AbstractMapConverter extends AbstractConverter {
 
     protected final String toStringImpl(Object value) {
         Map map = (Map) value;
-        String text = CollectionUtil.toString(map, keyEditor, valueEditor);
+        String text = CollectionUtil.toString(map, keyConverter, valueConverter);
         return text;
     }
 }
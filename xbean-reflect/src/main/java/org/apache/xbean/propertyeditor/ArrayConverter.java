@@ -32,7 +32,15 @@ import org.apache.xbean.ClassLoading;
 public final class ArrayConverter extends AbstractCollectionConverter {
     public ArrayConverter(Class type, PropertyEditor editor) {
         super(type, editor);
+        checkType(type);
+    }
+
+    public ArrayConverter(Class type, Converter converter) {
+        super(type, converter);
+        checkType(type);
+    }
 
+    private static void checkType(Class type) {
         if (!type.isArray()) {
             throw new IllegalArgumentException("type is not an array " + ClassLoading.getClassName(type));
         }
@@ -40,8 +48,6 @@ public final class ArrayConverter extends AbstractCollectionConverter {
         if (type.getComponentType().isArray()) {
             throw new IllegalArgumentException("type is a multi-dimensional array " + ClassLoading.getClassName(type, true));
         }
-
-        if (editor == null) throw new NullPointerException("editor is null");
     }
 
     protected Object createCollection(List list) {
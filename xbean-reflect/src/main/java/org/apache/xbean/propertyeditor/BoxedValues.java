@@ -0,0 +1,82 @@
+/**
+ *
+ * Copyright 2005-2006 The Apache Software Foundation or its licensors, as applicable.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.propertyeditor;
+
+/**
+ * Canonical boxed instances for commonly used primitive values.  Java 1.4 has no Integer.valueOf(int) style caches,
+ * so without this every converted number would allocate a new wrapper.  The cached ranges match those of the later
+ * JDK caches: -128 to 127 for the integral types, all bytes, and characters up to 127.
+ *
+ * @version $Rev$ $Date$
+ */
+final class BoxedValues {
+    private static final int LOW = -128;
+    private static final int HIGH = 127;
+
+    private static final Integer[] INTEGERS = new Integer[HIGH - LOW + 1];
+    private static final Long[] LONGS = new Long[HIGH - LOW + 1];
+    private static final Short[] SHORTS = new Short[HIGH - LOW + 1];
+    private static final Byte[] BYTES = new Byte[HIGH - LOW + 1];
+    private static final Character[] CHARACTERS = new Character[HIGH + 1];
+
+    static {
+        for (int i = 0; i < INTEGERS.length; i++) {
+            INTEGERS[i] = new Integer(i + LOW);
+            LONGS[i] = new Long(i + LOW);
+            SHORTS[i] = new Short((short) (i + LOW));
+            BYTES[i] = new Byte((byte) (i + LOW));
+        }
+        for (int i = 0; i < CHARACTERS.length; i++) {
+            CHARACTERS[i] = new Character((char) i);
+        }
+    }
+
+    private BoxedValues() {
+    }
+
+    public static Integer valueOf(int value) {
+        if (value >= LOW && value <= HIGH) {
+            return INTEGERS[value - LOW];
+        }
+        return new Integer(value);
+    }
+
+    public static Long valueOf(long value) {
+        if (value >= LOW && value <= HIGH) {
+            return LONGS[(int) value - LOW];
+        }
+        return new Long(value);
+    }
+
+    public static Short valueOf(short value) {
+        if (value >= LOW && value <= HIGH) {
+            return SHORTS[value - LOW];
+        }
+        return new Short(value);
+    }
+
+    public static Byte valueOf(byte value) {
+        return BYTES[value - LOW];
+    }
+
+    public static Character valueOf(char value) {
+        if (value <= HIGH) {
+            return CHARACTERS[value];
+        }
+        return new Character(value);
+    }
+}
@@ -27,7 +27,7 @@ public class ByteEditor extends AbstractConverter {
 
     protected Object toObjectImpl(String text) {
         try {
-            return Byte.valueOf(text);
+            return BoxedValues.valueOf(Byte.parseByte(text));
         } catch (Exception e) {
             throw new PropertyEditorException(e);
         }
@@ -36,6 +36,10 @@ import org.apache.xbean.ClassLoading;
  */
 public final class CollectionUtil {
     public static List toList(String text, PropertyEditor componentEditor) {
+        return toList(text, PropertyEditorConverter.toConverter(componentEditor));
+    }
+
+    public static List toList(String text, Converter componentConverter) {
         if (text.length() == 0) {
             return null;
         }
@@ -51,7 +55,7 @@ public final class CollectionUtil {
             StringTokenizer stok = new StringTokenizer(text, ",");
             while (stok.hasMoreTokens()) {
                 String innerText = stok.nextToken();
-                Object value = componentToObject(innerText, componentEditor);
+                Object value = componentToObject(innerText, componentConverter);
                 list.add(value);
             }
         }
@@ -60,6 +64,10 @@ public final class CollectionUtil {
     }
 
     public static String toString(Collection values, PropertyEditor componentEditor) {
+        return toString(values, PropertyEditorConverter.toConverter(componentEditor));
+    }
+
+    public static String toString(Collection values, Converter componentConverter) {
         if (values.size() == 0) {
             return "[]";
         }
@@ -69,7 +77,7 @@ public final class CollectionUtil {
         int i = 0;
         for (Iterator iterator = values.iterator(); iterator.hasNext();) {
             Object object = iterator.next();
-            String text = componentToString(object, componentEditor);
+            String text = componentToString(object, componentConverter);
 
             if (i > 0) {
                 result.append(",");
@@ -82,6 +90,10 @@ public final class CollectionUtil {
     }
 
     public static final Map toMap(String text, PropertyEditor keyEditor, PropertyEditor valueEditor) {
+        return toMap(text, PropertyEditorConverter.toConverter(keyEditor), PropertyEditorConverter.toConverter(valueEditor));
+    }
+
+    public static final Map toMap(String text, Converter keyConverter, Converter valueConverter) {
         Properties properties = new Properties();
         try {
             ByteArrayInputStream stream = new ByteArrayInputStream(text.getBytes());
@@ -98,8 +110,8 @@ public final class CollectionUtil {
             String keyText = (String) entry.getKey();
             String valueText = (String) entry.getValue();
 
-            Object keyObject = componentToObject(keyText, keyEditor);
-            Object valueObject = componentToObject(valueText, valueEditor);
+            Object keyObject = componentToObject(keyText, keyConverter);
+            Object valueObject = componentToObject(valueText, valueConverter);
 
             map.put(keyObject, valueObject);
         }
@@ -107,6 +119,10 @@ public final class CollectionUtil {
     }
 
     public static final String toString(Map map, PropertyEditor keyEditor, PropertyEditor valueEditor) {
+        return toString(map, PropertyEditorConverter.toConverter(keyEditor), PropertyEditorConverter.toConverter(valueEditor));
+    }
+
+    public static final String toString(Map map, Converter keyConverter, Converter valueConverter) {
         // run the properties through the editors
         Properties properties = new Properties();
         for (Iterator iterator = map.entrySet().iterator(); iterator.hasNext();) {
@@ -114,8 +130,8 @@ public final class CollectionUtil {
             Object keyObject = entry.getKey();
             Object valueObject = entry.getValue();
 
-            String keyText = componentToString(keyObject, keyEditor);
-            String valueText = componentToString(valueObject, valueEditor);
+            String keyText = componentToString(keyObject, keyConverter);
+            String valueText = componentToString(valueObject, valueConverter);
 
             properties.setProperty(keyText, valueText);
         }
@@ -132,37 +148,27 @@ public final class CollectionUtil {
         }
     }
 
-    private static final String componentToString(Object value, PropertyEditor componentEditor) {
+    private static final String componentToString(Object value, Converter converter) {
         if (value == null) {
             return null;
         }
-        if (componentEditor instanceof Converter) {
-            Converter converter = (Converter) componentEditor;
-            Class type = converter.getType();
-            if (!type.isInstance(value)) {
-                throw new PropertyEditorException("Value is not an instance of " + ClassLoading.getClassName(type) + ": " + value.getClass().getName());
-            }
-            return converter.toString(value);
-        } else {
-            componentEditor.setValue(value);
-            String text = componentEditor.getAsText();
-            return text;
+        Class type = converter.getType();
+        if (!type.isInstance(value)) {
+            throw new PropertyEditorException("Value is not an instance of " + ClassLoading.getClassName(type) + ": " + value.getClass().getName());
         }
+        return converter.toString(value);
     }
 
-    private static final Object componentToObject(String text, PropertyEditor componentEditor) {
+    private static final Object componentToObject(String text, Converter converter) {
         if (text == null) {
             return null;
         }
 
-        if (componentEditor instanceof Converter) {
-            Converter converter = (Converter) componentEditor;
-            Object value = converter.toObject(text.trim());
-            return value;
-        } else {
-            componentEditor.setAsText(text);
-            Object value = componentEditor.getValue();
-            return value;
+        // plain property editors always received the untrimmed text
+        if (!(converter instanceof PropertyEditorConverter)) {
+            text = text.trim();
         }
+        Object value = converter.toObject(text);
+        return value;
     }
 }
@@ -19,6 +19,12 @@ package org.apache.xbean.propertyeditor;
 import java.beans.PropertyEditor;
 
 /**
+ * Converts between text and instances of a single type.  A converter is also a PropertyEditor, so it can be registered
+ * with the PropertyEditorManager, but only getType, toString and toObject are part of the converter contract: they
+ * have no notion of a current value, so a single converter instance must be safe to share between threads, and they
+ * may be called concurrently.  The PropertyEditor methods keep the current value of the editor, so they are not
+ * thread safe, and an instance used through them must not be shared.
+ *
  * @version $Rev: 6680 $ $Date: 2005-12-24T04:38:27.427468Z $
  */
 public interface Converter extends PropertyEditor {
@@ -18,24 +18,66 @@ package org.apache.xbean.propertyeditor;
 
 import java.text.DateFormat;
 import java.text.ParseException;
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
 import java.util.Date;
 
 /**
  * A property editor for Date typed properties.
+ * <p/>
+ * Text is parsed by trying a list of date formats in order, and the first format that parses the whole text wins.
+ * Text with anything left over after a date, such as "2006-01-02 10:30", is rejected, except that for compatibility
+ * the locale date format of the default editor may still match a prefix of the text when no other format matches.
+ * By default this is the date format of the current locale, followed by the ISO-8601 forms yyyy-MM-dd'T'HH:mm:ss.SSSZ,
+ * yyyy-MM-dd'T'HH:mm:ssZ, yyyy-MM-dd'T'HH:mm:ss.SSS, yyyy-MM-dd'T'HH:mm:ss, yyyy-MM-dd'T'HH:mm and yyyy-MM-dd, and
+ * dates are converted to text using the locale date format.  A DateEditor created with a list of patterns uses only
+ * those patterns, and converts to text using the first one.  ISO-8601 time zones written as "Z" or "+hh:mm" are
+ * accepted by all patterns ending in the RFC 822 zone letter Z.  The ISO-8601 and configured patterns are not lenient,
+ * so out of range fields such as the month in "2006-13-45" are rejected rather than rolled over.
+ * <p/>
+ * DateFormat is not thread safe, so each thread gets its own set of formatters and the converter can be shared.
  *
  * @version $Rev: 6680 $
  */
 public class DateEditor extends AbstractConverter {
-    private final DateFormat formatter;
+    // the ISO-8601 forms accepted by default, from the most to the least specific
+    private static final String[] ISO8601_PATTERNS = {
+        "yyyy-MM-dd'T'HH:mm:ss.SSSZ",
+        "yyyy-MM-dd'T'HH:mm:ssZ",
+        "yyyy-MM-dd'T'HH:mm:ss.SSS",
+        "yyyy-MM-dd'T'HH:mm:ss",
+        "yyyy-MM-dd'T'HH:mm",
+        "yyyy-MM-dd",
+    };
+
+    private final String[] patterns;
+    private final ThreadLocal formatters = new ThreadLocal();
 
     public DateEditor() {
         super(Date.class);
 
-        // Get a date formatter to parse this.
-        // This retrieves the formatter using the current execution locale,
-        // which could present an intererting problem when applied to deployment
-        // plans written in other locales.  Sort of a Catch-22 situation.
-        formatter = DateFormat.getDateInstance();
+        // Use the date formatter of the current execution locale first.
+        // This could present an intererting problem when applied to deployment
+        // plans written in other locales, so we fall back to the ISO-8601 forms.
+        this.patterns = null;
+    }
+
+    /**
+     * Creates a date editor which accepts the specified SimpleDateFormat patterns.
+     *
+     * @param patterns the patterns to try, in order; the first is used to convert dates to text
+     */
+    public DateEditor(String[] patterns) {
+        super(Date.class);
+        if (patterns == null) throw new NullPointerException("patterns is null");
+        if (patterns.length == 0) throw new IllegalArgumentException("patterns is empty");
+        this.patterns = new String[patterns.length];
+        for (int i = 0; i < patterns.length; i++) {
+            if (patterns[i] == null) throw new NullPointerException("patterns[" + i + "] is null");
+            // fail now rather than on the first conversion
+            new SimpleDateFormat(patterns[i]);
+            this.patterns[i] = patterns[i];
+        }
     }
 
     /**
@@ -45,17 +87,78 @@ public class DateEditor extends AbstractConverter {
      * @throws PropertyEditorException Unable to parse the string value into a Date.
      */
     protected Object toObjectImpl(String text) {
-        try {
-            return formatter.parse(text);
-        } catch (ParseException e) {
-            // any format errors show up as a ParseException, which we turn into a PropertyEditorException.
-            throw new PropertyEditorException(e);
+        String isoText = normalizeTimeZone(text);
+        DateFormat[] formatters = getFormatters();
+
+        // only the legacy locale format may parse a prefix of the text, and only when nothing parses all of it
+        Date partialMatch = null;
+        int errorIndex = 0;
+        for (int i = 0; i < formatters.length; i++) {
+            ParsePosition position = new ParsePosition(0);
+            Date date = formatters[i].parse(isoText, position);
+            if (date != null) {
+                if (position.getIndex() == isoText.length()) {
+                    return date;
+                }
+                if (i == 0 && patterns == null) {
+                    partialMatch = date;
+                }
+                errorIndex = Math.max(errorIndex, position.getIndex());
+            } else {
+                errorIndex = Math.max(errorIndex, position.getErrorIndex());
+            }
         }
+        if (partialMatch != null) {
+            return partialMatch;
+        }
+
+        // report the furthest any format got into the text
+        String message = "Unparseable date: \"" + text + "\"";
+        throw new PropertyEditorException(message, new ParseException(message, Math.min(errorIndex, text.length())));
     }
 
     protected String toStringImpl(Object value) {
         Date date = (Date) value;
-        String text = formatter.format(date);
+        String text = getFormatters()[0].format(date);
+        return text;
+    }
+
+    private DateFormat[] getFormatters() {
+        DateFormat[] formatters = (DateFormat[]) this.formatters.get();
+        if (formatters == null) {
+            if (patterns == null) {
+                formatters = new DateFormat[ISO8601_PATTERNS.length + 1];
+                formatters[0] = DateFormat.getDateInstance();
+                for (int i = 0; i < ISO8601_PATTERNS.length; i++) {
+                    formatters[i + 1] = new SimpleDateFormat(ISO8601_PATTERNS[i]);
+                    formatters[i + 1].setLenient(false);
+                }
+            } else {
+                formatters = new DateFormat[patterns.length];
+                for (int i = 0; i < patterns.length; i++) {
+                    formatters[i] = new SimpleDateFormat(patterns[i]);
+                    formatters[i].setLenient(false);
+                }
+            }
+            this.formatters.set(formatters);
+        }
+        return formatters;
+    }
+
+    /**
+     * Rewrites an ISO-8601 time zone suffix, "Z" or "+hh:mm", to the RFC 822 form "+hhmm" understood by
+     * SimpleDateFormat.  Other text is returned unchanged.
+     */
+    private static String normalizeTimeZone(String text) {
+        int length = text.length();
+        if (length > 1 && text.charAt(length - 1) == 'Z' && Character.isDigit(text.charAt(length - 2))) {
+            return text.substring(0, length - 1) + "+0000";
+        }
+        if (length > 6 && text.charAt(length - 3) == ':' &&
+                (text.charAt(length - 6) == '+' || text.charAt(length - 6) == '-') &&
+                text.lastIndexOf('T') > 0) {
+            return text.substring(0, length - 3) + text.substring(length - 2);
+        }
         return text;
     }
 }
@@ -27,7 +27,7 @@ public class IntegerEditor extends AbstractConverter {
 
     protected Object toObjectImpl(String text) {
         try {
-            return Integer.valueOf(text);
+            return BoxedValues.valueOf(Integer.parseInt(text));
         } catch (Exception e) {
             throw new PropertyEditorException(e);
         }
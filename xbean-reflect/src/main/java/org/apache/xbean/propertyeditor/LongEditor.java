@@ -27,7 +27,7 @@ public class LongEditor extends AbstractConverter {
 
     protected Object toObjectImpl(String text) {
         try {
-            return Long.valueOf(text);
+            return BoxedValues.valueOf(Long.parseLong(text));
         } catch (Exception e) {
             throw new PropertyEditorException(e);
         }
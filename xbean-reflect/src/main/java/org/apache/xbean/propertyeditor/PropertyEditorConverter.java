@@ -0,0 +1,129 @@
+/**
+ *
+ * Copyright 2005-2006 The Apache Software Foundation or its licensors, as applicable.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.propertyeditor;
+
+import java.awt.Component;
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.beans.PropertyChangeListener;
+import java.beans.PropertyEditor;
+
+/**
+ * Adapts a plain PropertyEditor to the Converter interface.  A property editor holds the value being converted, so
+ * every conversion is synchronized on the editor, which makes the adapter safe to share between threads.  The
+ * PropertyEditor methods are delegated to the editor as is.
+ *
+ * @version $Rev$ $Date$
+ */
+final class PropertyEditorConverter implements Converter {
+    /**
+     * Gets a converter for the supplied editor.  Editors which are already converters are returned as is.
+     *
+     * @param editor the property editor
+     * @return a converter using the editor
+     */
+    public static Converter toConverter(PropertyEditor editor) {
+        if (editor == null) throw new NullPointerException("editor is null");
+        if (editor instanceof Converter) {
+            return (Converter) editor;
+        }
+        return new PropertyEditorConverter(editor);
+    }
+
+    private final PropertyEditor editor;
+
+    private PropertyEditorConverter(PropertyEditor editor) {
+        this.editor = editor;
+    }
+
+    /**
+     * The type of a plain property editor is unknown, so this returns Object.
+     *
+     * @return Object.class
+     */
+    public Class getType() {
+        return Object.class;
+    }
+
+    public String toString(Object value) {
+        if (value == null) {
+            return null;
+        }
+        synchronized (editor) {
+            editor.setValue(value);
+            return editor.getAsText();
+        }
+    }
+
+    public Object toObject(String text) {
+        if (text == null) {
+            return null;
+        }
+        synchronized (editor) {
+            editor.setAsText(text);
+            return editor.getValue();
+        }
+    }
+
+    public void setValue(Object value) {
+        editor.setValue(value);
+    }
+
+    public Object getValue() {
+        return editor.getValue();
+    }
+
+    public boolean isPaintable() {
+        return editor.isPaintable();
+    }
+
+    public void paintValue(Graphics graphics, Rectangle box) {
+        editor.paintValue(graphics, box);
+    }
+
+    public String getJavaInitializationString() {
+        return editor.getJavaInitializationString();
+    }
+
+    public String getAsText() {
+        return editor.getAsText();
+    }
+
+    public void setAsText(String text) {
+        editor.setAsText(text);
+    }
+
+    public String[] getTags() {
+        return editor.getTags();
+    }
+
+    public Component getCustomEditor() {
+        return editor.getCustomEditor();
+    }
+
+    public boolean supportsCustomEditor() {
+        return editor.supportsCustomEditor();
+    }
+
+    public void addPropertyChangeListener(PropertyChangeListener listener) {
+        editor.addPropertyChangeListener(listener);
+    }
+
+    public void removePropertyChangeListener(PropertyChangeListener listener) {
+        editor.removePropertyChangeListener(listener);
+    }
+}
@@ -19,6 +19,7 @@ package org.apache.xbean.propertyeditor;
 
 import java.beans.PropertyEditor;
 import java.beans.PropertyEditorManager;
+import java.lang.ref.SoftReference;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
@@ -33,7 +34,22 @@ import org.apache.xbean.ClassLoading;
  * @version $Rev: 6687 $
  */
 public class PropertyEditors {
-    private static final Map registry = Collections.synchronizedMap(new ReferenceIdentityMap());
+    private static final Object registryLock = new Object();
+
+    /**
+     * The registered converters.  This is an immutable snapshot which is replaced on every registration, so the
+     * converter lookups done for every conversion never block.
+     */
+    private static volatile WeakIdentityTable registry = WeakIdentityTable.EMPTY;
+
+    /**
+     * The result of findConverter for types without a registered converter: either a soft reference to the
+     * converter derived for the type, or NO_CONVERTER.  Derived converters are softly held because they refer to
+     * their type, which would otherwise keep the weakly held key alive.  Cleared on every registration.
+     */
+    private static volatile WeakIdentityTable derivedConverters = WeakIdentityTable.EMPTY;
+    private static final Object NO_CONVERTER = new Object();
+    private static volatile int registryGeneration;
     private static final Map PRIMITIVE_TO_WRAPPER;
     private static final Map WRAPPER_TO_PRIMITIVE;
 
@@ -107,17 +123,22 @@ public class PropertyEditors {
     public static void registerConverter(Converter converter) {
         if (converter == null) throw new NullPointerException("editor is null");
         Class type = converter.getType();
-        registry.put(type, converter);
-        PropertyEditorManager.registerEditor(type, converter.getClass());
-
-        if (PRIMITIVE_TO_WRAPPER.containsKey(type)) {
-            Class wrapperType = (Class) PRIMITIVE_TO_WRAPPER.get(type);
-            registry.put(wrapperType, converter);
-            PropertyEditorManager.registerEditor(wrapperType, converter.getClass());
-        } else if (WRAPPER_TO_PRIMITIVE.containsKey(type)) {
-            Class primitiveType = (Class) WRAPPER_TO_PRIMITIVE.get(type);
-            registry.put(primitiveType, converter);
-            PropertyEditorManager.registerEditor(primitiveType, converter.getClass());
+        synchronized (registryLock) {
+            WeakIdentityTable newRegistry = registry.with(type, converter);
+            PropertyEditorManager.registerEditor(type, converter.getClass());
+
+            if (PRIMITIVE_TO_WRAPPER.containsKey(type)) {
+                Class wrapperType = (Class) PRIMITIVE_TO_WRAPPER.get(type);
+                newRegistry = newRegistry.with(wrapperType, converter);
+                PropertyEditorManager.registerEditor(wrapperType, converter.getClass());
+            } else if (WRAPPER_TO_PRIMITIVE.containsKey(type)) {
+                Class primitiveType = (Class) WRAPPER_TO_PRIMITIVE.get(type);
+                newRegistry = newRegistry.with(primitiveType, converter);
+                PropertyEditorManager.registerEditor(primitiveType, converter.getClass());
+            }
+            registry = newRegistry;
+            derivedConverters = WeakIdentityTable.EMPTY;
+            registryGeneration++;
         }
     }
 
@@ -227,7 +248,14 @@ public class PropertyEditors {
         return objectValue;
     }
 
-    private static Converter findConverter(Class type) {
+    /**
+     * Locate a converter for the given type.  Unlike {@link #getValue(Class, String)} this does not fall back to a
+     * PropertyEditor, so callers can hold on to the returned converter and reuse it for many conversions.
+     *
+     * @param type the type to convert
+     * @return the converter for the type, or null if no converter is available
+     */
+    public static Converter findConverter(Class type) {
         if (type == null) throw new NullPointerException("type is null");
 
         Converter converter = (Converter) registry.get(type);
@@ -237,6 +265,30 @@ public class PropertyEditors {
             return converter;
         }
 
+        // have we already searched for this type
+        Object derived = derivedConverters.get(type);
+        if (derived == NO_CONVERTER) {
+            return null;
+        } else if (derived != null) {
+            converter = (Converter) ((SoftReference) derived).get();
+            if (converter != null) {
+                return converter;
+            }
+        }
+
+        int generation = registryGeneration;
+        converter = deriveConverter(type);
+        synchronized (registryLock) {
+            // a converter registered while we were searching may have changed the answer
+            if (generation == registryGeneration) {
+                derivedConverters = derivedConverters.with(type, converter == null ? NO_CONVERTER : new SoftReference(converter));
+            }
+        }
+        return converter;
+    }
+
+    private static Converter deriveConverter(Class type) {
+        Converter converter;
         Class[] declaredClasses = type.getDeclaredClasses();
         for (int i = 0; i < declaredClasses.length; i++) {
             Class declaredClass = declaredClasses[i];
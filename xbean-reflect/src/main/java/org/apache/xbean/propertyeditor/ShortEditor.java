@@ -27,7 +27,7 @@ public class ShortEditor extends AbstractConverter {
 
     protected Object toObjectImpl(String text) {
         try {
-            return Short.valueOf(text);
+            return BoxedValues.valueOf(Short.parseShort(text));
         } catch (Exception e) {
             throw new PropertyEditorException(e);
         }
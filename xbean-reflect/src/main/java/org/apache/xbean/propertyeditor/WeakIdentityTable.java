@@ -0,0 +1,115 @@
+/**
+ *
+ * Copyright 2005-2006 The Apache Software Foundation or its licensors, as applicable.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.propertyeditor;
+
+import java.lang.ref.WeakReference;
+
+/**
+ * An immutable table with identity semantics and weakly referenced keys.  Lookups never lock, allocate or modify
+ * the table, so a table published through a volatile field can be read by any number of threads at once.  Updates
+ * create a new table, and drop any entries whose keys have been garbage collected.
+ * <p/>
+ * The table uses open addressing with a load factor of at most one half, so every probe sequence ends at an empty
+ * slot.
+ *
+ * @version $Rev$ $Date$
+ */
+final class WeakIdentityTable {
+    private static final int MINIMUM_CAPACITY = 16;
+
+    public static final WeakIdentityTable EMPTY = new WeakIdentityTable(new WeakReference[MINIMUM_CAPACITY], new Object[MINIMUM_CAPACITY]);
+
+    private final WeakReference[] keys;
+    private final Object[] values;
+
+    private WeakIdentityTable(WeakReference[] keys, Object[] values) {
+        this.keys = keys;
+        this.values = values;
+    }
+
+    /**
+     * Gets the value for the specified key.
+     *
+     * @param key the key
+     * @return the value, or null if the table does not contain the key
+     */
+    public Object get(Object key) {
+        int mask = keys.length - 1;
+        int index = hash(key) & mask;
+        while (true) {
+            WeakReference reference = keys[index];
+            if (reference == null) {
+                return null;
+            }
+            if (reference.get() == key) {
+                return values[index];
+            }
+            index = (index + 1) & mask;
+        }
+    }
+
+    /**
+     * Creates a copy of this table with the specified key mapped to the specified value.
+     *
+     * @param key the key
+     * @param value the value
+     * @return the new table
+     */
+    public WeakIdentityTable with(Object key, Object value) {
+        if (key == null) throw new NullPointerException("key is null");
+        if (value == null) throw new NullPointerException("value is null");
+
+        int size = 1;
+        for (int i = 0; i < keys.length; i++) {
+            Object existingKey = keys[i] == null ? null : keys[i].get();
+            if (existingKey != null && existingKey != key) {
+                size++;
+            }
+        }
+
+        int capacity = MINIMUM_CAPACITY;
+        while (capacity < size * 2) {
+            capacity <<= 1;
+        }
+
+        WeakReference[] newKeys = new WeakReference[capacity];
+        Object[] newValues = new Object[capacity];
+        for (int i = 0; i < keys.length; i++) {
+            Object existingKey = keys[i] == null ? null : keys[i].get();
+            if (existingKey != null && existingKey != key) {
+                insert(newKeys, newValues, keys[i], existingKey, values[i]);
+            }
+        }
+        insert(newKeys, newValues, new WeakReference(key), key, value);
+        return new WeakIdentityTable(newKeys, newValues);
+    }
+
+    private static void insert(WeakReference[] keys, Object[] values, WeakReference reference, Object key, Object value) {
+        int mask = keys.length - 1;
+        int index = hash(key) & mask;
+        while (keys[index] != null) {
+            index = (index + 1) & mask;
+        }
+        keys[index] = reference;
+        values[index] = value;
+    }
+
+    private static int hash(Object key) {
+        int hash = System.identityHashCode(key);
+        return hash ^ (hash >>> 16);
+    }
+}
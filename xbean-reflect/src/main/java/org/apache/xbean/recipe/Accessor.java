@@ -0,0 +1,137 @@
+/**
+ *
+ * Copyright 2005-2006 The Apache Software Foundation or its licensors, as applicable.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.recipe;
+
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+/**
+ * Invokes a constructor, factory method or setter resolved by a recipe.  An accessor is created once, when the
+ * recipe resolves the member, and is then reused for every creation.  Public members of public classes have their
+ * access checks suppressed up front, so an invocation does not repeat the caller verification done by Method.invoke
+ * and Constructor.newInstance.  When that is not possible, for example because a security manager or module
+ * encapsulation denies it, the accessor falls back to plain reflection.
+ *
+ * @version $Rev$ $Date$
+ */
+abstract class Accessor {
+    private static final Object[] NO_ARGS = new Object[0];
+
+    public static Accessor newAccessor(Constructor constructor) {
+        suppressAccessChecks(constructor, constructor);
+        return new ConstructorAccessor(constructor);
+    }
+
+    public static Accessor newAccessor(Method method) {
+        suppressAccessChecks(method, method);
+        return new MethodAccessor(method);
+    }
+
+    private static void suppressAccessChecks(Member member, AccessibleObject accessibleObject) {
+        // only members the normal rules already let us call get the fast path
+        if (!Modifier.isPublic(member.getModifiers()) || !Modifier.isPublic(member.getDeclaringClass().getModifiers())) {
+            return;
+        }
+        try {
+            accessibleObject.setAccessible(true);
+        } catch (RuntimeException e) {
+            // denied by a security manager (SecurityException) or by module encapsulation on newer VMs
+            // (InaccessibleObjectException); the member is public, so plain reflection still works
+        }
+    }
+
+    /**
+     * Gets the class declaring the member.
+     *
+     * @return the class declaring the member
+     */
+    public abstract Class getDeclaringClass();
+
+    /**
+     * Gets the parameter types of the member.  The returned array is shared and must not be modified.
+     *
+     * @return the parameter types of the member
+     */
+    public abstract Class[] getParameterTypes();
+
+    /**
+     * Invokes the member.  The target is ignored for constructors and static methods.
+     *
+     * @param target the instance on which the member is invoked
+     * @param args the arguments, or null if the member takes no arguments
+     * @return the created object or the method return value
+     * @throws InvocationTargetException if the member threw an exception
+     * @throws Exception if the member could not be invoked
+     */
+    public abstract Object invoke(Object target, Object[] args) throws Exception;
+
+    private static final class ConstructorAccessor extends Accessor {
+        private final Constructor constructor;
+        private final Class[] parameterTypes;
+
+        private ConstructorAccessor(Constructor constructor) {
+            this.constructor = constructor;
+            this.parameterTypes = constructor.getParameterTypes();
+        }
+
+        public Class getDeclaringClass() {
+            return constructor.getDeclaringClass();
+        }
+
+        public Class[] getParameterTypes() {
+            return parameterTypes;
+        }
+
+        public Object invoke(Object target, Object[] args) throws Exception {
+            return constructor.newInstance(args == null ? NO_ARGS : args);
+        }
+
+        public String toString() {
+            return constructor.toString();
+        }
+    }
+
+    private static final class MethodAccessor extends Accessor {
+        private final Method method;
+        private final Class[] parameterTypes;
+
+        private MethodAccessor(Method method) {
+            this.method = method;
+            this.parameterTypes = method.getParameterTypes();
+        }
+
+        public Class getDeclaringClass() {
+            return method.getDeclaringClass();
+        }
+
+        public Class[] getParameterTypes() {
+            return parameterTypes;
+        }
+
+        public Object invoke(Object target, Object[] args) throws Exception {
+            return method.invoke(target, args == null ? NO_ARGS : args);
+        }
+
+        public String toString() {
+            return method.toString();
+        }
+    }
+}
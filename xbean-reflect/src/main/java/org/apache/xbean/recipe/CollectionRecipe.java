@@ -33,6 +33,8 @@ import org.apache.xbean.ClassLoading;
 public class CollectionRecipe implements Recipe {
     private final List list;
     private final String type;
+    private transient volatile Accessor constructor;
+    private transient RecipeExecutor executor;
 
     public CollectionRecipe() {
         list = new ArrayList();
@@ -92,6 +94,31 @@ public class CollectionRecipe implements Recipe {
         list = new ArrayList(collectionRecipe.list);
     }
 
+    List getNestedRecipes() {
+        List nestedRecipes = new ArrayList();
+        for (Iterator iterator = list.iterator(); iterator.hasNext();) {
+            Object value = iterator.next();
+            if (value instanceof Recipe) {
+                nestedRecipes.add(value);
+            }
+        }
+        return nestedRecipes;
+    }
+
+    public RecipeExecutor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Sets the executor used to create the nested recipes of this recipe concurrently.  When null, which is the
+     * default, nested recipes are created one after another by the thread calling create.
+     *
+     * @param executor the executor for nested recipes or null
+     */
+    public void setExecutor(RecipeExecutor executor) {
+        this.executor = executor;
+    }
+
     public Object create(ClassLoader classLoader) {
         Class setType = null;
         try {
@@ -100,13 +127,19 @@ public class CollectionRecipe implements Recipe {
             throw new ConstructionException("Type class could not be found: " + type);
         }
 
-        if (!RecipeHelper.hasDefaultConstructor(setType)) {
-            throw new ConstructionException("Type does not have a default constructor " + type);
+        // the default constructor is resolved once per type class
+        Accessor constructor = this.constructor;
+        if (constructor == null || constructor.getDeclaringClass() != setType) {
+            constructor = RecipeHelper.getDefaultConstructor(setType);
+            if (constructor == null) {
+                throw new ConstructionException("Type does not have a default constructor " + type);
+            }
+            this.constructor = constructor;
         }
 
         Object o;
         try {
-            o = setType.newInstance();
+            o = constructor.invoke(null, null);
         } catch (Exception e) {
             throw new ConstructionException("Error while creating set instance: " + type);
         }
@@ -116,13 +149,33 @@ public class CollectionRecipe implements Recipe {
         }
 
         Collection instance = (Collection) o;
+        if (executor != null) {
+            Object[] values = list.toArray();
+            Throwable[] errors = ConcurrentCreation.createAll(values, classLoader, executor);
+            if (errors != null) {
+                for (int i = 0; i < errors.length; i++) {
+                    if (errors[i] instanceof ConstructionException) {
+                        ConstructionException e = (ConstructionException) errors[i];
+                        e.setPrependAttributeName("[" + type + " item " + i + "]");
+                        throw e;
+                    } else if (errors[i] != null) {
+                        throw ConcurrentCreation.toRuntimeException(errors[i]);
+                    }
+                }
+            }
+            for (int i = 0; i < values.length; i++) {
+                instance.add(values[i]);
+            }
+            return instance;
+        }
+
         int i =0;
         for (Iterator iterator = list.iterator(); iterator.hasNext();) {
             Object value = iterator.next();
             if (value instanceof Recipe) {
                 Recipe recipe = (Recipe) value;
                 try {
-                    value = recipe.create(classLoader);
+                    value = RecipeHelper.create(recipe, classLoader);
                 } catch (ConstructionException e) {
                     e.setPrependAttributeName("[" + type + " item " + i + "]");
                     throw e;
@@ -0,0 +1,176 @@
+/**
+ *
+ * Copyright 2005-2006 The Apache Software Foundation or its licensors, as applicable.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.recipe;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Creates the nested recipes of a recipe concurrently using a RecipeExecutor.  Every task is first offered to the
+ * executor, and then the creating thread runs every task that has not been picked up yet itself.  The creating thread
+ * therefore only ever waits for tasks that are already running on another thread, so nested recipes sharing a small
+ * executor can not deadlock waiting for a free thread.
+ *
+ * @version $Rev$ $Date$
+ */
+final class ConcurrentCreation {
+    private ConcurrentCreation() {
+    }
+
+    /**
+     * Replaces every Recipe in the values array with the object it creates.  The returned array holds the exception
+     * thrown by the recipe at each index, so callers can report the failure of the first recipe as they would have
+     * when creating the recipes one after another.
+     *
+     * @param values the values to create; Recipe elements are replaced with the created objects
+     * @param classLoader the class loader to create the recipes in
+     * @param executor the executor used to run the creations
+     * @return the failure of each recipe, or null if all recipes were created
+     */
+    public static Throwable[] createAll(Object[] values, ClassLoader classLoader, RecipeExecutor executor) {
+        Object lock = new Object();
+        ExecutionContext context = ExecutionContext.getContext();
+        Thread parent = Thread.currentThread();
+        List tasks = new ArrayList(values.length);
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] instanceof Recipe) {
+                tasks.add(new CreateTask(lock, context, parent, i, (Recipe) values[i], classLoader));
+            }
+        }
+
+        // offer everything but the first task to the executor; the first is ours
+        for (int i = 1; i < tasks.size(); i++) {
+            try {
+                executor.execute((Runnable) tasks.get(i));
+            } catch (RuntimeException rejected) {
+                // we will run it ourselves below
+            }
+        }
+
+        // run all tasks that nobody has started yet
+        for (int i = 0; i < tasks.size(); i++) {
+            ((CreateTask) tasks.get(i)).run();
+        }
+
+        // wait for the tasks running on other threads
+        boolean interrupted = false;
+        synchronized (lock) {
+            for (int i = 0; i < tasks.size(); i++) {
+                CreateTask task = (CreateTask) tasks.get(i);
+                while (!task.done) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        Throwable[] errors = null;
+        for (int i = 0; i < tasks.size(); i++) {
+            CreateTask task = (CreateTask) tasks.get(i);
+            if (task.error != null) {
+                if (errors == null) {
+                    errors = new Throwable[values.length];
+                }
+                errors[task.index] = task.error;
+            } else {
+                values[task.index] = task.result;
+            }
+        }
+        return errors;
+    }
+
+    /**
+     * Converts a recipe failure returned by createAll into an exception the caller can throw.  Errors are thrown
+     * directly.
+     *
+     * @param error the failure of a recipe
+     * @return the exception to throw
+     */
+    public static RuntimeException toRuntimeException(Throwable error) {
+        if (error instanceof RuntimeException) {
+            return (RuntimeException) error;
+        }
+        if (error instanceof Error) {
+            throw (Error) error;
+        }
+        return new ConstructionException(error);
+    }
+
+    private static final class CreateTask implements Runnable {
+        private final Object lock;
+        private final ExecutionContext context;
+        private final Thread parent;
+        private final int index;
+        private final Recipe recipe;
+        private final ClassLoader classLoader;
+
+        // guarded by lock
+        private boolean started;
+        private boolean done;
+        private Object result;
+        private Throwable error;
+
+        private CreateTask(Object lock, ExecutionContext context, Thread parent, int index, Recipe recipe, ClassLoader classLoader) {
+            this.lock = lock;
+            this.context = context;
+            this.parent = parent;
+            this.index = index;
+            this.recipe = recipe;
+            this.classLoader = classLoader;
+        }
+
+        public void run() {
+            synchronized (lock) {
+                if (started) {
+                    return;
+                }
+                started = true;
+            }
+
+            // nested recipes on this thread must see the same execution context, and the context must know the
+            // parent thread will wait for this one so it can detect cycles running across both
+            ExecutionContext oldContext = ExecutionContext.setContext(context);
+            boolean otherThread = context != null && Thread.currentThread() != parent;
+            Thread previousParent = otherThread ? context.beginTask(parent) : null;
+            Object result = null;
+            Throwable error = null;
+            try {
+                result = RecipeHelper.create(recipe, classLoader);
+            } catch (Throwable t) {
+                error = t;
+            } finally {
+                if (otherThread) {
+                    context.endTask(previousParent);
+                }
+                ExecutionContext.setContext(oldContext);
+            }
+
+            synchronized (lock) {
+                this.result = result;
+                this.error = error;
+                done = true;
+                lock.notifyAll();
+            }
+        }
+    }
+}
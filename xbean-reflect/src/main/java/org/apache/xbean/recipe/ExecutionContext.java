@@ -0,0 +1,320 @@
+/**
+ *
+ * Copyright 2005-2006 The Apache Software Foundation or its licensors, as applicable.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.recipe;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The execution context of a recipe graph.  Every recipe created through a context is created once, and every place
+ * in the graph referring to the same recipe instance receives the same object.  Before anything is created the
+ * graph is checked for circular references, so a cycle fails fast with a ConstructionException listing the recipes
+ * involved instead of overflowing the stack.
+ * <p/>
+ * A context is bound to the creating thread, and to the threads of a RecipeExecutor, for the duration of the
+ * create call, and nested recipes are created through it using RecipeHelper.create.  A context may be reused for
+ * several calls to create, in which case the objects created by previous calls are reused.
+ * <p/>
+ * Recipes the up front check can not see into are still guarded while they are created: the context records which
+ * thread is creating each recipe, which recipe each thread is waiting for and which thread is running a nested
+ * creation on behalf of another, and fails with a ConstructionException instead of waiting when the wait would close
+ * a cycle, whether the threads involved are the same or not.
+ *
+ * @version $Rev$ $Date$
+ */
+public class ExecutionContext {
+    private static final ThreadLocal currentContext = new ThreadLocal();
+
+    /**
+     * Gets the execution context bound to the current thread.
+     *
+     * @return the current execution context or null if recipes are being created without a context
+     */
+    public static ExecutionContext getContext() {
+        return (ExecutionContext) currentContext.get();
+    }
+
+    static ExecutionContext setContext(ExecutionContext context) {
+        ExecutionContext oldContext = (ExecutionContext) currentContext.get();
+        currentContext.set(context);
+        return oldContext;
+    }
+
+    private final ClassLoader classLoader;
+    private final Map entries = new IdentityHashMap();
+    private final Map checkedRecipes = new IdentityHashMap();
+
+    /**
+     * The entry each thread is waiting for; guarded by entries.
+     */
+    private final Map waitingThreads = new HashMap();
+
+    /**
+     * The thread each thread is running a nested creation for, which will wait for that creation; guarded by entries.
+     */
+    private final Map taskParents = new HashMap();
+
+    public ExecutionContext(ClassLoader classLoader) {
+        if (classLoader == null) throw new NullPointerException("classLoader is null");
+        this.classLoader = classLoader;
+    }
+
+    public ClassLoader getClassLoader() {
+        return classLoader;
+    }
+
+    /**
+     * Creates the object for the specified recipe and all of the recipes nested in it.  If the recipe was already
+     * created using this context, the object created at that time is returned.
+     *
+     * @param recipe the recipe to create
+     * @return the created object
+     * @throws ConstructionException if the recipe graph contains a circular reference or if a recipe could not be
+     * created
+     */
+    public Object create(Recipe recipe) throws ConstructionException {
+        if (recipe == null) throw new NullPointerException("recipe is null");
+
+        checkForCycles(recipe);
+
+        ExecutionContext oldContext = setContext(this);
+        try {
+            return createRecipe(recipe);
+        } finally {
+            setContext(oldContext);
+        }
+    }
+
+    /**
+     * Is there an object for the specified recipe, either created or being created.
+     *
+     * @param recipe the recipe
+     * @return true if the recipe has been reached in this context
+     */
+    public boolean containsObject(Recipe recipe) {
+        synchronized (entries) {
+            return entries.containsKey(recipe);
+        }
+    }
+
+    Object createRecipe(Recipe recipe) {
+        Thread currentThread = Thread.currentThread();
+        Entry entry;
+        boolean owner = false;
+        synchronized (entries) {
+            entry = (Entry) entries.get(recipe);
+            if (entry == null) {
+                entry = new Entry(recipe, currentThread);
+                entries.put(recipe, entry);
+                owner = true;
+            } else if (!entry.isDone()) {
+                // only reachable for recipe types the up front check can not see into
+                if (isWaitingFor(entry.creator, currentThread)) {
+                    throw new ConstructionException("Circular reference to recipe " + recipe);
+                }
+                waitingThreads.put(currentThread, entry);
+            }
+        }
+
+        if (owner) {
+            try {
+                Object object = recipe.create(classLoader);
+                entry.setObject(object);
+                return object;
+            } catch (RuntimeException e) {
+                entry.setError(e);
+                throw e;
+            } catch (Error e) {
+                entry.setError(e);
+                throw e;
+            }
+        }
+
+        try {
+            return entry.getObject();
+        } finally {
+            synchronized (entries) {
+                waitingThreads.remove(currentThread);
+            }
+        }
+    }
+
+    /**
+     * Marks the current thread as running a nested creation which the parent thread will wait for.
+     *
+     * @param parent the thread that will wait for the nested creation
+     * @return the previous parent of the current thread, which must be passed to endTask
+     */
+    Thread beginTask(Thread parent) {
+        synchronized (entries) {
+            return (Thread) taskParents.put(Thread.currentThread(), parent);
+        }
+    }
+
+    /**
+     * Marks the end of a nested creation started with beginTask.
+     *
+     * @param previousParent the value returned by beginTask
+     */
+    void endTask(Thread previousParent) {
+        synchronized (entries) {
+            if (previousParent == null) {
+                taskParents.remove(Thread.currentThread());
+            } else {
+                taskParents.put(Thread.currentThread(), previousParent);
+            }
+        }
+    }
+
+    /**
+     * Will the specified thread, directly or through other threads, wait for the target thread.  A thread waits for
+     * the creator of the entry it is blocked on, and for every thread running a nested creation on its behalf.  Must
+     * be called while holding the entries lock.
+     */
+    private boolean isWaitingFor(Thread thread, Thread target) {
+        LinkedList pending = new LinkedList();
+        Map visited = new HashMap();
+        pending.add(thread);
+        while (!pending.isEmpty()) {
+            Thread next = (Thread) pending.removeFirst();
+            if (next == target) {
+                return true;
+            }
+            if (visited.put(next, next) != null) {
+                continue;
+            }
+
+            Entry waitingFor = (Entry) waitingThreads.get(next);
+            if (waitingFor != null && !waitingFor.isDone()) {
+                pending.add(waitingFor.creator);
+            }
+            for (Iterator iterator = taskParents.entrySet().iterator(); iterator.hasNext();) {
+                Map.Entry taskParent = (Map.Entry) iterator.next();
+                if (taskParent.getValue() == next) {
+                    pending.add(taskParent.getKey());
+                }
+            }
+        }
+        return false;
+    }
+
+    private void checkForCycles(Recipe recipe) {
+        synchronized (checkedRecipes) {
+            checkForCycles(recipe, new LinkedList(), new IdentityHashMap());
+        }
+    }
+
+    private void checkForCycles(Recipe recipe, LinkedList path, Map pathRecipes) {
+        if (checkedRecipes.containsKey(recipe)) {
+            return;
+        }
+        if (pathRecipes.containsKey(recipe)) {
+            StringBuffer buffer = new StringBuffer("Circular reference in recipe graph: ");
+            boolean inCycle = false;
+            for (Iterator iterator = path.iterator(); iterator.hasNext();) {
+                Object pathRecipe = iterator.next();
+                inCycle = inCycle || pathRecipe == recipe;
+                if (inCycle) {
+                    buffer.append(pathRecipe).append(" -> ");
+                }
+            }
+            buffer.append(recipe);
+            throw new ConstructionException(buffer.toString());
+        }
+
+        path.addLast(recipe);
+        pathRecipes.put(recipe, recipe);
+        List nestedRecipes = RecipeHelper.getNestedRecipes(recipe);
+        for (Iterator iterator = nestedRecipes.iterator(); iterator.hasNext();) {
+            Recipe nestedRecipe = (Recipe) iterator.next();
+            checkForCycles(nestedRecipe, path, pathRecipes);
+        }
+        pathRecipes.remove(recipe);
+        path.removeLast();
+
+        checkedRecipes.put(recipe, recipe);
+    }
+
+    private static final class Entry {
+        private final Recipe recipe;
+        private final Thread creator;
+        private boolean done;
+        private Object object;
+        private Throwable error;
+        private String beanName;
+        private String attributeName;
+
+        private Entry(Recipe recipe, Thread creator) {
+            this.recipe = recipe;
+            this.creator = creator;
+        }
+
+        private synchronized boolean isDone() {
+            return done;
+        }
+
+        private synchronized void setObject(Object object) {
+            this.object = object;
+            done = true;
+            notifyAll();
+        }
+
+        private synchronized void setError(Throwable error) {
+            this.error = error;
+            if (error instanceof ConstructionException) {
+                // the creator adds its own attribute names to the exception after this, so remember the originals
+                ConstructionException constructionException = (ConstructionException) error;
+                beanName = constructionException.getBeanName();
+                attributeName = constructionException.getAttributeName();
+            }
+            done = true;
+            notifyAll();
+        }
+
+        private synchronized Object getObject() {
+            boolean interrupted = false;
+            while (!done) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+
+            if (error instanceof ConstructionException) {
+                // every referrer adds its own attribute names, so each waiter gets its own exception
+                ConstructionException constructionException =
+                        new ConstructionException("Creation of shared recipe " + recipe + " failed", error);
+                constructionException.setBeanName(beanName);
+                constructionException.setAttributeName(attributeName);
+                throw constructionException;
+            } else if (error instanceof RuntimeException) {
+                throw (RuntimeException) error;
+            } else if (error instanceof Error) {
+                throw (Error) error;
+            }
+            return object;
+        }
+    }
+}
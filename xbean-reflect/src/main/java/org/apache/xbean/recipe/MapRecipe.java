@@ -32,6 +32,8 @@ import org.apache.xbean.ClassLoading;
 public class MapRecipe implements Recipe {
     private final List entries;
     private final String type;
+    private transient volatile Accessor constructor;
+    private transient RecipeExecutor executor;
 
     public MapRecipe() {
         type = LinkedHashMap.class.getName();
@@ -86,6 +88,34 @@ public class MapRecipe implements Recipe {
         entries = new ArrayList(mapRecipe.entries);
     }
 
+    List getNestedRecipes() {
+        List nestedRecipes = new ArrayList();
+        for (Iterator iterator = entries.iterator(); iterator.hasNext();) {
+            Object[] entry = (Object[]) iterator.next();
+            if (entry[0] instanceof Recipe) {
+                nestedRecipes.add(entry[0]);
+            }
+            if (entry[1] instanceof Recipe) {
+                nestedRecipes.add(entry[1]);
+            }
+        }
+        return nestedRecipes;
+    }
+
+    public RecipeExecutor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Sets the executor used to create the nested recipes of this recipe concurrently.  When null, which is the
+     * default, nested recipes are created one after another by the thread calling create.
+     *
+     * @param executor the executor for nested recipes or null
+     */
+    public void setExecutor(RecipeExecutor executor) {
+        this.executor = executor;
+    }
+
     public Object create(ClassLoader classLoader) {
         Class mapType = null;
         try {
@@ -94,13 +124,19 @@ public class MapRecipe implements Recipe {
             throw new ConstructionException("Type class could not be found: " + type);
         }
 
-        if (!RecipeHelper.hasDefaultConstructor(mapType)) {
-            throw new ConstructionException("Type does not have a default constructor " + type);
+        // the default constructor is resolved once per type class
+        Accessor constructor = this.constructor;
+        if (constructor == null || constructor.getDeclaringClass() != mapType) {
+            constructor = RecipeHelper.getDefaultConstructor(mapType);
+            if (constructor == null) {
+                throw new ConstructionException("Type does not have a default constructor " + type);
+            }
+            this.constructor = constructor;
         }
 
         Object o;
         try {
-            o = mapType.newInstance();
+            o = constructor.invoke(null, null);
         } catch (Exception e) {
             throw new ConstructionException("Error while creating set instance: " + type);
         }
@@ -110,6 +146,34 @@ public class MapRecipe implements Recipe {
         }
 
         Map instance = (Map) o;
+        if (executor != null) {
+            // keys and values are created together: entry n is at 2n and 2n + 1
+            Object[] values = new Object[entries.size() * 2];
+            for (int i = 0; i < entries.size(); i++) {
+                Object[] entry = (Object[]) entries.get(i);
+                values[i * 2] = entry[0];
+                values[i * 2 + 1] = entry[1];
+            }
+            Throwable[] errors = ConcurrentCreation.createAll(values, classLoader, executor);
+            if (errors != null) {
+                for (int i = 0; i < errors.length; i++) {
+                    if (errors[i] instanceof ConstructionException) {
+                        // a key failure is reported with the key recipe, as it is when created in sequence
+                        Object key = (i % 2 == 0) ? ((Object[]) entries.get(i / 2))[0] : values[i - 1];
+                        ConstructionException e = (ConstructionException) errors[i];
+                        e.setPrependAttributeName("[" + type + " " + key + "]");
+                        throw e;
+                    } else if (errors[i] != null) {
+                        throw ConcurrentCreation.toRuntimeException(errors[i]);
+                    }
+                }
+            }
+            for (int i = 0; i < values.length; i += 2) {
+                instance.put(values[i], values[i + 1]);
+            }
+            return instance;
+        }
+
         for (Iterator iterator = entries.iterator(); iterator.hasNext();) {
             Object[] entry = (Object[]) iterator.next();
 
@@ -117,7 +181,7 @@ public class MapRecipe implements Recipe {
             if (key instanceof Recipe) {
                 Recipe recipe = (Recipe) key;
                 try {
-                    key = recipe.create(classLoader);
+                    key = RecipeHelper.create(recipe, classLoader);
                 } catch (ConstructionException e) {
                     e.setPrependAttributeName("[" + type + " " + key + "]");
                     throw e;
@@ -128,7 +192,7 @@ public class MapRecipe implements Recipe {
             if (value instanceof Recipe) {
                 Recipe recipe = (Recipe) value;
                 try {
-                    value = recipe.create(classLoader);
+                    value = RecipeHelper.create(recipe, classLoader);
                 } catch (ConstructionException e) {
                     e.setPrependAttributeName("[" + type + " " + key + "]");
                     throw e;
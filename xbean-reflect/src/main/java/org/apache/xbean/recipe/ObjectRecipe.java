@@ -17,14 +17,15 @@
 package org.apache.xbean.recipe;
 
 import org.apache.xbean.ClassLoading;
+import org.apache.xbean.propertyeditor.Converter;
 import org.apache.xbean.propertyeditor.PropertyEditors;
 
+import java.lang.ref.WeakReference;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -34,11 +35,22 @@ import java.util.Map;
  * @version $Rev: 6688 $ $Date: 2005-12-29T02:08:29.200064Z $
  */
 public class ObjectRecipe implements Recipe {
+    // wrappers are immutable, so the default primitive values are shared
+    private static final Character DEFAULT_CHARACTER = new Character((char) 0);
+    private static final Byte DEFAULT_BYTE = new Byte((byte) 0);
+    private static final Short DEFAULT_SHORT = new Short((short) 0);
+    private static final Integer DEFAULT_INTEGER = new Integer(0);
+    private static final Long DEFAULT_LONG = new Long(0);
+    private static final Float DEFAULT_FLOAT = new Float(0);
+    private static final Double DEFAULT_DOUBLE = new Double(0);
+
     private final String type;
     private final String factoryMethod;
     private final String[] constructorArgNames;
     private final Class[] constructorArgTypes;
     private final LinkedHashMap properties;
+    private transient volatile ConstructionPlan plan;
+    private transient RecipeExecutor executor;
 
     public ObjectRecipe(Class type) {
         this(type.getName());
@@ -113,6 +125,7 @@ public class ObjectRecipe implements Recipe {
             value = new ValueRecipe(value);
         }
         properties.put(name, value);
+        plan = null;
     }
 
     public void setAllProperties(Map map) {
@@ -125,54 +138,80 @@ public class ObjectRecipe implements Recipe {
         }
     }
 
+    List getNestedRecipes() {
+        List nestedRecipes = new ArrayList();
+        for (Iterator iterator = properties.values().iterator(); iterator.hasNext();) {
+            Object value = iterator.next();
+            if (value instanceof Recipe) {
+                nestedRecipes.add(value);
+            }
+        }
+        return nestedRecipes;
+    }
+
+    public RecipeExecutor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Sets the executor used to create the nested recipes of this recipe concurrently.  When null, which is the
+     * default, nested recipes are created one after another by the thread calling create.
+     *
+     * @param executor the executor for nested recipes or null
+     */
+    public void setExecutor(RecipeExecutor executor) {
+        this.executor = executor;
+    }
+
     public Object create() throws ConstructionException {
         ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
         return create(contextClassLoader);
     }
 
     public Object create(ClassLoader classLoader) throws ConstructionException {
-        // load the type class
-        Class typeClass = null;
-        try {
-            typeClass = ClassLoading.loadClass(type, classLoader);
-        } catch (ClassNotFoundException e) {
-            throw new ConstructionException("Type class could not be found: " + type);
-        }
+        ConstructionPlan plan = this.plan;
 
-        // verify that is is a class we can construct
-        if (!Modifier.isPublic(typeClass.getModifiers())) {
-            throw new ConstructionException("Class is not public: " + ClassLoading.getClassName(typeClass, true));
-        }
-        if (Modifier.isInterface(typeClass.getModifiers())) {
-            throw new ConstructionException("Class is an interface: " + ClassLoading.getClassName(typeClass, true));
-        }
-        if (Modifier.isAbstract(typeClass.getModifiers())) {
-            throw new ConstructionException("Class is abstract: " + ClassLoading.getClassName(typeClass, true));
+        // load the type class, unless we already have a plan for this class loader
+        Class typeClass;
+        if (plan != null && plan.isFor(classLoader)) {
+            typeClass = plan.typeClass;
+        } else {
+            plan = null;
+            typeClass = loadTypeClass(classLoader);
         }
 
         // get object values for all recipe properties
         Map propertyValues = new LinkedHashMap(properties);
-        for (Iterator iterator = propertyValues.entrySet().iterator(); iterator.hasNext();) {
-            Map.Entry entry = (Map.Entry) iterator.next();
-            Object value = entry.getValue();
-            if (value instanceof Recipe) {
-                Recipe recipe = ((Recipe) value);
-                value = recipe.create(classLoader);
-                entry.setValue(value);
+        if (executor != null) {
+            createConcurrently(propertyValues, classLoader);
+        } else {
+            for (Iterator iterator = propertyValues.entrySet().iterator(); iterator.hasNext();) {
+                Map.Entry entry = (Map.Entry) iterator.next();
+                Object value = entry.getValue();
+                if (value instanceof Recipe) {
+                    Recipe recipe = ((Recipe) value);
+                    value = RecipeHelper.create(recipe, classLoader);
+                    entry.setValue(value);
+                }
             }
         }
 
+        // the setters in a plan were selected for specific value types, so if
+        // a nested recipe now produces a different type we need a new plan
+        if (plan == null || !plan.isValidFor(propertyValues)) {
+            plan = new ConstructionPlan(classLoader, typeClass, propertyValues);
+            this.plan = plan;
+        }
+
         // create the instance
-        Object instance = createInstance(typeClass, propertyValues);
+        Object instance = plan.createInstance(propertyValues);
 
         // set remaining properties
-        for (Iterator iterator = propertyValues.entrySet().iterator(); iterator.hasNext();) {
-            Map.Entry entry = (Map.Entry) iterator.next();
-            String propertyName = (String) entry.getKey();
-            Object propertyValue = entry.getValue();
-            Method setter = findSetter(typeClass, propertyName, propertyValue);
+        for (int i = 0; i < plan.setters.length; i++) {
+            Accessor setter = plan.setters[i];
+            Object propertyValue = propertyValues.get(plan.setterNames[i]);
             try {
-                propertyValue = convert(setter.getParameterTypes()[0], propertyValue);
+                propertyValue = convert(plan.setterTypes[i], plan.setterConverters[i], propertyValue);
                 setter.invoke(instance, new Object[]{propertyValue});
             } catch (Exception e) {
                 throw new ConstructionException("Error setting property: " + setter);
@@ -181,7 +220,46 @@ public class ObjectRecipe implements Recipe {
         return instance;
     }
 
-    private Object[] extractConstructorArgs(Map propertyValues, Class[] constructorArgTypes) {
+    private void createConcurrently(Map propertyValues, ClassLoader classLoader) {
+        Object[] values = propertyValues.values().toArray();
+        Throwable[] errors = ConcurrentCreation.createAll(values, classLoader, executor);
+        if (errors != null) {
+            for (int i = 0; i < errors.length; i++) {
+                if (errors[i] != null) {
+                    throw ConcurrentCreation.toRuntimeException(errors[i]);
+                }
+            }
+        }
+
+        int i = 0;
+        for (Iterator iterator = propertyValues.entrySet().iterator(); iterator.hasNext(); i++) {
+            Map.Entry entry = (Map.Entry) iterator.next();
+            entry.setValue(values[i]);
+        }
+    }
+
+    private Class loadTypeClass(ClassLoader classLoader) {
+        Class typeClass = null;
+        try {
+            typeClass = ClassLoading.loadClass(type, classLoader);
+        } catch (ClassNotFoundException e) {
+            throw new ConstructionException("Type class could not be found: " + type);
+        }
+
+        // verify that is is a class we can construct
+        if (!Modifier.isPublic(typeClass.getModifiers())) {
+            throw new ConstructionException("Class is not public: " + ClassLoading.getClassName(typeClass, true));
+        }
+        if (Modifier.isInterface(typeClass.getModifiers())) {
+            throw new ConstructionException("Class is an interface: " + ClassLoading.getClassName(typeClass, true));
+        }
+        if (Modifier.isAbstract(typeClass.getModifiers())) {
+            throw new ConstructionException("Class is abstract: " + ClassLoading.getClassName(typeClass, true));
+        }
+        return typeClass;
+    }
+
+    private Object[] extractConstructorArgs(Map propertyValues, Class[] constructorArgTypes, Converter[] converters) {
         Object[] parameters = new Object[constructorArgNames.length];
         for (int i = 0; i < constructorArgNames.length; i++) {
             String name = constructorArgNames[i];
@@ -190,14 +268,14 @@ public class ObjectRecipe implements Recipe {
             Object value;
             if (propertyValues.containsKey(name)) {
                 value = propertyValues.remove(name);
-                if (!isInstance(type, value) && !isConvertable(type, value)) {
+                if (!isInstance(type, value) && !(value instanceof String && converters[i] != null) && !isConvertable(type, value)) {
                     throw new ConstructionException("Invalid and non-convertable constructor parameter type: " +
                             "name=" + name + ", " +
                             "index=" + i + ", " +
                             "expected=" + ClassLoading.getClassName(type, true) + ", " +
                             "actual=" + ClassLoading.getClassName(value, true));
                 }
-                value = convert(type, value);
+                value = convert(type, converters[i], value);
             } else {
                 value = getDefaultValue(type);
             }
@@ -208,75 +286,165 @@ public class ObjectRecipe implements Recipe {
         return parameters;
     }
 
-    private static Object convert(Class type, Object value) {
+    private static Object convert(Class type, Converter converter, Object value) {
         if (value instanceof String && (type != Object.class)) {
             String stringValue = (String) value;
-            value = PropertyEditors.getValue(type, stringValue);
+            if (converter != null) {
+                value = converter.toObject(stringValue);
+            } else {
+                value = PropertyEditors.getValue(type, stringValue);
+            }
         }
         return value;
     }
 
+    private static Converter[] findConverters(Class[] types) {
+        Converter[] converters = new Converter[types.length];
+        for (int i = 0; i < types.length; i++) {
+            if (types[i] != Object.class) {
+                converters[i] = PropertyEditors.findConverter(types[i]);
+            }
+        }
+        return converters;
+    }
+
     private static Object getDefaultValue(Class type) {
         if (type.equals(Boolean.TYPE)) {
             return Boolean.FALSE;
         } else if (type.equals(Character.TYPE)) {
-            return new Character((char) 0);
+            return DEFAULT_CHARACTER;
         } else if (type.equals(Byte.TYPE)) {
-            return new Byte((byte) 0);
+            return DEFAULT_BYTE;
         } else if (type.equals(Short.TYPE)) {
-            return new Short((short) 0);
+            return DEFAULT_SHORT;
         } else if (type.equals(Integer.TYPE)) {
-            return new Integer(0);
+            return DEFAULT_INTEGER;
         } else if (type.equals(Long.TYPE)) {
-            return new Long(0);
+            return DEFAULT_LONG;
         } else if (type.equals(Float.TYPE)) {
-            return new Float(0);
+            return DEFAULT_FLOAT;
         } else if (type.equals(Double.TYPE)) {
-            return new Double(0);
+            return DEFAULT_DOUBLE;
         }
         return null;
     }
 
-    private Object createInstance(Class typeClass, Map propertyValues) {
-        if (factoryMethod != null) {
-            Method method = selectFactory(typeClass);
-            // get the constructor parameters
-            Object[] parameters = extractConstructorArgs(propertyValues, method.getParameterTypes());
+    /**
+     * The resolved construction of this recipe for one class loader and one set of property value types: the
+     * constructor or factory method, the setter for each remaining property and the converter for each value.
+     * A plan is immutable once built, so it is shared freely between threads creating the same recipe.
+     */
+    private final class ConstructionPlan {
+        private final WeakReference classLoader;
+        private final Class typeClass;
+        private final Accessor factory;
+        private final Accessor constructor;
+        private final Class[] parameterTypes;
+        private final Converter[] parameterConverters;
+        private final String[] setterNames;
+        private final Accessor[] setters;
+        private final Class[] setterTypes;
+        private final Converter[] setterConverters;
+        private final Class[] valueTypes;
+        private final int propertyCount;
+
+        private ConstructionPlan(ClassLoader classLoader, Class typeClass, Map propertyValues) {
+            this.classLoader = new WeakReference(classLoader);
+            this.typeClass = typeClass;
+            this.propertyCount = propertyValues.size();
+
+            if (factoryMethod != null) {
+                factory = Accessor.newAccessor(selectFactory(typeClass));
+                constructor = null;
+                parameterTypes = factory.getParameterTypes();
+            } else {
+                factory = null;
+                constructor = Accessor.newAccessor(selectConstructor(typeClass));
+                parameterTypes = constructor.getParameterTypes();
+            }
+            parameterConverters = findConverters(parameterTypes);
 
-            try {
-                Object object = method.invoke(null, parameters);
-                return object;
-            } catch (Exception e) {
-                Throwable t = e;
-                if (e instanceof InvocationTargetException) {
-                    InvocationTargetException invocationTargetException = (InvocationTargetException) e;
-                    if (invocationTargetException.getCause() != null) {
-                        t = invocationTargetException.getCause();
-                    }
+            // everything not consumed by the constructor is set using a setter
+            Map setterValues = new LinkedHashMap(propertyValues);
+            for (int i = 0; i < constructorArgNames.length; i++) {
+                setterValues.remove(constructorArgNames[i]);
+            }
+
+            int size = setterValues.size();
+            setterNames = new String[size];
+            setters = new Accessor[size];
+            setterTypes = new Class[size];
+            valueTypes = new Class[size];
+            int i = 0;
+            for (Iterator iterator = setterValues.entrySet().iterator(); iterator.hasNext(); i++) {
+                Map.Entry entry = (Map.Entry) iterator.next();
+                String propertyName = (String) entry.getKey();
+                Object propertyValue = entry.getValue();
+                setterNames[i] = propertyName;
+                setters[i] = Accessor.newAccessor(findSetter(typeClass, propertyName, propertyValue));
+                setterTypes[i] = setters[i].getParameterTypes()[0];
+                valueTypes[i] = getValueType(propertyValue);
+            }
+            setterConverters = findConverters(setterTypes);
+        }
+
+        private boolean isFor(ClassLoader classLoader) {
+            return this.classLoader.get() == classLoader;
+        }
+
+        private boolean isValidFor(Map propertyValues) {
+            if (propertyValues.size() != propertyCount) {
+                return false;
+            }
+            for (int i = 0; i < setterNames.length; i++) {
+                if (!propertyValues.containsKey(setterNames[i]) ||
+                        valueTypes[i] != getValueType(propertyValues.get(setterNames[i]))) {
+                    return false;
                 }
-                throw new ConstructionException("Error invoking factory method: " + method, t);
             }
-        } else {
-            Constructor constructor = selectConstructor(typeClass);
-            // get the constructor parameters
-            Object[] parameters = extractConstructorArgs(propertyValues, constructor.getParameterTypes());
+            return true;
+        }
 
-            try {
-                Object object = constructor.newInstance(parameters);
-                return object;
-            } catch (Exception e) {
-                Throwable t = e;
-                if (e instanceof InvocationTargetException) {
-                    InvocationTargetException invocationTargetException = (InvocationTargetException) e;
-                    if (invocationTargetException.getCause() != null) {
-                        t = invocationTargetException.getCause();
-                    }
+        private Object createInstance(Map propertyValues) {
+            // get the constructor parameters
+            Object[] parameters = extractConstructorArgs(propertyValues, parameterTypes, parameterConverters);
+
+            if (factory != null) {
+                try {
+                    Object object = factory.invoke(null, parameters);
+                    return object;
+                } catch (Exception e) {
+                    throw new ConstructionException("Error invoking factory method: " + factory, unwrap(e));
+                }
+            } else {
+                try {
+                    Object object = constructor.invoke(null, parameters);
+                    return object;
+                } catch (Exception e) {
+                    throw new ConstructionException("Error invoking constructor: " + constructor, unwrap(e));
                 }
-                throw new ConstructionException("Error invoking constructor: " + constructor, t);
             }
         }
     }
 
+    private static Class getValueType(Object value) {
+        if (value == null) {
+            return null;
+        }
+        return value.getClass();
+    }
+
+    private static Throwable unwrap(Exception e) {
+        Throwable t = e;
+        if (e instanceof InvocationTargetException) {
+            InvocationTargetException invocationTargetException = (InvocationTargetException) e;
+            if (invocationTargetException.getCause() != null) {
+                t = invocationTargetException.getCause();
+            }
+        }
+        return t;
+    }
+
     private Method selectFactory(Class typeClass) {
         if (constructorArgNames.length > 0 && constructorArgTypes.length == 0) {
             ArrayList matches = new ArrayList();
@@ -445,81 +613,77 @@ public class ObjectRecipe implements Recipe {
         int matchLevel = 0;
         ConstructionException missException = null;
 
-        List methods = new ArrayList(Arrays.asList(typeClass.getMethods()));
-        methods.addAll(Arrays.asList(typeClass.getDeclaredMethods()));
-        for (Iterator iterator = methods.iterator(); iterator.hasNext();) {
-            Method method = (Method) iterator.next();
-            if (method.getName().equals(setterName)) {
-                if (method.getParameterTypes().length == 0) {
-                    if (matchLevel < 1) {
-                        matchLevel = 1;
-                        missException = new ConstructionException("Setter takes no parameters: " + method);
-                    }
-                    continue;
+        Method[] methods = SetterIndex.getSetterIndex(typeClass).getSetters(setterName);
+        for (int i = 0; i < methods.length; i++) {
+            Method method = methods[i];
+            if (method.getParameterTypes().length == 0) {
+                if (matchLevel < 1) {
+                    matchLevel = 1;
+                    missException = new ConstructionException("Setter takes no parameters: " + method);
                 }
+                continue;
+            }
 
-                if (method.getParameterTypes().length > 1) {
-                    if (matchLevel < 1) {
-                        matchLevel = 1;
-                        missException = new ConstructionException("Setter takes more then one parameter: " + method);
-                    }
-                    continue;
+            if (method.getParameterTypes().length > 1) {
+                if (matchLevel < 1) {
+                    matchLevel = 1;
+                    missException = new ConstructionException("Setter takes more then one parameter: " + method);
                 }
+                continue;
+            }
 
-                if (method.getReturnType() != Void.TYPE) {
-                    if (matchLevel < 2) {
-                        matchLevel = 2;
-                        missException = new ConstructionException("Setter returns a value: " + method);
-                    }
-                    continue;
+            if (method.getReturnType() != Void.TYPE) {
+                if (matchLevel < 2) {
+                    matchLevel = 2;
+                    missException = new ConstructionException("Setter returns a value: " + method);
                 }
+                continue;
+            }
 
-                if (Modifier.isAbstract(method.getModifiers())) {
-                    if (matchLevel < 3) {
-                        matchLevel = 3;
-                        missException = new ConstructionException("Setter is abstract: " + method);
-                    }
-                    continue;
+            if (Modifier.isAbstract(method.getModifiers())) {
+                if (matchLevel < 3) {
+                    matchLevel = 3;
+                    missException = new ConstructionException("Setter is abstract: " + method);
                 }
+                continue;
+            }
 
-                if (!Modifier.isPublic(method.getModifiers())) {
-                    if (matchLevel < 4) {
-                        matchLevel = 4;
-                        missException = new ConstructionException("Setter is not public: " + method);
-                    }
-                    continue;
+            if (!Modifier.isPublic(method.getModifiers())) {
+                if (matchLevel < 4) {
+                    matchLevel = 4;
+                    missException = new ConstructionException("Setter is not public: " + method);
                 }
+                continue;
+            }
 
-                if (Modifier.isStatic(method.getModifiers())) {
-                    if (matchLevel < 4) {
-                        matchLevel = 4;
-                        missException = new ConstructionException("Setter is static: " + method);
-                    }
-                    continue;
+            if (Modifier.isStatic(method.getModifiers())) {
+                if (matchLevel < 4) {
+                    matchLevel = 4;
+                    missException = new ConstructionException("Setter is static: " + method);
                 }
+                continue;
+            }
 
-                Class methodParameterType = method.getParameterTypes()[0];
-                if (methodParameterType.isPrimitive() && propertyValue == null) {
-                    if (matchLevel < 6) {
-                        matchLevel = 6;
-                        missException = new ConstructionException("Null can not be assigned to " +
-                                ClassLoading.getClassName(methodParameterType, true) + ": " + method);
-                    }
-                    continue;
+            Class methodParameterType = method.getParameterTypes()[0];
+            if (methodParameterType.isPrimitive() && propertyValue == null) {
+                if (matchLevel < 6) {
+                    matchLevel = 6;
+                    missException = new ConstructionException("Null can not be assigned to " +
+                            ClassLoading.getClassName(methodParameterType, true) + ": " + method);
                 }
+                continue;
+            }
 
 
-                if (!isInstance(methodParameterType, propertyValue) && !isConvertable(methodParameterType, propertyValue)) {
-                    if (matchLevel < 5) {
-                        matchLevel = 5;
-                        missException = new ConstructionException(ClassLoading.getClassName(propertyValue, true) + " can not be assigned or converted to " +
-                                ClassLoading.getClassName(methodParameterType, true) + ": " + method);
-                    }
-                    continue;
+            if (!isInstance(methodParameterType, propertyValue) && !isConvertable(methodParameterType, propertyValue)) {
+                if (matchLevel < 5) {
+                    matchLevel = 5;
+                    missException = new ConstructionException(ClassLoading.getClassName(propertyValue, true) + " can not be assigned or converted to " +
+                            ClassLoading.getClassName(methodParameterType, true) + ": " + method);
                 }
-                return method;
+                continue;
             }
-
+            return method;
         }
 
         if (missException != null) {
@@ -0,0 +1,33 @@
+/**
+ *
+ * Copyright 2005-2006 The Apache Software Foundation or its licensors, as applicable.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.recipe;
+
+/**
+ * Runs the creation of independent nested recipes.  This has the same contract as the execute method of a
+ * java.util.concurrent Executor, so any thread pool can be adapted with a one line implementation.  The executor
+ * may also refuse a task by throwing a RuntimeException, in which case the task is run by the creating thread.
+ *
+ * @version $Rev$ $Date$
+ */
+public interface RecipeExecutor {
+    /**
+     * Runs the supplied task at some time in the future.
+     *
+     * @param task the task to run
+     */
+    void execute(Runnable task);
+}
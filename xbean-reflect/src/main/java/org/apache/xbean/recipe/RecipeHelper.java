@@ -18,6 +18,8 @@ package org.apache.xbean.recipe;
 
 import java.lang.reflect.Modifier;
 import java.lang.reflect.Constructor;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * @version $Rev: 6687 $ $Date: 2005-12-28T21:08:56.733437Z $
@@ -41,6 +43,55 @@ public final class RecipeHelper {
         return false;
     }
 
+    /**
+     * Gets an accessor for the public default constructor of the type.
+     *
+     * @param type the type to construct
+     * @return the default constructor accessor, or null if the type does not have a public default constructor
+     */
+    static Accessor getDefaultConstructor(Class type) {
+        if (!Modifier.isPublic(type.getModifiers())) {
+            return null;
+        }
+        try {
+            Constructor constructor = type.getConstructor(new Class[0]);
+            if (!Modifier.isPublic(constructor.getModifiers())) {
+                return null;
+            }
+            return Accessor.newAccessor(constructor);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Creates a nested recipe.  If an ExecutionContext is bound to the current thread for the same class loader, the
+     * recipe is created through the context, so a recipe reached from several places is only created once.
+     *
+     * @param recipe the nested recipe to create
+     * @param classLoader the class loader to create the recipe in
+     * @return the created object
+     * @throws ConstructionException if the recipe could not be created
+     */
+    public static Object create(Recipe recipe, ClassLoader classLoader) throws ConstructionException {
+        ExecutionContext context = ExecutionContext.getContext();
+        if (context != null && context.getClassLoader() == classLoader) {
+            return context.createRecipe(recipe);
+        }
+        return recipe.create(classLoader);
+    }
+
+    static List getNestedRecipes(Recipe recipe) {
+        if (recipe instanceof ObjectRecipe) {
+            return ((ObjectRecipe) recipe).getNestedRecipes();
+        } else if (recipe instanceof CollectionRecipe) {
+            return ((CollectionRecipe) recipe).getNestedRecipes();
+        } else if (recipe instanceof MapRecipe) {
+            return ((MapRecipe) recipe).getNestedRecipes();
+        }
+        return Collections.EMPTY_LIST;
+    }
+
     public static boolean isSimpleType(Object o) {
         return  o == null ||
                 o instanceof Boolean ||
@@ -0,0 +1,108 @@
+/**
+ *
+ * Copyright 2005-2006 The Apache Software Foundation or its licensors, as applicable.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.recipe;
+
+import java.lang.ref.SoftReference;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * An index of the candidate setter methods of a class, keyed by setter name.  The index is built once per class
+ * from getMethods() followed by getDeclaredMethods(), which is the same order findSetter used to scan the methods,
+ * so the setter selection rules see the candidates exactly as before.  The index does not filter candidates; the
+ * rules for rejecting private, static, abstract or otherwise invalid setters are still applied by the caller.
+ * <p/>
+ * Indexes are cached with weak class keys and soft values.  The methods in an index strongly reference their class,
+ * so while an index is softly reachable its class, and the class loader that defined it, stay alive; an unused class
+ * loader is only collected once the garbage collector clears the soft reference, which it does at the latest before
+ * running out of memory.  The cache can therefore delay, but not prevent, the collection of a class loader.
+ *
+ * @version $Rev$ $Date$
+ */
+final class SetterIndex {
+    private static final Method[] NO_METHODS = new Method[0];
+    private static final Map indexes = new WeakHashMap();
+
+    public static SetterIndex getSetterIndex(Class type) {
+        synchronized (indexes) {
+            SoftReference reference = (SoftReference) indexes.get(type);
+            if (reference != null) {
+                SetterIndex index = (SetterIndex) reference.get();
+                if (index != null) {
+                    return index;
+                }
+            }
+        }
+
+        // build outside of the lock; if two threads race the result is the same
+        SetterIndex index = new SetterIndex(type);
+        synchronized (indexes) {
+            indexes.put(type, new SoftReference(index));
+        }
+        return index;
+    }
+
+    private final Map setters;
+
+    private SetterIndex(Class type) {
+        Map candidates = new HashMap();
+        addSetters(candidates, type.getMethods());
+        addSetters(candidates, type.getDeclaredMethods());
+
+        setters = new HashMap(candidates.size());
+        for (Iterator iterator = candidates.entrySet().iterator(); iterator.hasNext();) {
+            Map.Entry entry = (Map.Entry) iterator.next();
+            List methods = (List) entry.getValue();
+            setters.put(entry.getKey(), methods.toArray(new Method[methods.size()]));
+        }
+    }
+
+    private static void addSetters(Map candidates, Method[] methods) {
+        for (int i = 0; i < methods.length; i++) {
+            Method method = methods[i];
+            String name = method.getName();
+            if (name.startsWith("set")) {
+                List list = (List) candidates.get(name);
+                if (list == null) {
+                    list = new ArrayList();
+                    candidates.put(name, list);
+                }
+                list.add(method);
+            }
+        }
+    }
+
+    /**
+     * Gets all methods with the specified name, in the order getMethods() and then getDeclaredMethods() returned
+     * them.  The returned array is shared and must not be modified.
+     *
+     * @param setterName the name of the setter method
+     * @return the candidate methods; never null
+     */
+    public Method[] getSetters(String setterName) {
+        Method[] methods = (Method[]) setters.get(setterName);
+        if (methods == null) {
+            return NO_METHODS;
+        }
+        return methods;
+    }
+}
@@ -0,0 +1,130 @@
+/**
+ *
+ * Copyright 2005-2006 The Apache Software Foundation or its licensors, as applicable.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class ClassLoadingTest extends TestCase {
+    private final CountingClassLoader classLoader = new CountingClassLoader();
+
+    public void testPrimitives() throws Exception {
+        assertSame(int.class, ClassLoading.loadClass("int", classLoader));
+        assertSame(boolean.class, ClassLoading.loadClass("boolean", classLoader));
+        assertSame(long.class, ClassLoading.loadClass("J", classLoader));
+        assertSame(void.class, ClassLoading.loadClass("void", classLoader));
+
+        // reserved words never reach the class loader
+        assertEquals(0, classLoader.count("int"));
+        assertEquals(0, classLoader.count("boolean"));
+    }
+
+    public void testClassNames() throws Exception {
+        assertSame(String.class, ClassLoading.loadClass("java.lang.String", classLoader));
+        assertSame(String.class, ClassLoading.loadClass("Ljava.lang.String;", classLoader));
+        assertSame(String[].class, ClassLoading.loadClass("[Ljava.lang.String;", classLoader));
+        assertSame(String[][].class, ClassLoading.loadClass("java.lang.String[][]", classLoader));
+        assertSame(int[].class, ClassLoading.loadClass("[I", classLoader));
+        assertSame(int[][].class, ClassLoading.loadClass("int[][]", classLoader));
+
+        // array names are decoded without asking the class loader
+        assertEquals(0, classLoader.count("[I"));
+        assertEquals(0, classLoader.count("int[][]"));
+    }
+
+    public void testResultsAreCached() throws Exception {
+        ClassLoading.loadClass("java.lang.String", classLoader);
+        ClassLoading.loadClass("java.lang.String", classLoader);
+        assertEquals(1, classLoader.count("java.lang.String"));
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                ClassLoading.loadClass("org.apache.xbean.DoesNotExist", classLoader);
+                fail("expected ClassNotFoundException");
+            } catch (ClassNotFoundException expected) {
+            }
+        }
+        assertEquals(1, classLoader.count("org.apache.xbean.DoesNotExist"));
+
+        ClassLoading.clearCache(classLoader);
+        ClassLoading.loadClass("java.lang.String", classLoader);
+        assertEquals(2, classLoader.count("java.lang.String"));
+    }
+
+    public void testMissesAreBounded() throws Exception {
+        String missing = "org.apache.xbean.DoesNotExist";
+        loadMissing(missing);
+        loadMissing(missing);
+        assertEquals(1, classLoader.count(missing));
+
+        // enough other misses in the same stripe to push the first one out
+        int misses = 0;
+        for (int i = 0; misses < ClassLoading.MAX_MISSES; i++) {
+            String className = "org.apache.xbean.DoesNotExist" + i;
+            if (ClassLoading.getStripe(className, classLoader) == ClassLoading.getStripe(missing, classLoader)) {
+                loadMissing(className);
+                misses++;
+            }
+        }
+        loadMissing(missing);
+        assertEquals(2, classLoader.count(missing));
+    }
+
+    private void loadMissing(String className) {
+        try {
+            ClassLoading.loadClass(className, classLoader);
+            fail("expected ClassNotFoundException");
+        } catch (ClassNotFoundException expected) {
+        }
+    }
+
+    public void testNullArguments() throws Exception {
+        try {
+            ClassLoading.loadClass(null, classLoader);
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            ClassLoading.loadClass("java.lang.String", null);
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    private static class CountingClassLoader extends ClassLoader {
+        private final Map counts = new HashMap();
+
+        private CountingClassLoader() {
+            super(ClassLoadingTest.class.getClassLoader());
+        }
+
+        protected synchronized Class loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            counts.put(name, new Integer(count(name) + 1));
+            return super.loadClass(name, resolve);
+        }
+
+        private synchronized int count(String name) {
+            Integer count = (Integer) counts.get(name);
+            return count == null ? 0 : count.intValue();
+        }
+    }
+}
@@ -0,0 +1,196 @@
+/**
+ *
+ * Copyright 2005-2006 The Apache Software Foundation or its licensors, as applicable.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.propertyeditor;
+
+import java.beans.PropertyEditorManager;
+import java.beans.PropertyEditorSupport;
+import java.text.ParseException;
+import java.util.Calendar;
+import java.util.TimeZone;
+
+import junit.framework.TestCase;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class PropertyEditorsTest extends TestCase {
+    public void testCanonicalValues() throws Exception {
+        assertSame(PropertyEditors.getValue(Integer.class, "42"), PropertyEditors.getValue(int.class, " 42 "));
+        assertSame(PropertyEditors.getValue(Long.class, "-7"), PropertyEditors.getValue(long.class, "-7"));
+        assertSame(PropertyEditors.getValue(Short.class, "0"), PropertyEditors.getValue(short.class, "0"));
+        assertSame(PropertyEditors.getValue(Byte.class, "-128"), PropertyEditors.getValue(byte.class, "-128"));
+        assertSame(PropertyEditors.getValue(Character.class, "x"), PropertyEditors.getValue(char.class, "x"));
+        assertSame(Boolean.TRUE, PropertyEditors.getValue(boolean.class, "true"));
+
+        assertEquals(new Integer(100000), PropertyEditors.getValue(Integer.class, "100000"));
+        assertEquals(new Long(-100000), PropertyEditors.getValue(Long.class, "-100000"));
+        assertEquals(new Character('\u00e9'), PropertyEditors.getValue(Character.class, "\u00e9"));
+    }
+
+    public void testDateEditor() throws Exception {
+        DateEditor editor = new DateEditor();
+
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(2006, Calendar.JANUARY, 2);
+        assertEquals(calendar.getTime(), editor.toObject("2006-01-02"));
+        assertEquals(calendar.getTime(), editor.toObject(editor.toString(calendar.getTime())));
+
+        calendar.set(2006, Calendar.JANUARY, 2, 10, 30, 15);
+        assertEquals(calendar.getTime(), editor.toObject("2006-01-02T10:30:15"));
+
+        calendar.setTimeZone(TimeZone.getTimeZone("GMT"));
+        calendar.set(2006, Calendar.JANUARY, 2, 10, 30, 15);
+        assertEquals(calendar.getTime(), editor.toObject("2006-01-02T10:30:15Z"));
+        calendar.set(Calendar.MILLISECOND, 250);
+        assertEquals(calendar.getTime(), editor.toObject("2006-01-02T12:30:15.250+02:00"));
+
+        try {
+            editor.toObject("not a date");
+            fail("expected PropertyEditorException");
+        } catch (PropertyEditorException expected) {
+            assertTrue(expected.getCause() instanceof ParseException);
+        }
+
+        // fields out of range are not rolled over
+        try {
+            editor.toObject("2006-13-45");
+            fail("expected PropertyEditorException");
+        } catch (PropertyEditorException expected) {
+            assertTrue(expected.getCause() instanceof ParseException);
+        }
+
+        // a configured editor uses only its own patterns
+        editor = new DateEditor(new String[]{"dd/MM/yyyy", "yyyy"});
+        calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(2006, Calendar.FEBRUARY, 1);
+        assertEquals(calendar.getTime(), editor.toObject("01/02/2006"));
+        assertEquals("01/02/2006", editor.toString(calendar.getTime()));
+        calendar.set(Calendar.MONTH, Calendar.JANUARY);
+        assertEquals(calendar.getTime(), editor.toObject("2006"));
+        try {
+            editor.toObject("31/02/2006");
+            fail("expected PropertyEditorException");
+        } catch (PropertyEditorException expected) {
+        }
+    }
+
+    public void testDateEditorRejectsTrailingText() throws Exception {
+        DateEditor editor = new DateEditor();
+        String[] texts = {"2006-01-02 10:30", "2006-01-02garbage", "2006-01-02T10:30:15 junk"};
+        for (int i = 0; i < texts.length; i++) {
+            try {
+                editor.toObject(texts[i]);
+                fail("expected PropertyEditorException for " + texts[i]);
+            } catch (PropertyEditorException expected) {
+            }
+        }
+
+        editor = new DateEditor(new String[]{"dd/MM/yyyy"});
+        try {
+            editor.toObject("01/02/2006 10:30");
+            fail("expected PropertyEditorException");
+        } catch (PropertyEditorException expected) {
+        }
+    }
+
+    public void testArrayConverterIsCached() throws Exception {
+        Converter converter = PropertyEditors.findConverter(Integer[].class);
+        assertTrue(converter instanceof ArrayConverter);
+        assertSame(converter, PropertyEditors.findConverter(Integer[].class));
+
+        Integer[] values = (Integer[]) PropertyEditors.getValue(Integer[].class, "1, 2, 3");
+        assertEquals(3, values.length);
+        assertEquals(new Integer(3), values[2]);
+    }
+
+    public void testMissIsInvalidatedByRegistration() throws Exception {
+        assertNull(PropertyEditors.findConverter(Widget.class));
+        assertNull(PropertyEditors.findConverter(Widget.class));
+        assertNull(PropertyEditors.findConverter(Widget[].class));
+
+        PropertyEditors.registerConverter(new WidgetConverter());
+        assertTrue(PropertyEditors.findConverter(Widget.class) instanceof WidgetConverter);
+        assertTrue(PropertyEditors.findConverter(Widget[].class) instanceof ArrayConverter);
+        assertEquals("blue", ((Widget) PropertyEditors.getValue(Widget.class, "blue")).color);
+    }
+
+    public void testPlainConverter() throws Exception {
+        // a converter does not need to extend AbstractConverter
+        PropertyEditors.registerConverter(new GadgetConverter());
+        assertTrue(PropertyEditorManager.findEditor(Gadget.class) instanceof GadgetConverter);
+        assertEquals("knob", ((Gadget) PropertyEditors.getValue(Gadget.class, "knob")).name);
+        assertEquals("dial", PropertyEditors.toString(new Gadget("dial")));
+
+        Gadget[] gadgets = (Gadget[]) PropertyEditors.getValue(Gadget[].class, "[knob, dial]");
+        assertEquals(2, gadgets.length);
+        assertEquals("dial", gadgets[1].name);
+    }
+
+    public void testPropertyEditorComponent() throws Exception {
+        // plain property editors are adapted for use in collection converters
+        ArrayConverter converter = new ArrayConverter(String[].class, new PropertyEditorSupport() {
+            public void setAsText(String text) {
+                setValue(text.toUpperCase());
+            }
+        });
+        String[] values = (String[]) converter.toObject("a,b");
+        assertEquals("A", values[0]);
+        assertEquals("B", values[1]);
+    }
+
+    public static class Gadget {
+        private final String name;
+
+        public Gadget(String name) {
+            this.name = name;
+        }
+    }
+
+    public static class Widget {
+        private final String color;
+
+        public Widget(String color) {
+            this.color = color;
+        }
+    }
+
+    public static class GadgetConverter extends PropertyEditorSupport implements Converter {
+        public Class getType() {
+            return Gadget.class;
+        }
+
+        public String toString(Object value) {
+            return ((Gadget) value).name;
+        }
+
+        public Object toObject(String text) {
+            return new Gadget(text);
+        }
+    }
+
+    public static class WidgetConverter extends AbstractConverter {
+        public WidgetConverter() {
+            super(Widget.class);
+        }
+
+        protected Object toObjectImpl(String text) {
+            return new Widget(text);
+        }
+    }
+}
@@ -8,6 +8,8 @@ import org.apache.xbean.propertyeditor.PropertyEditors;
 
 import java.net.URL;
 import java.net.MalformedURLException;
+import java.util.List;
+import java.util.Map;
 
 public class ObjectRecipeTest extends TestCase {
 
@@ -51,6 +53,188 @@ public class ObjectRecipeTest extends TestCase {
         doTest(objectRecipe);
     }
 
+    public void testRepeatedCreate() throws Exception {
+
+        ObjectRecipe objectRecipe = new ObjectRecipe(Person.class);
+        doTest(objectRecipe);
+        doTest(objectRecipe);
+
+        // changing a property after the first create must be honored
+        objectRecipe.setProperty("age", "42");
+        Person actual = (Person) objectRecipe.create(Person.class.getClassLoader());
+        assertEquals("age", 42, actual.getAge());
+        assertEquals("name", "Joe", actual.getName());
+
+        // a nested recipe producing a different value type must select the setter again
+        objectRecipe.setProperty("homePage", new StaticRecipe(new URL("http://www.acme.org/joe")));
+        actual = (Person) objectRecipe.create(Person.class.getClassLoader());
+        assertEquals("homePage", new URL("http://www.acme.org/joe"), actual.getHomePage());
+        actual = (Person) objectRecipe.create(Person.class.getClassLoader());
+        assertEquals("homePage", new URL("http://www.acme.org/joe"), actual.getHomePage());
+    }
+
+    public void testFindSetter() throws Exception {
+        assertEquals("setName", ObjectRecipe.findSetter(Person.class, "name", "Joe").getName());
+        assertEquals("setAge", ObjectRecipe.findSetter(Person.class, "Age", "21").getName());
+
+        try {
+            ObjectRecipe.findSetter(Setters.class, "hidden", "value");
+            fail("private setter should be rejected");
+        } catch (ConstructionException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().indexOf("Setter is not public") > 0);
+        }
+
+        try {
+            ObjectRecipe.findSetter(Setters.class, "shared", "value");
+            fail("static setter should be rejected");
+        } catch (ConstructionException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().indexOf("Setter is static") > 0);
+        }
+
+        try {
+            ObjectRecipe.findSetter(Setters.class, "missing", "value");
+            fail("missing setter should be rejected");
+        } catch (ConstructionException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().indexOf("Unable to find a valid setter method") > 0);
+        }
+    }
+
+    public void testConcurrentNestedRecipes() throws Exception {
+        RecipeExecutor executor = new RecipeExecutor() {
+            public void execute(Runnable task) {
+                new Thread(task).start();
+            }
+        };
+
+        CollectionRecipe people = new CollectionRecipe();
+        people.setExecutor(executor);
+        for (int i = 0; i < 10; i++) {
+            ObjectRecipe person = new ObjectRecipe(Person.class);
+            person.setExecutor(executor);
+            person.setProperty("name", "Joe" + i);
+            person.setProperty("age", new ValueRecipe(Integer.class, Integer.toString(i)));
+            person.setProperty("homePage", new ValueRecipe(URL.class, "http://www.acme.org/" + i));
+            people.add(person);
+        }
+
+        MapRecipe byName = new MapRecipe();
+        byName.setExecutor(executor);
+        byName.put("people", people);
+
+        Map map = (Map) byName.create(Person.class.getClassLoader());
+        List list = (List) map.get("people");
+        assertEquals(10, list.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(new Person("Joe" + i, i, new URL("http://www.acme.org/" + i)), list.get(i));
+        }
+
+        // the failure of the first failing item is reported
+        people.add(new ObjectRecipe("org.apache.xbean.recipe.DoesNotExist"));
+        people.add(new ObjectRecipe("org.apache.xbean.recipe.DoesNotExistEither"));
+        try {
+            people.create(Person.class.getClassLoader());
+            fail("expected ConstructionException");
+        } catch (ConstructionException expected) {
+            assertTrue(expected.getAttributeName(), expected.getAttributeName().endsWith(" item 10]"));
+            assertTrue(expected.getMessage(), expected.getMessage().indexOf("DoesNotExist") > 0);
+            assertTrue(expected.getMessage(), expected.getMessage().indexOf("DoesNotExistEither") < 0);
+        }
+    }
+
+    public void testExecutionContext() throws Exception {
+        ObjectRecipe homePage = new ObjectRecipe(URL.class, new String[]{"spec"}, new Class[]{String.class});
+        homePage.setProperty("spec", "http://www.acme.org");
+
+        CollectionRecipe people = new CollectionRecipe();
+        for (int i = 0; i < 3; i++) {
+            ObjectRecipe person = new ObjectRecipe(Person.class);
+            person.setProperty("name", "Joe");
+            person.setProperty("age", "21");
+            person.setProperty("homePage", homePage);
+            people.add(person);
+        }
+
+        // without a context the shared recipe is created for every reference
+        List list = (List) people.create(Person.class.getClassLoader());
+        assertNotSame(((Person) list.get(0)).getHomePage(), ((Person) list.get(1)).getHomePage());
+
+        // with a context the shared recipe is created once
+        ExecutionContext context = new ExecutionContext(Person.class.getClassLoader());
+        list = (List) context.create(people);
+        assertEquals(3, list.size());
+        assertSame(((Person) list.get(0)).getHomePage(), ((Person) list.get(1)).getHomePage());
+        assertSame(((Person) list.get(0)).getHomePage(), ((Person) list.get(2)).getHomePage());
+        assertTrue(context.containsObject(homePage));
+        assertNull(ExecutionContext.getContext());
+
+        // a cycle is detected before anything is created
+        CollectionRecipe outer = new CollectionRecipe();
+        CollectionRecipe inner = new CollectionRecipe();
+        outer.add(inner);
+        inner.add(outer);
+        context = new ExecutionContext(Person.class.getClassLoader());
+        try {
+            context.create(outer);
+            fail("expected ConstructionException");
+        } catch (ConstructionException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().indexOf("Circular reference") > 0);
+            assertFalse(context.containsObject(outer));
+        }
+
+        // a failed shared recipe gives every referrer its own exception
+        ObjectRecipe missing = new ObjectRecipe("org.apache.xbean.recipe.DoesNotExist");
+        context = new ExecutionContext(Person.class.getClassLoader());
+        ConstructionException first = null;
+        try {
+            context.create(missing);
+            fail("expected ConstructionException");
+        } catch (ConstructionException expected) {
+            first = expected;
+        }
+        try {
+            context.create(missing);
+            fail("expected ConstructionException");
+        } catch (ConstructionException expected) {
+            assertNotSame(first, expected);
+            assertSame(first, expected.getCause());
+        }
+    }
+
+    public void testCycleAcrossThreads() throws Exception {
+        RecipeExecutor executor = new RecipeExecutor() {
+            public void execute(Runnable task) {
+                new Thread(task).start();
+            }
+        };
+
+        // the up front check can not see through this recipe, and its nested creation runs on another thread
+        final CollectionRecipe outer = new CollectionRecipe();
+        Recipe hidden = new Recipe() {
+            public Object create(ClassLoader classLoader) {
+                return RecipeHelper.create(outer, classLoader);
+            }
+        };
+        outer.setExecutor(executor);
+        outer.add(new ValueRecipe(Integer.class, "1"));
+        outer.add(hidden);
+
+        ExecutionContext context = new ExecutionContext(Person.class.getClassLoader());
+        try {
+            context.create(outer);
+            fail("expected ConstructionException");
+        } catch (ConstructionException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().indexOf("Circular reference") > 0);
+        }
+    }
+
+    public static class Setters {
+        private void setHidden(String value) {
+        }
+
+        public static void setShared(String value) {
+        }
+    }
+
     private void doTest(ObjectRecipe objectRecipe) throws Exception {
         Person expected = new Person("Joe", 21, new URL("http://www.acme.org"));
 
@@ -20,6 +20,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.reflect.Method;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLStreamHandlerFactory;
@@ -27,6 +28,7 @@ import java.security.CodeSource;
 import java.security.cert.Certificate;
 import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
@@ -40,11 +42,18 @@ import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.jar.Manifest;
 
+import org.apache.xbean.ClassLoading;
+
 /**
  * The JarFileClassLoader that loads classes and resources from a list of JarFiles.  This method is simmilar to URLClassLoader
  * except it properly closes JarFiles when the classloader is destroyed so that the file read lock will be released, and
  * the jar file can be modified and deleted.
  * <p>
+ * When a jar is added, the names of its entries are added to an index of the jars containing each entry, so classes
+ * and resources are found without searching every jar on the class path.  The jars and the index are replaced as a
+ * whole when urls are added, so classes and resources are found without locking, and on Java 7 and later classes with
+ * different names are defined concurrently.
+ * <p>
  * Note: This implementation currently does not work reliably on windows, since the jar URL handler included with the Sun JavaVM
  * holds a read lock on the JarFile, and this lock is not released when the jar url is dereferenced.  To fix this a
  * replacement for the jar url handler must be written.
@@ -55,9 +64,20 @@ import java.util.jar.Manifest;
  */
 public class JarFileClassLoader extends MultiParentClassLoader {
     private static final URL[] EMPTY_URLS = new URL[0];
+
+    static {
+        // ClassLoader.registerAsParallelCapable registers the calling class, so it must be invoked from this class
+        try {
+            Method method = ClassLoader.class.getDeclaredMethod("registerAsParallelCapable", new Class[0]);
+            method.invoke(null, new Object[0]);
+        } catch (Exception ignored) {
+            // older vm; class loading will be serialized on the class loader
+        }
+    }
+
     private final Object lock = new Object();
-    private final LinkedHashMap classPath = new LinkedHashMap();
-    private boolean destroyed = false;
+    private volatile ClassPath classPath = ClassPath.EMPTY;
+    private volatile boolean destroyed = false;
 
     /**
      * Creates a JarFileClassLoader that is a child of the system class loader.
@@ -119,7 +139,8 @@ public class JarFileClassLoader extends MultiParentClassLoader {
      * {@inheritDoc}
      */
     public URL[] getURLs() {
-        return (URL[]) classPath.keySet().toArray(new URL[classPath.keySet().size()]);
+        Map jarFiles = classPath.jarFiles;
+        return (URL[]) jarFiles.keySet().toArray(new URL[jarFiles.size()]);
     }
 
     /**
@@ -138,69 +159,131 @@ public class JarFileClassLoader extends MultiParentClassLoader {
     }
 
     /**
-     * Adds a list of urls to the end of this class loader.
+     * Adds a list of urls to the end of this class loader.  The class path index is copied once for each call, so
+     * urls should be added in as few calls as possible.
      * @param urls the URLs to add
      */
     protected void addURLs(List urls) {
-        LinkedList locationStack = new LinkedList(urls);
-        try {
-            while (!locationStack.isEmpty()) {
-                URL url = (URL) locationStack.removeFirst();
-
-                if (!"file".equals(url.getProtocol())) {
-                    // download the jar
-                    throw new Error("Only local file jars are supported " + url);
+        synchronized (lock) {
+            LinkedHashMap jarFiles = new LinkedHashMap(classPath.jarFiles);
+            Map entryIndex = new HashMap(classPath.entryIndex);
+            try {
+                try {
+                    addURLs(urls, jarFiles, entryIndex);
+                } finally {
+                    // publish the jars opened so far, so they are closed by destroy
+                    classPath = new ClassPath(jarFiles, entryIndex);
+                    // classes ClassLoading found missing may be in the new jars
+                    ClassLoading.clearCache(this);
                 }
+            } catch (Error e) {
+                destroy();
+                throw e;
+            }
+        }
+    }
 
-                String path = url.getPath();
-                if (classPath.containsKey(path)) {
-                    continue;
-                }
+    private void addURLs(List urls, LinkedHashMap jarFiles, Map entryIndex) {
+        LinkedList locationStack = new LinkedList(urls);
+        while (!locationStack.isEmpty()) {
+            URL url = (URL) locationStack.removeFirst();
 
-                File file = new File(path);
-                if (!file.canRead()) {
-                    // can't read file...
-                    continue;
-                }
+            if (!"file".equals(url.getProtocol())) {
+                // download the jar
+                throw new Error("Only local file jars are supported " + url);
+            }
 
-                // open the jar file
-                JarFile jarFile;
-                try {
-                    jarFile = new JarFile(file);
-                } catch (IOException e) {
-                    // can't seem to open the file
-                    continue;
-                }
-                classPath.put(url, jarFile);
+            String path = url.getPath();
+            if (jarFiles.containsKey(url)) {
+                continue;
+            }
+
+            File file = new File(path);
+            if (!file.canRead()) {
+                // can't read file...
+                continue;
+            }
 
-                // push the manifest classpath on the stack (make sure to maintain the order)
-                Manifest manifest = null;
+            // open the jar file
+            JarFile jarFile;
+            try {
+                jarFile = new JarFile(file);
+            } catch (IOException e) {
+                // can't seem to open the file
+                continue;
+            }
+            if (destroyed) {
                 try {
-                    manifest = jarFile.getManifest();
+                    jarFile.close();
                 } catch (IOException ignored) {
                 }
+                continue;
+            }
+            jarFiles.put(url, jarFile);
+            indexJarFile(url, jarFile, entryIndex);
 
-                if (manifest != null) {
-                    Attributes mainAttributes = manifest.getMainAttributes();
-                    String manifestClassPath = mainAttributes.getValue(Attributes.Name.CLASS_PATH);
-                    if (manifestClassPath != null) {
-                        LinkedList classPathUrls = new LinkedList();
-                        for (StringTokenizer tokenizer = new StringTokenizer(manifestClassPath, " "); tokenizer.hasMoreTokens();) {
-                            String entry = tokenizer.nextToken();
-                            File parentDir = file.getParentFile();
-                            File entryFile = new File(parentDir, entry);
-                            // manifest entries are optional... if they aren't there it is ok
-                            if (entryFile.canRead()) {
-                                classPathUrls.addLast(entryFile.getAbsolutePath());
+            // push the manifest classpath on the stack (make sure to maintain the order)
+            Manifest manifest = null;
+            try {
+                manifest = jarFile.getManifest();
+            } catch (IOException ignored) {
+            }
+
+            if (manifest != null) {
+                Attributes mainAttributes = manifest.getMainAttributes();
+                String manifestClassPath = mainAttributes.getValue(Attributes.Name.CLASS_PATH);
+                if (manifestClassPath != null) {
+                    LinkedList classPathUrls = new LinkedList();
+                    for (StringTokenizer tokenizer = new StringTokenizer(manifestClassPath, " "); tokenizer.hasMoreTokens();) {
+                        String entry = tokenizer.nextToken();
+                        File parentDir = file.getParentFile();
+                        File entryFile = new File(parentDir, entry);
+                        // manifest entries are optional... if they aren't there it is ok
+                        if (entryFile.canRead()) {
+                            try {
+                                classPathUrls.addLast(entryFile.getAbsoluteFile().toURL());
+                            } catch (MalformedURLException ignored) {
                             }
                         }
-                        locationStack.addAll(0, classPathUrls);
                     }
+                    locationStack.addAll(0, classPathUrls);
                 }
             }
-        } catch (Error e) {
-            destroy();
-            throw e;
+        }
+    }
+
+    /**
+     * Adds the entries of the jar to the index, which maps an entry name to the url of the only jar containing it, or
+     * to the list of urls of the jars containing it in class path order.  Directory entries are indexed both with and
+     * without their trailing slash, since JarFile.getJarEntry finds a directory by either name.  Lists already in the
+     * index are never modified, since they may be in use by a published class path.
+     */
+    private static void indexJarFile(URL url, JarFile jarFile, Map entryIndex) {
+        for (Enumeration entries = jarFile.entries(); entries.hasMoreElements();) {
+            JarEntry jarEntry = (JarEntry) entries.nextElement();
+            String entryName = jarEntry.getName();
+            indexEntry(url, entryName, entryIndex);
+            if (jarEntry.isDirectory() && entryName.endsWith("/") && entryName.length() > 1) {
+                indexEntry(url, entryName.substring(0, entryName.length() - 1), entryIndex);
+            }
+        }
+    }
+
+    private static void indexEntry(URL url, String entryName, Map entryIndex) {
+        Object value = entryIndex.get(entryName);
+        if (value == null) {
+            entryIndex.put(entryName, url);
+        } else if (value instanceof URL) {
+            if (!value.equals(url)) {
+                List urls = new ArrayList(2);
+                urls.add(value);
+                urls.add(url);
+                entryIndex.put(entryName, urls);
+            }
+        } else if (!((List) value).contains(url)) {
+            List urls = new ArrayList((List) value);
+            urls.add(url);
+            entryIndex.put(entryName, urls);
         }
     }
 
@@ -213,14 +296,14 @@ public class JarFileClassLoader extends MultiParentClassLoader {
                 return;
             }
             destroyed = true;
-            for (Iterator iterator = classPath.values().iterator(); iterator.hasNext();) {
+            for (Iterator iterator = classPath.jarFiles.values().iterator(); iterator.hasNext();) {
                 JarFile jarFile = (JarFile) iterator.next();
                 try {
                     jarFile.close();
                 } catch (IOException ignored) {
                 }
             }
-            classPath.clear();
+            classPath = ClassPath.EMPTY;
         }
         super.destroy();
     }
@@ -229,21 +312,13 @@ public class JarFileClassLoader extends MultiParentClassLoader {
      * {@inheritDoc}
      */
     public URL findResource(String resourceName) {
-        URL jarUrl = null;
-        synchronized (lock) {
-            if (destroyed) {
-                return null;
-            }
-            for (Iterator iterator = classPath.entrySet().iterator(); iterator.hasNext() && jarUrl == null;) {
-                Map.Entry entry = (Map.Entry) iterator.next();
-                JarFile jarFile = (JarFile) entry.getValue();
-                JarEntry jarEntry = jarFile.getJarEntry(resourceName);
-                if (jarEntry != null && !jarEntry.isDirectory()) {
-                    jarUrl = (URL) entry.getKey();
-                }
-            }
+        if (destroyed) {
+            return null;
+        }
+        URL jarUrl = classPath.getFirstJarUrl(resourceName);
+        if (jarUrl == null) {
+            return null;
         }
-
 
         try {
             String urlString = "jar:" + jarUrl + "!/" + resourceName;
@@ -261,22 +336,15 @@ public class JarFileClassLoader extends MultiParentClassLoader {
         List superResources = Collections.list(super.findResources(resourceName));
         resources.addAll(superResources);
 
-        synchronized (lock) {
-            if (destroyed) {
-                return Collections.enumeration(Collections.EMPTY_LIST);
-            }
-            for (Iterator iterator = classPath.entrySet().iterator(); iterator.hasNext();) {
-                Map.Entry entry = (Map.Entry) iterator.next();
-                JarFile jarFile = (JarFile) entry.getValue();
-                JarEntry jarEntry = jarFile.getJarEntry(resourceName);
-                if (jarEntry != null && !jarEntry.isDirectory()) {
-                    try {
-                        URL url = (URL) entry.getKey();
-                        String urlString = "jar:" + url + "!/" + resourceName;
-                        resources.add(new URL(url, urlString));
-                    } catch (MalformedURLException e) {
-                    }
-                }
+        if (destroyed) {
+            return Collections.enumeration(Collections.EMPTY_LIST);
+        }
+        for (Iterator iterator = classPath.getJarUrls(resourceName).iterator(); iterator.hasNext();) {
+            try {
+                URL url = (URL) iterator.next();
+                String urlString = "jar:" + url + "!/" + resourceName;
+                resources.add(new URL(url, urlString));
+            } catch (MalformedURLException e) {
             }
         }
 
@@ -297,46 +365,47 @@ public class JarFileClassLoader extends MultiParentClassLoader {
             }
         }
 
-        Certificate[] certificates = null;
-        URL jarUrl = null;
-        Manifest manifest = null;
+        if (destroyed) {
+            throw new ClassNotFoundException("Class loader has been destroyed: " + className);
+        }
+
+        ClassPath classPath = this.classPath;
+        String entryName = className.replace('.', '/') + ".class";
+        URL jarUrl = classPath.getFirstJarUrl(entryName);
+        if (jarUrl == null) {
+            throw new ClassNotFoundException(className);
+        }
+        JarFile jarFile = (JarFile) classPath.jarFiles.get(jarUrl);
+
+        Certificate[] certificates;
+        Manifest manifest;
         byte[] bytes;
-        synchronized (lock) {
-            if (destroyed) {
-                throw new ClassNotFoundException("Class loader has been destroyed: " + className);
+        try {
+            JarEntry jarEntry = jarFile.getJarEntry(entryName);
+            if (jarEntry == null) {
+                throw new ClassNotFoundException(className);
             }
 
+            InputStream inputStream = jarFile.getInputStream(jarEntry);
             try {
-                String entryName = className.replace('.', '/') + ".class";
-                InputStream inputStream = null;
-                for (Iterator iterator = classPath.entrySet().iterator(); iterator.hasNext() && inputStream == null;) {
-                    Map.Entry entry = (Map.Entry) iterator.next();
-                    jarUrl = (URL) entry.getKey();
-                    JarFile jarFile = (JarFile) entry.getValue();
-                    JarEntry jarEntry = jarFile.getJarEntry(entryName);
-                    if (jarEntry != null && !jarEntry.isDirectory()) {
-                        inputStream = jarFile.getInputStream(jarEntry);
-                        certificates = jarEntry.getCertificates();
-                        manifest = jarFile.getManifest();
-                    }
+                byte[] buffer = new byte[4096];
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                for (int count = inputStream.read(buffer); count >= 0; count = inputStream.read(buffer)) {
+                    out.write(buffer, 0, count);
                 }
-                if (inputStream == null) {
-                    throw new ClassNotFoundException(className);
-                }
-
-                try {
-                    byte[] buffer = new byte[4096];
-                    ByteArrayOutputStream out = new ByteArrayOutputStream();
-                    for (int count = inputStream.read(buffer); count >= 0; count = inputStream.read(buffer)) {
-                        out.write(buffer, 0, count);
-                    }
-                    bytes = out.toByteArray();
-                } finally {
-                    inputStream.close();
-                }
-            } catch (IOException e) {
-                throw new ClassNotFoundException(className, e);
+                bytes = out.toByteArray();
+            } finally {
+                inputStream.close();
             }
+
+            // the certificates are only available after the entry has been read completely
+            certificates = jarEntry.getCertificates();
+            manifest = jarFile.getManifest();
+        } catch (IOException e) {
+            throw new ClassNotFoundException(className, e);
+        } catch (IllegalStateException e) {
+            // the jar file was closed by a concurrent destroy
+            throw new ClassNotFoundException("Class loader has been destroyed: " + className);
         }
 
         definePackage(className, jarUrl, manifest);
@@ -361,17 +430,7 @@ public class JarFileClassLoader extends MultiParentClassLoader {
             mainAttributes = manifest.getMainAttributes();
         }
         Package pkg = getPackage(packageName);
-        if (pkg != null) {
-            if (pkg.isSealed()) {
-                if (!pkg.isSealed(jarUrl)) {
-                    throw new SecurityException("Package was already sealed with another URL: package=" + packageName + ", url=" + jarUrl);
-                }
-            } else {
-                if (isSealed(packageAttributes, mainAttributes)) {
-                    throw new SecurityException("Package was already been loaded and not sealed: package=" + packageName + ", url=" + jarUrl);
-                }
-            }
-        } else {
+        if (pkg == null) {
             String specTitle = getAttribute(Attributes.Name.SPECIFICATION_TITLE, packageAttributes, mainAttributes);
             String specVendor = getAttribute(Attributes.Name.SPECIFICATION_VENDOR, packageAttributes, mainAttributes);
             String specVersion = getAttribute(Attributes.Name.SPECIFICATION_VERSION, packageAttributes, mainAttributes);
@@ -384,7 +443,26 @@ public class JarFileClassLoader extends MultiParentClassLoader {
                 sealBase = jarUrl;
             }
 
-            definePackage(packageName, specTitle, specVersion, specVendor, implTitle, implVersion, implVendor, sealBase);
+            try {
+                definePackage(packageName, specTitle, specVersion, specVendor, implTitle, implVersion, implVendor, sealBase);
+                return;
+            } catch (IllegalArgumentException e) {
+                // the package was defined by a concurrent findClass; verify it below
+                pkg = getPackage(packageName);
+                if (pkg == null) {
+                    throw e;
+                }
+            }
+        }
+
+        if (pkg.isSealed()) {
+            if (!pkg.isSealed(jarUrl)) {
+                throw new SecurityException("Package was already sealed with another URL: package=" + packageName + ", url=" + jarUrl);
+            }
+        } else {
+            if (isSealed(packageAttributes, mainAttributes)) {
+                throw new SecurityException("Package was already been loaded and not sealed: package=" + packageName + ", url=" + jarUrl);
+            }
         }
     }
 
@@ -408,4 +486,43 @@ public class JarFileClassLoader extends MultiParentClassLoader {
         }
         return "true".equalsIgnoreCase(sealed);
     }
-}
\ No newline at end of file
+
+    /**
+     * An immutable snapshot of the jars on the class path and the index of their entries.
+     */
+    private static final class ClassPath {
+        private static final ClassPath EMPTY = new ClassPath(new LinkedHashMap(), new HashMap());
+
+        private final LinkedHashMap jarFiles;
+        private final Map entryIndex;
+
+        private ClassPath(LinkedHashMap jarFiles, Map entryIndex) {
+            this.jarFiles = jarFiles;
+            this.entryIndex = entryIndex;
+        }
+
+        /**
+         * Gets the url of the first jar containing the specified entry.
+         */
+        private URL getFirstJarUrl(String entryName) {
+            Object value = entryIndex.get(entryName);
+            if (value instanceof List) {
+                return (URL) ((List) value).get(0);
+            }
+            return (URL) value;
+        }
+
+        /**
+         * Gets the urls of all jars containing the specified entry in class path order.
+         */
+        private List getJarUrls(String entryName) {
+            Object value = entryIndex.get(entryName);
+            if (value == null) {
+                return Collections.EMPTY_LIST;
+            } else if (value instanceof List) {
+                return (List) value;
+            }
+            return Collections.singletonList(value);
+        }
+    }
+}
@@ -17,13 +17,21 @@
 package org.apache.xbean.server.classloader;
 
 import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
 import java.net.URL;
 import java.net.URLStreamHandlerFactory;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.apache.xbean.ClassLoading;
 
 /**
  * A MultiParentClassLoader is a simple extension of the URLClassLoader that simply changes the single parent class
@@ -31,13 +39,58 @@ import java.util.List;
  * with a operation that checks each parent in order.  This getParent method of this class will always return null,
  * which may be interperated by the calling code to mean that this class loader is a direct child of the system class
  * loader.
+ * <p>
+ * On Java 7 and later this class loader is registered as parallel capable, and classes are loaded under a lock per
+ * class name instead of the class loader monitor.  On older vms, and for subclasses that are not registered as
+ * parallel capable, classes are loaded under the class loader monitor, which is the lock the vm itself takes while
+ * resolving classes for such a class loader.  The names of classes that none of the parents could load are kept
+ * in a bounded cache, so repeated probes for a missing class go directly to the urls of this class loader.  If the
+ * classes available from a parent change, {@link #clearNegativeCache()} must be called.
+ * <p>
+ * A package can be declared to be owned by one of the parents with {@link #setPackageOwner(String, ClassLoader)}.
+ * Classes and resources in a declared package are only requested from the owning parent before falling back to the
+ * urls of this class loader.  When {@link #setLearnPackageOwners(boolean) learning} is enabled, the parent that loads
+ * the first class of a package becomes the learned owner of that package, and later classes of that package are
+ * requested from that parent first, unless a parent before the owner has the class file as a resource.  If the
+ * learned owner does not have a class, or an earlier parent does, the package is split across parents and from then
+ * on classes of that package are loaded by checking each parent in order, so a class is always loaded from the same
+ * parent as without learning.  Learned owners are not used for resources, since a resource may be overridden by an
+ * earlier parent.
  *
  * @author Dain Sundstrom
  * @version $Id$
  * @since 2.0
  */
 public class MultiParentClassLoader extends NamedClassLoader {
+    private static final int NEGATIVE_CACHE_SIZE = 1000;
+    private static final Object SPLIT_PACKAGE = new Object();
+    private static final int CLASS_LOADING_LOCK_STRIPES = 16;
+    private static final boolean PARALLEL_CAPABLE;
+
+    static {
+        // ClassLoader.registerAsParallelCapable registers the calling class, so it must be invoked from this class
+        boolean parallelCapable;
+        try {
+            Method method = ClassLoader.class.getDeclaredMethod("registerAsParallelCapable", new Class[0]);
+            parallelCapable = ((Boolean) method.invoke(null, new Object[0])).booleanValue();
+        } catch (Exception ignored) {
+            // older vm; class loading will be serialized on the class loader
+            parallelCapable = false;
+        }
+        PARALLEL_CAPABLE = parallelCapable;
+    }
+
     private final ClassLoader[] parents;
+    private final boolean parallelCapable = isRegisteredAsParallelCapable(this);
+    private final Map[] classLoadingLocks = createClassLoadingLocks();
+    private final Map declaredPackageOwners = new HashMap();
+    private final Map learnedPackageOwners = new HashMap();
+    private boolean learnPackageOwners = false;
+    private final Map negativeCache = new LinkedHashMap(16, 0.75f, true) {
+        protected boolean removeEldestEntry(Map.Entry eldest) {
+            return size() > NEGATIVE_CACHE_SIZE;
+        }
+    };
 
     /**
      * Creates a named class loader with no parents.
@@ -95,6 +148,31 @@ public class MultiParentClassLoader extends NamedClassLoader {
         this.parents = copyParents(parents);
     }
 
+    private static boolean isRegisteredAsParallelCapable(MultiParentClassLoader classLoader) {
+        if (!PARALLEL_CAPABLE) {
+            return false;
+        }
+        try {
+            // Java 9 and later can tell if the actual class of the class loader is registered
+            Method method = ClassLoader.class.getMethod("isRegisteredAsParallelCapable", new Class[0]);
+            return ((Boolean) method.invoke(classLoader, new Object[0])).booleanValue();
+        } catch (NoSuchMethodException e) {
+            // only the classes of this package are known to register themselves
+            Class type = classLoader.getClass();
+            return type == MultiParentClassLoader.class || type == JarFileClassLoader.class;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private static Map[] createClassLoadingLocks() {
+        Map[] locks = new Map[CLASS_LOADING_LOCK_STRIPES];
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new WeakHashMap();
+        }
+        return locks;
+    }
+
     private static ClassLoader[] copyParents(ClassLoader[] parents) {
         ClassLoader[] newParentsArray = new ClassLoader[parents.length];
         for (int i = 0; i < parents.length; i++) {
@@ -115,29 +193,231 @@ public class MultiParentClassLoader extends NamedClassLoader {
         return parents;
     }
 
+    /**
+     * Declares the parent that owns the specified package.  Classes and resources in the package will only be
+     * requested from the owning parent, before falling back to the urls of this class loader.
+     * @param packageName the name of the package; the empty string is the default package
+     * @param parent the parent that owns the package, or null to remove the declaration
+     * @throws NullPointerException if packageName is null
+     * @throws IllegalArgumentException if parent is not one of the parents of this class loader
+     */
+    public void setPackageOwner(String packageName, ClassLoader parent) throws NullPointerException, IllegalArgumentException {
+        if (packageName == null) throw new NullPointerException("packageName is null");
+        if (parent != null && !Arrays.asList(parents).contains(parent)) {
+            throw new IllegalArgumentException("Class loader is not a parent of this class loader: " + parent);
+        }
+        synchronized (declaredPackageOwners) {
+            if (parent == null) {
+                declaredPackageOwners.remove(packageName);
+            } else {
+                declaredPackageOwners.put(packageName, parent);
+            }
+        }
+        // classes not visible with the old owner may be visible now
+        clearNegativeCache();
+    }
+
+    /**
+     * Gets the parent declared to own the specified package.
+     * @param packageName the name of the package; the empty string is the default package
+     * @return the parent that owns the package, or null if no owner has been declared
+     */
+    public ClassLoader getPackageOwner(String packageName) {
+        synchronized (declaredPackageOwners) {
+            return (ClassLoader) declaredPackageOwners.get(packageName);
+        }
+    }
+
+    /**
+     * Does this class loader learn the parent that owns each package from the classes it loads?
+     * @return true if package owners are learned
+     */
+    public boolean isLearnPackageOwners() {
+        synchronized (learnedPackageOwners) {
+            return learnPackageOwners;
+        }
+    }
+
+    /**
+     * Sets whether this class loader learns the parent that owns each package from the classes it loads.  Disabling
+     * learning discards all learned package owners.
+     * @param learnPackageOwners true if package owners should be learned
+     */
+    public void setLearnPackageOwners(boolean learnPackageOwners) {
+        synchronized (learnedPackageOwners) {
+            this.learnPackageOwners = learnPackageOwners;
+            if (!learnPackageOwners) {
+                learnedPackageOwners.clear();
+            }
+        }
+    }
+
+    /**
+     * Clears the cache of class names that could not be loaded from any parent, along with the lookups of this class
+     * loader cached by ClassLoading.  This must be called when a class becomes available from a parent after this
+     * class loader has tried to load it.
+     */
+    public void clearNegativeCache() {
+        synchronized (negativeCache) {
+            negativeCache.clear();
+        }
+        ClassLoading.clearCache(this);
+    }
+
     /**
      * {@inheritDoc}
      */
-    protected synchronized Class loadClass(String name, boolean resolve) throws ClassNotFoundException {
-        Class clazz = findLoadedClass(name);
-        for (int i = 0; i < parents.length && clazz == null; i++) {
+    protected Class loadClass(String name, boolean resolve) throws ClassNotFoundException {
+        synchronized (getClassLoadingLock(name)) {
+            Class clazz = findLoadedClass(name);
+            if (clazz == null && !isNegativeCached(name)) {
+                clazz = loadFromParents(name);
+                if (clazz == null) {
+                    addNegativeCache(name);
+                }
+            }
+
+            if (clazz == null) {
+                // parents didn't have the class; attempt to load from my urls
+                return super.loadClass(name, resolve);
+            } else {
+                // we found the class; resolve it if requested
+                if (resolve) {
+                    resolveClass(clazz);
+                }
+                return clazz;
+            }
+        }
+    }
+
+    private Class loadFromParents(String name) {
+        String packageName = getPackageName(name, '.');
+
+        ClassLoader owner = getPackageOwner(packageName);
+        if (owner != null) {
+            return loadFromParent(owner, name);
+        }
+
+        ClassLoader learnedOwner = null;
+        synchronized (learnedPackageOwners) {
+            Object value = learnedPackageOwners.get(packageName);
+            if (value instanceof ClassLoader) {
+                learnedOwner = (ClassLoader) value;
+            }
+        }
+        boolean triedLearnedOwner = false;
+        if (learnedOwner != null && !isAvailableBefore(learnedOwner, name)) {
+            Class clazz = loadFromParent(learnedOwner, name);
+            if (clazz != null) {
+                return clazz;
+            }
+            triedLearnedOwner = true;
+        }
+
+        for (int i = 0; i < parents.length; i++) {
             ClassLoader parent = parents[i];
-            try {
-                clazz = parent.loadClass(name);
-            } catch (ClassNotFoundException ignored) {
-                // this parent didn't have the class; try the next one
+            if (triedLearnedOwner && parent == learnedOwner) {
+                continue;
+            }
+            Class clazz = loadFromParent(parent, name);
+            if (clazz != null) {
+                synchronized (learnedPackageOwners) {
+                    if (learnPackageOwners) {
+                        if (learnedOwner != null && parent != learnedOwner) {
+                            // another parent has a class of the package, so the package is split across parents
+                            learnedPackageOwners.put(packageName, SPLIT_PACKAGE);
+                        } else if (!learnedPackageOwners.containsKey(packageName)) {
+                            learnedPackageOwners.put(packageName, parent);
+                        }
+                    }
+                }
+                return clazz;
             }
         }
+        return null;
+    }
 
-        if (clazz == null) {
-            // parents didn't have the class; attempt to load from my urls
-            return super.loadClass(name, resolve);
-        } else {
-            // we found the class; resolve it if requested
-            if (resolve) {
-                resolveClass(clazz);
+    /**
+     * Does a parent before the specified parent have the class file of the class as a resource.  This is cheaper than
+     * asking those parents to load the class, which fails with a ClassNotFoundException.
+     */
+    private boolean isAvailableBefore(ClassLoader parent, String name) {
+        String resourceName = name.replace('.', '/') + ".class";
+        for (int i = 0; i < parents.length && parents[i] != parent; i++) {
+            if (parents[i].getResource(resourceName) != null) {
+                return true;
             }
-            return clazz;
+        }
+        return false;
+    }
+
+    private static Class loadFromParent(ClassLoader parent, String name) {
+        try {
+            return parent.loadClass(name);
+        } catch (ClassNotFoundException ignored) {
+            // this parent didn't have the class
+            return null;
+        }
+    }
+
+    private static String getPackageName(String name, char separator) {
+        int packageEnd = name.lastIndexOf(separator);
+        if (packageEnd < 0) {
+            return "";
+        }
+        String packageName = name.substring(0, packageEnd);
+        if (separator != '.') {
+            packageName = packageName.replace(separator, '.');
+        }
+        return packageName;
+    }
+
+    /**
+     * Gets the lock object used while loading the specified class.  If this class loader is registered as parallel
+     * capable each class name has its own lock, so classes with different names can be loaded concurrently; otherwise
+     * the lock is this class loader.
+     * @param className the name of the class being loaded
+     * @return the lock for the class name
+     */
+    protected Object getClassLoadingLock(String className) {
+        if (!parallelCapable) {
+            return this;
+        }
+
+        // the lock references its name, so the entry is kept exactly as long as a thread can be holding the lock
+        Map locks = classLoadingLocks[(className.hashCode() & 0x7fffffff) % classLoadingLocks.length];
+        synchronized (locks) {
+            WeakReference reference = (WeakReference) locks.get(className);
+            ClassLoadingLock lock = reference == null ? null : (ClassLoadingLock) reference.get();
+            if (lock == null) {
+                lock = new ClassLoadingLock(className);
+                locks.put(lock.className, new WeakReference(lock));
+            }
+            return lock;
+        }
+    }
+
+    private static final class ClassLoadingLock {
+        private final String className;
+
+        private ClassLoadingLock(String className) {
+            this.className = className;
+        }
+
+        public String toString() {
+            return "[ClassLoadingLock: " + className + "]";
+        }
+    }
+
+    private boolean isNegativeCached(String name) {
+        synchronized (negativeCache) {
+            return negativeCache.get(name) != null;
+        }
+    }
+
+    private void addNegativeCache(String name) {
+        synchronized (negativeCache) {
+            negativeCache.put(name, name);
         }
     }
 
@@ -146,7 +426,11 @@ public class MultiParentClassLoader extends NamedClassLoader {
      */
     public URL getResource(String name) {
         URL url = null;
-        for (int i = 0; i < parents.length && url == null; i++) {
+        ClassLoader owner = getPackageOwner(getPackageName(name, '/'));
+        if (owner != null) {
+            url = owner.getResource(name);
+        }
+        for (int i = 0; owner == null && i < parents.length && url == null; i++) {
             ClassLoader parent = parents[i];
             url = parent.getResource(name);
         }
@@ -165,11 +449,17 @@ public class MultiParentClassLoader extends NamedClassLoader {
     public Enumeration findResources(String name) throws IOException {
         List resources = new ArrayList();
 
-        // Add resources from all parents
-        for (int i = 0; i < parents.length; i++) {
-            ClassLoader parent = parents[i];
-            List parentResources = Collections.list(parent.getResources(name));
-            resources.addAll(parentResources);
+        ClassLoader owner = getPackageOwner(getPackageName(name, '/'));
+        if (owner != null) {
+            // Add resources from the parent that owns the package
+            resources.addAll(Collections.list(owner.getResources(name)));
+        } else {
+            // Add resources from all parents
+            for (int i = 0; i < parents.length; i++) {
+                ClassLoader parent = parents[i];
+                List parentResources = Collections.list(parent.getResources(name));
+                resources.addAll(parentResources);
+            }
         }
 
         // Add the resources from my urls
@@ -16,6 +16,7 @@
  */
 package org.apache.xbean.server.classloader;
 
+import java.lang.reflect.Method;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.net.URLStreamHandlerFactory;
@@ -31,6 +32,17 @@ import java.util.Arrays;
  * @since 2.0
  */
 public class NamedClassLoader extends URLClassLoader implements DestroyableClassLoader {
+    static {
+        // ClassLoader.registerAsParallelCapable is only available on Java 7 and later, and it registers the calling
+        // class, so it must be invoked from this class
+        try {
+            Method method = ClassLoader.class.getDeclaredMethod("registerAsParallelCapable", new Class[0]);
+            method.invoke(null, new Object[0]);
+        } catch (Exception ignored) {
+            // older vm; class loading will be serialized on the class loader
+        }
+    }
+
     private final String name;
 
     /**
@@ -0,0 +1,193 @@
+/**
+ *
+ * Copyright 2005-2006 The Apache Software Foundation or its licensors, as applicable.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.server.spring.jmx;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.xbean.kernel.NullServiceMonitor;
+import org.apache.xbean.kernel.ServiceEvent;
+import org.apache.xbean.kernel.ServiceMonitor;
+import org.apache.xbean.kernel.ServiceName;
+import org.apache.xbean.kernel.ServiceNotFoundException;
+import org.apache.xbean.kernel.standard.ServiceMetrics;
+import org.apache.xbean.kernel.standard.StandardKernel;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+/**
+ * Publishes the lifecycle timings of every service in a kernel as MBeans.  Each service gets a ServiceMetrics MBean
+ * named <code>domain:type=ServiceMetrics,kernel=kernelName,name=serviceName</code>, which is registered and
+ * unregistered along with the service.
+ *
+ * @org.apache.xbean.XBean namespace="http://xbean.apache.org/schemas/server"
+ *                         element="kernel-metrics-exporter" description="Exports the service metrics of a kernel over JMX"
+ * @version $Revision$
+ */
+public class KernelMetricsExporter implements InitializingBean, DisposableBean {
+
+    private static final Log log = LogFactory.getLog(KernelMetricsExporter.class);
+
+    private StandardKernel kernel;
+    private MBeanServer mbeanServer;
+    private String domain = "org.apache.xbean.kernel";
+    private final ServiceMonitor serviceMonitor = new MetricsServiceMonitor();
+    private final Map objectNames = new HashMap();
+
+    public void afterPropertiesSet() throws Exception {
+        if (kernel == null) throw new IllegalStateException("kernel is not set");
+        if (mbeanServer == null) throw new IllegalStateException("mbeanServer is not set");
+
+        // listen first so services registered while we export the current ones are not missed
+        kernel.addServiceMonitor(serviceMonitor);
+        Map serviceMetrics = kernel.getServiceMetrics();
+        for (Iterator iterator = serviceMetrics.entrySet().iterator(); iterator.hasNext();) {
+            Map.Entry entry = (Map.Entry) iterator.next();
+            export((ServiceName) entry.getKey(), (ServiceMetrics) entry.getValue());
+        }
+    }
+
+    public void destroy() throws Exception {
+        kernel.removeServiceMonitor(serviceMonitor);
+
+        Map names;
+        synchronized (objectNames) {
+            names = new HashMap(objectNames);
+            objectNames.clear();
+        }
+        for (Iterator iterator = names.values().iterator(); iterator.hasNext();) {
+            unregister((ObjectName) iterator.next());
+        }
+    }
+
+    // Properties
+    // -------------------------------------------------------------------------
+    public StandardKernel getKernel() {
+        return kernel;
+    }
+
+    /**
+     * Sets the kernel whose service metrics are exported.
+     *
+     * @param kernel the kernel whose service metrics are exported
+     */
+    public void setKernel(StandardKernel kernel) {
+        this.kernel = kernel;
+    }
+
+    public MBeanServer getMbeanServer() {
+        return mbeanServer;
+    }
+
+    /**
+     * Sets the MBeanServer with which the service metrics are registered.
+     *
+     * @param mbeanServer the MBeanServer with which the service metrics are registered
+     */
+    public void setMbeanServer(MBeanServer mbeanServer) {
+        this.mbeanServer = mbeanServer;
+    }
+
+    public String getDomain() {
+        return domain;
+    }
+
+    /**
+     * Sets the domain of the MBean names.
+     *
+     * @param domain the domain of the MBean names
+     */
+    public void setDomain(String domain) {
+        this.domain = domain;
+    }
+
+    /**
+     * Gets the name of the MBean holding the metrics of the specified service.
+     *
+     * @param serviceName the name of the service
+     * @return the name of the MBean
+     * @throws JMException if the name is not a valid MBean name
+     */
+    public ObjectName createObjectName(ServiceName serviceName) throws JMException {
+        return ObjectName.getInstance(domain + ":type=ServiceMetrics" +
+                ",kernel=" + ObjectName.quote(kernel.getKernelName()) +
+                ",name=" + ObjectName.quote(serviceName.toString()));
+    }
+
+    // Implementation methods
+    // -------------------------------------------------------------------------
+    private void export(ServiceName serviceName, ServiceMetrics metrics) {
+        synchronized (objectNames) {
+            if (objectNames.containsKey(serviceName)) {
+                return;
+            }
+            try {
+                ObjectName objectName = createObjectName(serviceName);
+                mbeanServer.registerMBean(metrics, objectName);
+                objectNames.put(serviceName, objectName);
+            }
+            catch (JMException e) {
+                log.warn("Failed to export the metrics of service " + serviceName + ": " + e, e);
+            }
+        }
+    }
+
+    private void unexport(ServiceName serviceName) {
+        ObjectName objectName;
+        synchronized (objectNames) {
+            objectName = (ObjectName) objectNames.remove(serviceName);
+        }
+        if (objectName != null) {
+            unregister(objectName);
+        }
+    }
+
+    private void unregister(ObjectName objectName) {
+        try {
+            mbeanServer.unregisterMBean(objectName);
+        }
+        catch (InstanceNotFoundException ignored) {
+        }
+        catch (JMException e) {
+            log.warn("Failed to unregister " + objectName + ": " + e, e);
+        }
+    }
+
+    private class MetricsServiceMonitor extends NullServiceMonitor {
+        public void serviceRegistered(ServiceEvent serviceEvent) {
+            ServiceName serviceName = serviceEvent.getServiceName();
+            try {
+                export(serviceName, kernel.getServiceMetrics(serviceName));
+            }
+            catch (ServiceNotFoundException ignored) {
+                // the service was unregistered before this event was delivered
+            }
+        }
+
+        public void serviceUnregistered(ServiceEvent serviceEvent) {
+            unexport(serviceEvent.getServiceName());
+        }
+    }
+}
@@ -16,7 +16,19 @@
  */
 package org.apache.xbean.server.classloader;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
+import java.util.Collections;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import org.apache.xbean.ClassLoading;
 
 /**
  * Test the JarFileClassLoader.
@@ -29,4 +41,202 @@ public class JarFileClassLoaderTest extends MultiParentClassLoaderTest {
     protected MultiParentClassLoader createClassLoader(String name, URL[] urls, ClassLoader[] parents) {
         return new JarFileClassLoader(name, urls, parents);
     }
+
+    /**
+     * Test that resources are found in every jar of the class path, including the jars listed in a manifest
+     * Class-Path, and that a jar added twice is only searched once.
+     * @throws Exception if a problem occurs
+     */
+    public void testIndexedJars() throws Exception {
+        File dir = File.createTempFile("classpath-", "");
+        dir.delete();
+        dir.mkdirs();
+        File library = new File(dir, "library.jar");
+        File main = new File(dir, "main.jar");
+        try {
+            createJar(library, null, new String[]{"shared.txt", "library.txt"});
+            createJar(main, "library.jar", new String[]{"shared.txt", "main.txt"});
+
+            JarFileClassLoader classLoader = new JarFileClassLoader("indexed",
+                    new URL[]{main.toURL(), main.toURL()},
+                    new ClassLoader[0]);
+            try {
+                assertEquals(2, classLoader.getURLs().length);
+
+                assertContent("main.txt", classLoader.findResource("shared.txt"));
+                assertContent("library.txt", classLoader.findResource("library.txt"));
+                assertNull(classLoader.findResource("missing.txt"));
+
+                List resources = Collections.list(classLoader.findResources("shared.txt"));
+                assertEquals(2, resources.size());
+                assertContent("main.txt", (URL) resources.get(0));
+                assertContent("library.txt", (URL) resources.get(1));
+            } finally {
+                classLoader.destroy();
+            }
+        } finally {
+            library.delete();
+            main.delete();
+            dir.delete();
+        }
+    }
+
+    /**
+     * Test that a class ClassLoading failed to find is found once a jar containing it is added.
+     * @throws Exception if a problem occurs
+     */
+    public void testAddURLClearsClassLoadingCache() throws Exception {
+        String className = "org.apache.xbean.added.TestClass";
+        File file = File.createTempFile("added-", ".jar");
+        JarOutputStream jarOut = new JarOutputStream(new FileOutputStream(file));
+        try {
+            jarOut.putNextEntry(new JarEntry(className.replace('.', '/') + ".class"));
+            jarOut.write(createClass(className));
+        } finally {
+            jarOut.close();
+        }
+
+        JarFileClassLoader classLoader = new JarFileClassLoader("added", new URL[0], new ClassLoader[0]);
+        try {
+            try {
+                ClassLoading.loadClass(className, classLoader);
+                fail("loadClass should have thrown a ClassNotFoundException");
+            } catch (ClassNotFoundException e) {
+                // expected
+            }
+
+            classLoader.addURL(file.toURL());
+            assertEquals(classLoader, ClassLoading.loadClass(className, classLoader).getClassLoader());
+        } finally {
+            classLoader.destroy();
+            file.delete();
+        }
+    }
+
+    /**
+     * Test that the directory entries of a jar are found as resources, with and without the trailing slash.
+     * @throws Exception if a problem occurs
+     */
+    public void testDirectoryResources() throws Exception {
+        File file = File.createTempFile("directories-", ".jar");
+        JarOutputStream jarOut = new JarOutputStream(new FileOutputStream(file));
+        try {
+            String[] directories = new String[]{"META-INF/", "org/", "org/foo/"};
+            for (int i = 0; i < directories.length; i++) {
+                jarOut.putNextEntry(new JarEntry(directories[i]));
+                jarOut.closeEntry();
+            }
+            jarOut.putNextEntry(new JarEntry("org/foo/bar.txt"));
+            jarOut.write("bar".getBytes());
+        } finally {
+            jarOut.close();
+        }
+
+        JarFileClassLoader classLoader = new JarFileClassLoader("directories", new URL[]{file.toURL()}, new ClassLoader[0]);
+        try {
+            assertNotNull(classLoader.getResource("META-INF/"));
+            assertNotNull(classLoader.getResource("org/foo/"));
+            assertNotNull(classLoader.getResource("org/foo"));
+            assertEquals(1, Collections.list(classLoader.getResources("org/foo/")).size());
+            assertContent("bar", classLoader.getResource("org/foo/bar.txt"));
+            assertNull(classLoader.getResource("org/missing/"));
+        } finally {
+            classLoader.destroy();
+            file.delete();
+        }
+    }
+
+    /**
+     * Test that many threads can load the classes of one package concurrently.
+     * @throws Exception if a problem occurs
+     */
+    public void testConcurrentFindClass() throws Exception {
+        final String[] classNames = new String[20];
+        File file = File.createTempFile("concurrent-", ".jar");
+        JarOutputStream jarOut = new JarOutputStream(new FileOutputStream(file));
+        try {
+            for (int i = 0; i < classNames.length; i++) {
+                classNames[i] = "org.apache.xbean.concurrent.TestClass" + i;
+                jarOut.putNextEntry(new JarEntry(classNames[i].replace('.', '/') + ".class"));
+                jarOut.write(createClass(classNames[i]));
+            }
+        } finally {
+            jarOut.close();
+        }
+
+        final JarFileClassLoader classLoader = new JarFileClassLoader("concurrent", new URL[]{file.toURL()}, new ClassLoader[0]);
+        try {
+            final Class[][] classes = new Class[8][classNames.length];
+            final Throwable[] failures = new Throwable[classes.length];
+            Thread[] threads = new Thread[classes.length];
+            for (int i = 0; i < threads.length; i++) {
+                final int index = i;
+                threads[i] = new Thread() {
+                    public void run() {
+                        try {
+                            // each thread loads the classes in a different order
+                            for (int j = 0; j < classNames.length; j++) {
+                                int classIndex = (j + index * 3) % classNames.length;
+                                classes[index][classIndex] = classLoader.loadClass(classNames[classIndex]);
+                            }
+                        } catch (Throwable e) {
+                            failures[index] = e;
+                        }
+                    }
+                };
+            }
+            for (int i = 0; i < threads.length; i++) {
+                threads[i].start();
+            }
+            for (int i = 0; i < threads.length; i++) {
+                threads[i].join();
+                assertNull("Thread " + i + " failed: " + failures[i], failures[i]);
+            }
+
+            Package pkg = classes[0][0].getPackage();
+            assertNotNull(pkg);
+            for (int i = 0; i < classes.length; i++) {
+                for (int j = 0; j < classNames.length; j++) {
+                    assertSame(classes[0][j], classes[i][j]);
+                    assertEquals(classLoader, classes[i][j].getClassLoader());
+                    assertSame(pkg, classes[i][j].getPackage());
+                }
+            }
+        } finally {
+            classLoader.destroy();
+            file.delete();
+        }
+    }
+
+    private static void createJar(File file, String classPath, String[] entryNames) throws IOException {
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        if (classPath != null) {
+            manifest.getMainAttributes().put(Attributes.Name.CLASS_PATH, classPath);
+        }
+        JarOutputStream jarOut = new JarOutputStream(new FileOutputStream(file), manifest);
+        try {
+            for (int i = 0; i < entryNames.length; i++) {
+                jarOut.putNextEntry(new JarEntry(entryNames[i]));
+                // the content of every entry is the name of the jar
+                jarOut.write(file.getName().replaceAll("\\.jar$", ".txt").getBytes());
+            }
+        } finally {
+            jarOut.close();
+        }
+    }
+
+    private static void assertContent(String expected, URL url) throws IOException {
+        assertNotNull(url);
+        InputStream in = url.openStream();
+        try {
+            StringBuffer content = new StringBuffer();
+            for (int c = in.read(); c != -1; c = in.read()) {
+                content.append((char) c);
+            }
+            assertEquals(expected, content.toString());
+        } finally {
+            in.close();
+        }
+    }
 }
@@ -23,6 +23,8 @@ import java.io.InputStream;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.SortedSet;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
@@ -229,6 +231,160 @@ public class MultiParentClassLoaderTest extends TestCase {
         assertFalse(resources.hasMoreElements());
     }
 
+    /**
+     * Test that a class no parent could load is not requested from the parents again until the negative cache is
+     * cleared, and that it can still be loaded from my urls.
+     * @throws Exception if a problem occurs
+     */
+    public void testNegativeCache() throws Exception {
+        CountingClassLoader parent = new CountingClassLoader(null);
+        MultiParentClassLoader child = createClassLoader(NAME, new URL[]{myFile.toURL()}, new ClassLoader[]{parent});
+
+        for (int i = 0; i < 3; i++) {
+            try {
+                child.loadClass(NON_EXISTANT_CLASS);
+                fail("loadClass should have thrown a ClassNotFoundException");
+            } catch (ClassNotFoundException e) {
+                // expected
+            }
+        }
+        assertEquals(1, parent.getCount(NON_EXISTANT_CLASS));
+
+        child.clearNegativeCache();
+        try {
+            child.loadClass(NON_EXISTANT_CLASS);
+            fail("loadClass should have thrown a ClassNotFoundException");
+        } catch (ClassNotFoundException e) {
+            // expected
+        }
+        assertEquals(2, parent.getCount(NON_EXISTANT_CLASS));
+
+        // the class only exists in my urls; it is still loaded after the parent misses are cached
+        Class clazz = child.loadClass(CLASS_NAME + 33);
+        assertEquals(child, clazz.getClassLoader());
+        assertSame(clazz, child.loadClass(CLASS_NAME + 33));
+        assertEquals(1, parent.getCount(CLASS_NAME + 33));
+    }
+
+    /**
+     * Test that classes and resources of a package with a declared owner are only loaded from the owning parent and
+     * then my urls.
+     * @throws Exception if a problem occurs
+     */
+    public void testDeclaredPackageOwner() throws Exception {
+        classLoader.setPackageOwner("", parents[1]);
+        assertSame(parents[1], classLoader.getPackageOwner(""));
+
+        // the shared class and resource now come from the owner instead of the first parent
+        assertEquals(parents[1], classLoader.loadClass(CLASS_NAME).getClassLoader());
+        assertURLContains("Should have found value from owner", ENTRY_VALUE + 1, classLoader.getResource(ENTRY_NAME));
+
+        // classes of other parents are not visible
+        try {
+            classLoader.loadClass(CLASS_NAME + 0);
+            fail("loadClass should have thrown a ClassNotFoundException");
+        } catch (ClassNotFoundException e) {
+            // expected
+        }
+        assertEquals(classLoader, classLoader.loadClass(CLASS_NAME + 33).getClassLoader());
+
+        // resources come from the owner and then my urls
+        Enumeration resources = classLoader.getResources(ENTRY_NAME);
+        assertURLContains("Should have found value from owner", ENTRY_VALUE + 1, (URL) resources.nextElement());
+        assertURLContains("Should have found value from my file", ENTRY_VALUE + 33, (URL) resources.nextElement());
+        assertFalse(resources.hasMoreElements());
+
+        try {
+            classLoader.setPackageOwner("", new URLClassLoader(new URL[0]));
+            fail("setPackageOwner should have thrown an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        classLoader.setPackageOwner("", null);
+        assertNull(classLoader.getPackageOwner(""));
+        assertEquals(parents[0], classLoader.loadClass(CLASS_NAME + 0).getClassLoader());
+    }
+
+    /**
+     * Test that a learned package owner is asked first, and that a package found to be split across parents is loaded
+     * from the parents in order.
+     * @throws Exception if a problem occurs
+     */
+    public void testLearnedPackageOwner() throws Exception {
+        CountingClassLoader[] countingParents = new CountingClassLoader[parents.length];
+        for (int i = 0; i < parents.length; i++) {
+            countingParents[i] = new CountingClassLoader(parents[i]);
+        }
+        MultiParentClassLoader child = createClassLoader(NAME, new URL[]{myFile.toURL()}, countingParents);
+        child.setLearnPackageOwners(true);
+        assertTrue(child.isLearnPackageOwners());
+
+        // the default package is learned to be owned by the second parent
+        assertEquals(parents[1], child.loadClass(CLASS_NAME + 1).getClassLoader());
+        assertEquals(parents[1], child.loadClass(CLASS_NAME + 1).getClassLoader());
+        assertEquals(1, countingParents[0].getCount(CLASS_NAME + 1));
+        assertEquals(2, countingParents[1].getCount(CLASS_NAME + 1));
+
+        // an earlier parent also has this class, so it is still loaded from the earlier parent and the package is split
+        assertEquals(parents[0], child.loadClass(CLASS_NAME).getClassLoader());
+        assertEquals(0, countingParents[1].getCount(CLASS_NAME));
+        assertEquals(parents[2], child.loadClass(CLASS_NAME + 2).getClassLoader());
+        assertEquals(1, countingParents[0].getCount(CLASS_NAME + 2));
+
+        // split packages are loaded from the parents in order
+        assertEquals(parents[1], child.loadClass(CLASS_NAME + 1).getClassLoader());
+        assertEquals(2, countingParents[0].getCount(CLASS_NAME + 1));
+    }
+
+    /**
+     * Test that concurrent loads of the same class all return the same class.
+     * @throws Exception if a problem occurs
+     */
+    public void testConcurrentLoadClass() throws Exception {
+        final Class[] classes = new Class[8];
+        final Throwable[] failures = new Throwable[classes.length];
+        Thread[] threads = new Thread[classes.length];
+        for (int i = 0; i < threads.length; i++) {
+            final int index = i;
+            threads[i] = new Thread() {
+                public void run() {
+                    try {
+                        classes[index] = classLoader.loadClass(CLASS_NAME + 33);
+                    } catch (Throwable e) {
+                        failures[index] = e;
+                    }
+                }
+            };
+        }
+        for (int i = 0; i < threads.length; i++) {
+            threads[i].start();
+        }
+        for (int i = 0; i < threads.length; i++) {
+            threads[i].join();
+            assertNull("Thread " + i + " failed: " + failures[i], failures[i]);
+            assertSame(classes[0], classes[i]);
+        }
+        assertEquals(classLoader, classes[0].getClassLoader());
+    }
+
+    /**
+     * Test that a registered class loader locks per class name, and that a subclass which is not registered as
+     * parallel capable locks on the class loader itself.
+     * @throws Exception if a problem occurs
+     */
+    public void testClassLoadingLock() throws Exception {
+        Object lock = classLoader.getClassLoadingLock(CLASS_NAME);
+        assertNotSame(classLoader, lock);
+        assertSame(lock, classLoader.getClassLoadingLock(new String(CLASS_NAME)));
+        assertNotSame(lock, classLoader.getClassLoadingLock(CLASS_NAME + 33));
+
+        MultiParentClassLoader unregistered = new MultiParentClassLoader(NAME, new URL[]{myFile.toURL()}, parents) {
+        };
+        assertSame(unregistered, unregistered.getClassLoadingLock(CLASS_NAME));
+        assertEquals(unregistered, unregistered.loadClass(CLASS_NAME + 33).getClassLoader());
+    }
+
     private void assertStreamContains(String expectedValue, InputStream in) throws IOException {
         assertStreamContains(null, expectedValue, in);
     }
@@ -319,7 +475,7 @@ public class MultiParentClassLoaderTest extends TestCase {
         return file;
     }
 
-    private static byte[] createClass(final String name) {
+    static byte[] createClass(final String name) {
         Enhancer enhancer = new Enhancer();
         enhancer.setNamingPolicy(new NamingPolicy() {
             public String getClassName(String prefix, String source, Object key, Predicate names) {
@@ -345,6 +501,25 @@ public class MultiParentClassLoaderTest extends TestCase {
         }
     }
 
+    private static class CountingClassLoader extends ClassLoader {
+        private final Map counts = new HashMap();
+
+        public CountingClassLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        protected synchronized Class loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            Integer count = (Integer) counts.get(name);
+            counts.put(name, new Integer(count == null ? 1 : count.intValue() + 1));
+            return super.loadClass(name, resolve);
+        }
+
+        public synchronized int getCount(String name) {
+            Integer count = (Integer) counts.get(name);
+            return count == null ? 0 : count.intValue();
+        }
+    }
+
     private static class ByteCode extends DefaultGeneratorStrategy {
         private byte[] byteCode;
 
@@ -0,0 +1,104 @@
+/**
+ *
+ * Copyright 2005-2006 The Apache Software Foundation or its licensors, as applicable.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.server.spring.jmx;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+
+import junit.framework.TestCase;
+import org.apache.xbean.kernel.StaticServiceFactory;
+import org.apache.xbean.kernel.StringServiceName;
+import org.apache.xbean.kernel.standard.StandardKernel;
+
+/**
+ * Tests the KernelMetricsExporter.
+ *
+ * @version $Revision$
+ */
+public class KernelMetricsExporterTest extends TestCase {
+    private final StringServiceName serviceA = new StringServiceName("a");
+    private final StringServiceName serviceB = new StringServiceName("b");
+    private StandardKernel kernel;
+    private MBeanServer mbeanServer;
+    private KernelMetricsExporter exporter;
+
+    /**
+     * Verifies the metrics of existing and newly registered services are exported, follow the service lifecycle, and
+     * are removed when the services are unregistered or the exporter is destroyed.
+     * @throws Exception if a problem occurs
+     */
+    public void testExportServiceMetrics() throws Exception {
+        kernel.registerService(serviceA, new RestartableServiceFactory(), getClass().getClassLoader());
+        exporter.afterPropertiesSet();
+
+        // services registered before the exporter started are exported immediately
+        ObjectName nameA = exporter.createObjectName(serviceA);
+        assertEquals("org.apache.xbean.kernel", nameA.getDomain());
+        assertEquals("ServiceMetrics", nameA.getKeyProperty("type"));
+        assertTrue(mbeanServer.isRegistered(nameA));
+        assertEquals("a", mbeanServer.getAttribute(nameA, "ServiceName"));
+        assertEquals(new Long(0), mbeanServer.getAttribute(nameA, "StartCount"));
+
+        kernel.startService(serviceA);
+        kernel.stopService(serviceA);
+        assertEquals(new Long(1), mbeanServer.getAttribute(nameA, "StartCount"));
+        assertEquals(new Long(1), mbeanServer.getAttribute(nameA, "StopCount"));
+
+        // service events are delivered asynchronously
+        ObjectName nameB = exporter.createObjectName(serviceB);
+        kernel.registerService(serviceB, new RestartableServiceFactory(), getClass().getClassLoader());
+        assertRegistered(nameB, true);
+
+        kernel.unregisterService(serviceB);
+        assertRegistered(nameB, false);
+
+        exporter.destroy();
+        assertFalse(mbeanServer.isRegistered(nameA));
+    }
+
+    private void assertRegistered(ObjectName objectName, boolean registered) throws InterruptedException {
+        for (int i = 0; i < 500 && mbeanServer.isRegistered(objectName) != registered; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(registered, mbeanServer.isRegistered(objectName));
+    }
+
+    private static class RestartableServiceFactory extends StaticServiceFactory {
+        private RestartableServiceFactory() {
+            super(new Object());
+        }
+
+        public boolean isRestartable() {
+            return true;
+        }
+    }
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        kernel = new StandardKernel("test");
+        mbeanServer = MBeanServerFactory.newMBeanServer();
+        exporter = new KernelMetricsExporter();
+        exporter.setKernel(kernel);
+        exporter.setMbeanServer(mbeanServer);
+    }
+
+    protected void tearDown() throws Exception {
+        kernel.destroy();
+        super.tearDown();
+    }
+}